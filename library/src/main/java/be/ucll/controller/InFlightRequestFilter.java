@@ -0,0 +1,60 @@
+package be.ucll.controller;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/// Counts requests that are being handled right now and the highest count seen.
+/// With platform threads the count cannot pass the Tomcat thread pool size, with virtual threads
+/// it is bounded by the accepted connections.
+@Component
+public class InFlightRequestFilter extends OncePerRequestFilter {
+
+    public static final String METRIC_IN_FLIGHT = "library.http.requests.in-flight";
+    public static final String METRIC_MAX_IN_FLIGHT = "library.http.requests.in-flight.max";
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    public InFlightRequestFilter(MeterRegistry meterRegistry) {
+        Gauge.builder(METRIC_IN_FLIGHT, inFlight, AtomicInteger::get)
+            .description("Requests currently being handled")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_MAX_IN_FLIGHT, maxInFlight, AtomicInteger::get)
+            .description("Highest number of requests handled at the same time")
+            .register(meterRegistry);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+        throws ServletException, IOException {
+        int current = inFlight.incrementAndGet();
+        maxInFlight.accumulateAndGet(current, Math::max);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    public void resetMaxInFlight() {
+        maxInFlight.set(inFlight.get());
+    }
+}
@@ -0,0 +1,21 @@
+package be.ucll.controller;
+
+import org.springframework.boot.autoconfigure.jackson.Jackson2ObjectMapperBuilderCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import be.ucll.dto.SparseFieldset;
+
+@Configuration
+public class JacksonConfiguration {
+
+    // Summary records written without SparseFieldset.shape (e.g. streams) keep all their fields
+    @Bean
+    public Jackson2ObjectMapperBuilderCustomizer sparseFieldsetDefaultFilter() {
+        return builder -> builder.filters(new SimpleFilterProvider()
+            .addFilter(SparseFieldset.FILTER, SimpleBeanPropertyFilter.serializeAll()));
+    }
+}
@@ -0,0 +1,41 @@
+package be.ucll.controller;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+
+import be.ucll.dto.BillingPreview;
+import be.ucll.service.LoanService;
+
+@RestController
+@RequestMapping("/loans")
+public class LoanRestController {
+
+    private LoanService loanService;
+
+    public LoanRestController(LoanService loanService) {
+        this.loanService = loanService;
+    }
+
+    @GetMapping("/billing/preview")
+    public BillingPreview previewBilling(
+        @RequestParam(value = "date", required = false) LocalDate date) {
+        return loanService.previewBilling(date);
+    }
+
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    @ExceptionHandler({Exception.class})
+    public Map<String, String> handleException(Exception ex) {
+        Map<String, String> errors = new HashMap<>();
+        errors.put(ex.getClass().getSimpleName(), ex.getMessage());
+        return errors;
+    }
+}
@@ -1,10 +1,15 @@
 package be.ucll.controller;
 
+import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
@@ -14,9 +19,19 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import be.ucll.dto.KeysetPage;
+import be.ucll.dto.PublicationSummary;
+import be.ucll.dto.SparseFieldset;
+import be.ucll.dto.StockBucket;
+import be.ucll.dto.StockChange;
 import be.ucll.model.Publication;
 import be.ucll.service.PublicationService;
+import be.ucll.service.StockChangeFeed;
+import reactor.core.publisher.Flux;
 
 
 
@@ -25,17 +40,35 @@ import be.ucll.service.PublicationService;
 public class PublicationRestController {
     
     private PublicationService publicationService;
+    private StockChangeFeed stockChangeFeed;
+    private ObjectMapper objectMapper;
+    private Duration stockFeedHeartbeat;
 
-    public PublicationRestController(PublicationService publicationService) {
+    public PublicationRestController(PublicationService publicationService, StockChangeFeed stockChangeFeed,
+        ObjectMapper objectMapper,
+        @Value("${library.stock-feed.heartbeat:15s}") Duration stockFeedHeartbeat) {
         this.publicationService = publicationService;
+        this.stockChangeFeed = stockChangeFeed;
+        this.objectMapper = objectMapper;
+        this.stockFeedHeartbeat = stockFeedHeartbeat;
     }
 
     @GetMapping()
     public List<Publication> getPublications(
         @RequestParam(value = "title", required = false) String title,
-        @RequestParam(value = "type", required = false) String type
+        @RequestParam(value = "type", required = false) String type,
+        @RequestParam(value = "limit", required = false) Integer limit
+        ) {
+        return publicationService.findPublicationsByTitleAndType(title, type, limit);
+    }
+
+    @GetMapping("/search")
+    public List<Publication> searchPublications(
+        @RequestParam(value = "query") String query,
+        @RequestParam(value = "type", required = false) String type,
+        @RequestParam(value = "limit", required = false) Integer limit
         ) {
-        return publicationService.findPublicationsByTitleAndType(title, type);
+        return publicationService.searchPublications(query, type, limit);
     }
 
     @GetMapping("/stock/{availableCopies}")
@@ -45,6 +78,87 @@ public class PublicationRestController {
         return publicationService.findPublicationsWithMoreAvailableCopiesThan(availableCopies);
     }
 
+    @GetMapping("/stock/lowest")
+    public List<Publication> getPublicationsWithLowestStock(
+        @RequestParam(value = "limit", required = false) Integer limit
+        ) {
+        return publicationService.findPublicationsWithLowestStock(limit);
+    }
+
+    // Server-sent events with the current stock and then its changes, no request thread is held while waiting.
+    // Heartbeat comments keep idle proxies from closing the stream and detect gone clients; the stream ends
+    // after spring.mvc.async.request-timeout and clients reconnect
+    @GetMapping(value = "/stock/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<StockChange>> getStockChanges() {
+        Flux<ServerSentEvent<StockChange>> heartbeats = Flux.interval(stockFeedHeartbeat, stockFeedHeartbeat)
+            .map(tick -> ServerSentEvent.<StockChange>builder().comment("heartbeat").build());
+        return Flux.merge(stockChangeFeed.subscribe().map(change -> ServerSentEvent.builder(change).build()), heartbeats);
+    }
+
+    // Counts per bucket of copies instead of the publications, selected when a bucket size is given
+    @GetMapping(value = "/stock/{availableCopies}", params = "bucketSize")
+    public List<StockBucket> getStockHistogram(
+        @PathVariable(value = "availableCopies") Integer availableCopies,
+        @RequestParam(value = "bucketSize") Integer bucketSize
+        ) {
+        return publicationService.getStockHistogram(availableCopies, bucketSize);
+    }
+
+    // Summaries, fields selects a subset of the record components
+    @GetMapping("/summary")
+    public MappingJacksonValue getPublicationSummaries(
+        @RequestParam(value = "title", required = false) String title,
+        @RequestParam(value = "type", required = false) String type,
+        @RequestParam(value = "fields", required = false) String fields
+        ) {
+        return SparseFieldset.shape(publicationService.findPublicationSummariesByTitleAndType(title, type), fields, PublicationSummary.class);
+    }
+
+    @GetMapping("/stock/{availableCopies}/summary")
+    public MappingJacksonValue getPublicationSummaries(
+        @PathVariable(value = "availableCopies") Integer availableCopies,
+        @RequestParam(value = "fields", required = false) String fields
+        ) {
+        return SparseFieldset.shape(publicationService.findPublicationSummariesWithMoreAvailableCopiesThan(availableCopies), fields, PublicationSummary.class);
+    }
+
+    // Keyset pages, selected when a page size is given
+    @GetMapping(params = "size")
+    public KeysetPage<Publication> getPublicationsPage(
+        @RequestParam(value = "title", required = false) String title,
+        @RequestParam(value = "type", required = false) String type,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size") Integer size
+        ) {
+        return publicationService.findPublicationsByTitleAndTypePage(title, type, cursor, size);
+    }
+
+    @GetMapping(value = "/stock/{availableCopies}", params = "size")
+    public KeysetPage<Publication> getPublicationsPage(
+        @PathVariable(value = "availableCopies") Integer availableCopies,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size") Integer size
+        ) {
+        return publicationService.findPublicationsWithMoreAvailableCopiesThanPage(availableCopies, cursor, size);
+    }
+
+    // Streams, selected with Accept: application/x-ndjson
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamPublications(
+        @RequestParam(value = "title", required = false) String title,
+        @RequestParam(value = "type", required = false) String type
+        ) {
+        return output -> publicationService.streamPublicationsByTitleAndType(title, type, new NdjsonWriter<>(objectMapper, output));
+    }
+
+    @GetMapping(value = "/stock/{availableCopies}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamPublications(
+        @PathVariable(value = "availableCopies") Integer availableCopies
+        ) {
+        publicationService.checkAvailableCopies(availableCopies);
+        return output -> publicationService.streamPublicationsWithMoreAvailableCopiesThan(availableCopies, new NdjsonWriter<>(objectMapper, output));
+    }
+
     @ResponseStatus(HttpStatus.BAD_REQUEST)
     @ExceptionHandler({Exception.class})
     public Map<String, String> handleException(Exception ex) {
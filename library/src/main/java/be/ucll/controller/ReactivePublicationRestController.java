@@ -0,0 +1,62 @@
+package be.ucll.controller;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import be.ucll.dto.PublicationSummary;
+import be.ucll.service.ReactivePublicationService;
+import reactor.core.publisher.Flux;
+
+// Catalogue streams, written as NDJSON or server-sent events depending on the Accept header.
+// The request thread is released right away, every next summary is requested after the previous one is written.
+@RestController
+@RequestMapping(value = "/reactive/publications", produces = {MediaType.APPLICATION_NDJSON_VALUE, MediaType.TEXT_EVENT_STREAM_VALUE})
+public class ReactivePublicationRestController {
+
+    private ReactivePublicationService reactivePublicationService;
+
+    public ReactivePublicationRestController(ReactivePublicationService reactivePublicationService) {
+        this.reactivePublicationService = reactivePublicationService;
+    }
+
+    @GetMapping()
+    public Flux<PublicationSummary> getPublications(
+        @RequestParam(value = "title", required = false) String title,
+        @RequestParam(value = "type", required = false) String type
+        ) {
+        return reactivePublicationService.findPublicationsByTitleAndType(title, type);
+    }
+
+    @GetMapping("/search")
+    public Flux<PublicationSummary> searchPublications(
+        @RequestParam(value = "query") String query,
+        @RequestParam(value = "type", required = false) String type,
+        @RequestParam(value = "limit", required = false) Integer limit
+        ) {
+        return reactivePublicationService.searchPublications(query, type, limit);
+    }
+
+    @GetMapping("/stock/{availableCopies}")
+    public Flux<PublicationSummary> getPublications(
+        @PathVariable(value = "availableCopies") Integer availableCopies
+        ) {
+        return reactivePublicationService.findPublicationsWithMoreAvailableCopiesThan(availableCopies);
+    }
+
+    // the client accepts a stream, the content type is set so the error is written as plain JSON
+    @ExceptionHandler({Exception.class})
+    public ResponseEntity<Map<String, String>> handleException(Exception ex) {
+        Map<String, String> errors = new HashMap<>();
+        errors.put(ex.getClass().getSimpleName(), ex.getMessage());
+        return ResponseEntity.badRequest().contentType(MediaType.APPLICATION_JSON).body(errors);
+    }
+}
@@ -6,6 +6,8 @@ import java.util.List;
 import java.util.Map;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJacksonValue;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -19,7 +21,17 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import be.ucll.dto.KeysetPage;
+import be.ucll.dto.LoanRegistration;
+import be.ucll.dto.LoanRequest;
+import be.ucll.dto.LoanSummary;
+import be.ucll.dto.SparseFieldset;
+import be.ucll.dto.UserPurge;
+import be.ucll.dto.UserSummary;
 import be.ucll.model.Loan;
 import be.ucll.model.Membership;
 import be.ucll.model.User;
@@ -35,30 +47,35 @@ public class UserRestController {
     
     private UserService userService;
     private LoanService loanService;
+    private ObjectMapper objectMapper;
 
-    public UserRestController(UserService userService, LoanService loanService) {
+    public UserRestController(UserService userService, LoanService loanService, ObjectMapper objectMapper) {
         this.userService = userService;
         this.loanService = loanService;
+        this.objectMapper = objectMapper;
     }
 
     // Get
     @GetMapping()
     public List<User> getAllUsers(
-        @RequestParam(value = "name", required = false) String name) {
-        return userService.getUsersByName(name);
+        @RequestParam(value = "name", required = false) String name,
+        @RequestParam(value = "fetch", required = false) String fetch) {
+        return userService.getUsersByName(name, fetch);
     }
 
     @GetMapping("/adults")
-    public List<User> getAllAdultUsers() {
-        return userService.getAllAdultUsers();
+    public List<User> getAllAdultUsers(
+        @RequestParam(value = "fetch", required = false) String fetch) {
+        return userService.getAllAdultUsers(fetch);
     }
 
     @GetMapping("/age/{min}/{max}")
     public List<User> getUsersWithinAgeRange(
         @PathVariable(value = "min") Integer min, 
-        @PathVariable(value = "max") Integer max) 
+        @PathVariable(value = "max") Integer max,
+        @RequestParam(value = "fetch", required = false) String fetch) 
     {
-        return userService.getUsersWithinAgeRange(min, max);
+        return userService.getUsersWithinAgeRange(min, max, fetch);
     }
 
     @GetMapping("/{email}/loans")
@@ -69,6 +86,104 @@ public class UserRestController {
         return loanService.getLoansByUser(email, onlyActive);
     }
 
+    // Summaries, fields selects a subset of the record components
+    @GetMapping("/summary")
+    public MappingJacksonValue getUserSummaries(
+        @RequestParam(value = "name", required = false) String name,
+        @RequestParam(value = "fields", required = false) String fields) {
+        return SparseFieldset.shape(userService.getUserSummariesByName(name), fields, UserSummary.class);
+    }
+
+    @GetMapping("/adults/summary")
+    public MappingJacksonValue getAdultUserSummaries(
+        @RequestParam(value = "fields", required = false) String fields) {
+        return SparseFieldset.shape(userService.getAdultUserSummaries(), fields, UserSummary.class);
+    }
+
+    @GetMapping("/age/{min}/{max}/summary")
+    public MappingJacksonValue getUserSummariesWithinAgeRange(
+        @PathVariable(value = "min") Integer min, 
+        @PathVariable(value = "max") Integer max,
+        @RequestParam(value = "fields", required = false) String fields) 
+    {
+        return SparseFieldset.shape(userService.getUserSummariesWithinAgeRange(min, max), fields, UserSummary.class);
+    }
+
+    @GetMapping("/{email}/loans/summary")
+    public MappingJacksonValue getLoanSummariesByEmail(
+        @PathVariable(value = "email") String email,
+        @RequestParam(value = "onlyActive", required = false) Boolean onlyActive,
+        @RequestParam(value = "fields", required = false) String fields) 
+    {
+        return SparseFieldset.shape(loanService.getLoanSummariesByUser(email, onlyActive), fields, LoanSummary.class);
+    }
+
+    // Keyset pages, selected when a page size is given
+    @GetMapping(params = "size")
+    public KeysetPage<User> getAllUsersPage(
+        @RequestParam(value = "name", required = false) String name,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size") Integer size) {
+        return userService.getUsersByNamePage(name, cursor, size);
+    }
+
+    @GetMapping(value = "/adults", params = "size")
+    public KeysetPage<User> getAllAdultUsersPage(
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size") Integer size) {
+        return userService.getAllAdultUsersPage(cursor, size);
+    }
+
+    @GetMapping(value = "/age/{min}/{max}", params = "size")
+    public KeysetPage<User> getUsersWithinAgeRangePage(
+        @PathVariable(value = "min") Integer min, 
+        @PathVariable(value = "max") Integer max,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size") Integer size) 
+    {
+        return userService.getUsersWithinAgeRangePage(min, max, cursor, size);
+    }
+
+    @GetMapping(value = "/{email}/loans", params = "size")
+    public KeysetPage<Loan> getLoansByEmailPage(
+        @PathVariable(value = "email") String email,
+        @RequestParam(value = "onlyActive", required = false) Boolean onlyActive,
+        @RequestParam(value = "cursor", required = false) String cursor,
+        @RequestParam(value = "size") Integer size) 
+    {
+        return loanService.getLoansByUserPage(email, onlyActive, cursor, size);
+    }
+
+    // Streams, selected with Accept: application/x-ndjson
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamAllUsers(
+        @RequestParam(value = "name", required = false) String name) {
+        return output -> userService.streamUsersByName(name, new NdjsonWriter<>(objectMapper, output));
+    }
+
+    @GetMapping(value = "/adults", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamAllAdultUsers() {
+        return output -> userService.streamAllAdultUsers(new NdjsonWriter<>(objectMapper, output));
+    }
+
+    @GetMapping(value = "/age/{min}/{max}", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamUsersWithinAgeRange(
+        @PathVariable(value = "min") Integer min, 
+        @PathVariable(value = "max") Integer max) 
+    {
+        userService.checkAgeRange(min, max);
+        return output -> userService.streamUsersWithinAgeRange(min, max, new NdjsonWriter<>(objectMapper, output));
+    }
+
+    @GetMapping(value = "/{email}/loans", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamLoansByEmail(
+        @PathVariable(value = "email") String email,
+        @RequestParam(value = "onlyActive", required = false) Boolean onlyActive) 
+    {
+        userService.userExists(email);
+        return output -> loanService.streamLoansByUser(email, onlyActive, new NdjsonWriter<>(objectMapper, output));
+    }
+
     @GetMapping("/oldest")
     public User getTheOldestUser() 
     {
@@ -120,6 +235,18 @@ public class UserRestController {
         return loanService.registerLoan(email, startDate, publicationsIds);
     }
 
+    @PostMapping("/loans/batch")
+    public List<LoanRegistration> addLoans(
+            @RequestBody List<LoanRequest> loanRequests) {
+        return loanService.registerLoans(loanRequests);
+    }
+
+    @PostMapping("/purge")
+    public List<UserPurge> purgeUsers(
+            @RequestBody List<String> emails) {
+        return userService.purgeUsers(emails);
+    }
+
     // Put
     @PutMapping("/{email}")
     public User updateUser(
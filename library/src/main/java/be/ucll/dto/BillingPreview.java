@@ -0,0 +1,7 @@
+package be.ucll.dto;
+
+import java.time.LocalDate;
+
+/// What the open loans would cost when they were all returned on the given date.
+public record BillingPreview(LocalDate date, int loans, int overdueLoans, long totalPrice, long totalFines) {
+}
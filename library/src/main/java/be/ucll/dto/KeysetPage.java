@@ -0,0 +1,7 @@
+package be.ucll.dto;
+
+import java.util.List;
+
+/// One page of a keyset (seek) paginated list. nextCursor is null on the last page.
+public record KeysetPage<T>(List<T> items, String nextCursor) {
+}
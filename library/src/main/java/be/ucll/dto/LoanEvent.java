@@ -0,0 +1,26 @@
+package be.ucll.dto;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/// Row of the loan_events outbox. eventDate is the date of the loan the event is about (start, return
+/// or deletion date), occurredAt the time it was recorded. publications is set for registered and
+/// deleted loans, price for priced loans; eventId is null until the event is stored.
+public record LoanEvent(
+    Long eventId,
+    Type type,
+    Long loanId,
+    Long userId,
+    LocalDate eventDate,
+    Integer publications,
+    Integer price,
+    LocalDateTime occurredAt) {
+
+    public enum Type {
+        REGISTERED, RETURNED, PRICED, DELETED
+    }
+
+    public static LoanEvent of(Type type, Long loanId, Long userId, LocalDate eventDate, Integer publications, Integer price) {
+        return new LoanEvent(null, type, loanId, userId, eventDate, publications, price, LocalDateTime.now());
+    }
+}
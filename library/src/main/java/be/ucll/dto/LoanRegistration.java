@@ -0,0 +1,12 @@
+package be.ucll.dto;
+
+public record LoanRegistration(String email, Boolean registered, Long loanId, String message) {
+
+    public static LoanRegistration succeeded(String email, Long loanId) {
+        return new LoanRegistration(email, true, loanId, null);
+    }
+
+    public static LoanRegistration failed(String email, String message) {
+        return new LoanRegistration(email, false, null, message);
+    }
+}
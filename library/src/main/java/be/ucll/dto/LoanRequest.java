@@ -0,0 +1,7 @@
+package be.ucll.dto;
+
+import java.time.LocalDate;
+import java.util.List;
+
+public record LoanRequest(String email, LocalDate startDate, List<Long> publicationIds) {
+}
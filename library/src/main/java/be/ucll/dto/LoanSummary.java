@@ -0,0 +1,16 @@
+package be.ucll.dto;
+
+import java.time.LocalDate;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+
+@JsonFilter(SparseFieldset.FILTER)
+public record LoanSummary(
+    Long loanId,
+    String email,
+    LocalDate startDate,
+    LocalDate endDate,
+    LocalDate returnDate,
+    Integer price,
+    Long publicationCount) {
+}
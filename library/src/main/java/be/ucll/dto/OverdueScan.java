@@ -0,0 +1,7 @@
+package be.ucll.dto;
+
+import java.time.LocalDate;
+
+/// Result of an overdue loan scan. resumed is true when the scan continued from a checkpoint.
+public record OverdueScan(LocalDate date, long overdueLoans, long totalFines, boolean resumed) {
+}
@@ -0,0 +1,17 @@
+package be.ucll.dto;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+
+/// List view of a publication with the columns shared by books and magazines.
+@JsonFilter(SparseFieldset.FILTER)
+public record PublicationSummary(
+    Long publicationId,
+    String type,
+    String title,
+    Integer year,
+    Integer availableCopies) {
+
+    public PublicationSummary withAvailableCopies(Integer availableCopies) {
+        return new PublicationSummary(publicationId, type, title, year, availableCopies);
+    }
+}
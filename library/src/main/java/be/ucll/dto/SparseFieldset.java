@@ -0,0 +1,54 @@
+package be.ucll.dto;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.http.converter.json.MappingJacksonValue;
+
+import com.fasterxml.jackson.databind.ser.impl.SimpleBeanPropertyFilter;
+import com.fasterxml.jackson.databind.ser.impl.SimpleFilterProvider;
+
+import be.ucll.service.ServiceException;
+
+/// Sparse fieldsets for the summary records: fields=a,b keeps only the named components in the JSON.
+/// The records carry @JsonFilter(FILTER), the application ObjectMapper serializes all fields by default.
+public class SparseFieldset {
+
+    public static final String FILTER = "sparseFieldset";
+    public static final String UNKNOWN_FIELD_EXCEPTION = "Unknown field %s, expected one of %s";
+
+    private SparseFieldset() {}
+
+    /// Returns the requested field names, null when all fields are wanted.
+    /// Throws ServiceException for a name that is not a component of the record.
+    public static Set<String> parse(String fields, Class<? extends Record> type) {
+        if (fields == null || fields.isBlank()) {
+            return null;
+        }
+        List<String> components = Arrays.stream(type.getRecordComponents())
+            .map(component -> component.getName())
+            .toList();
+        Set<String> result = new LinkedHashSet<>();
+        for (String field : fields.split(",")) {
+            String name = field.trim();
+            if (!components.contains(name)) {
+                throw new ServiceException(String.format(UNKNOWN_FIELD_EXCEPTION, name, components));
+            }
+            result.add(name);
+        }
+        return result;
+    }
+
+    public static MappingJacksonValue shape(Object body, String fields, Class<? extends Record> type) {
+        Set<String> names = parse(fields, type);
+        SimpleBeanPropertyFilter filter = names == null
+            ? SimpleBeanPropertyFilter.serializeAll()
+            : SimpleBeanPropertyFilter.filterOutAllExcept(names);
+
+        MappingJacksonValue value = new MappingJacksonValue(body);
+        value.setFilters(new SimpleFilterProvider().addFilter(FILTER, filter));
+        return value;
+    }
+}
@@ -0,0 +1,5 @@
+package be.ucll.dto;
+
+/// Number of publications with fromCopies up to and including toCopies available copies.
+public record StockBucket(int fromCopies, int toCopies, int publications) {
+}
@@ -0,0 +1,7 @@
+package be.ucll.dto;
+
+/// Change of the available copies of one publication since the previous change that was sent.
+/// availableCopies is the count after the change, so a client that missed changes can catch up.
+/// The snapshot sent to a new subscriber has delta 0.
+public record StockChange(Long publicationId, Integer availableCopies, Integer delta) {
+}
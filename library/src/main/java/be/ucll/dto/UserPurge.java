@@ -0,0 +1,12 @@
+package be.ucll.dto;
+
+public record UserPurge(String email, Boolean purged, String message) {
+
+    public static UserPurge succeeded(String email) {
+        return new UserPurge(email, true, null);
+    }
+
+    public static UserPurge failed(String email, String message) {
+        return new UserPurge(email, false, message);
+    }
+}
@@ -0,0 +1,12 @@
+package be.ucll.dto;
+
+import com.fasterxml.jackson.annotation.JsonFilter;
+
+/// List view of a user: the users table only, without password, profile or memberships.
+@JsonFilter(SparseFieldset.FILTER)
+public record UserSummary(
+    Long userId,
+    String name,
+    Integer age,
+    String email) {
+}
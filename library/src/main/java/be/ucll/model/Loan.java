@@ -1,11 +1,19 @@
 package be.ucll.model;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.BatchSize;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import be.ucll.utilits.AvailabilityLedger;
 import be.ucll.utilits.TimeTracker;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -13,7 +21,9 @@ import jakarta.persistence.JoinColumn;
 import jakarta.persistence.JoinTable;
 import jakarta.persistence.ManyToMany;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.Valid;
 import jakarta.validation.constraints.NotNull;
 
@@ -22,17 +32,21 @@ import jakarta.validation.constraints.NotNull;
 public class Loan {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "loans_seq")
+    @SequenceGenerator(name = "loans_seq", sequenceName = "loans_seq", allocationSize = 50)
     @Column(name = "loan_id")
     private Long id;
 
         
-    @ManyToOne
+    // not optional: derived queries on user.email inner join users, a left join would have to scan loans
+    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    @JsonInclude(value = JsonInclude.Include.CUSTOM, valueFilter = NotLoadedFilter.class)
     @JoinColumn(name = "user_id")
         @NotNull(message = INVALID_USER_EXCEPTION)
     private User user;
 
     @ManyToMany
+    @BatchSize(size = 100)
     @JoinTable(
         name = "loan_publications",
         joinColumns = @JoinColumn(name = "loan_id"),
@@ -46,6 +60,10 @@ public class Loan {
 
     private Integer price;
 
+    @Version
+    @JsonIgnore
+    private Long version;
+
     public static final String INVALID_USER_EXCEPTION = "User is required";
     public static final String INVALID_PUBLICATIONS_EXCEPTION = "Publication(s) cannot be null";
     public static final String INVALID_STARTDATE_EXCEPTION = "Start date is required";
@@ -58,14 +76,24 @@ public class Loan {
 
     protected Loan() {};
 
+    /// For publications that are not saved yet, they count their own copies.
     public Loan(User user, List<Publication> publications, LocalDate startDate) {
+        this(user, publications, startDate, null);
+    }
+
+    /// Saved publications lend their copies from the ledger.
+    public Loan(User user, List<Publication> publications, LocalDate startDate, AvailabilityLedger ledger) {
         setUser(user);
-        setPublications(publications);
         setStartDate(startDate);
         setEndDate(startDate.plusDays(30));
+        setPublications(publications, ledger);
         setPrice(0);
     }
 
+    public Long getId() {
+        return id;
+    }
+
     public User getUser() {
         return user;
     }
@@ -87,6 +115,10 @@ public class Loan {
     }
 
     public void setPublications(List<Publication> publications) {
+        setPublications(publications, null);
+    }
+
+    public void setPublications(List<Publication> publications, AvailabilityLedger ledger) {
         if (publications == null) {
             throw new DomainException(INVALID_PUBLICATIONS_EXCEPTION);
         }
@@ -94,8 +126,17 @@ public class Loan {
             if (publication == null) {
                 throw new DomainException(INVALID_PUBLICATIONS_EXCEPTION);
             }
-            publication.lendPublication();
         });
+        List<Publication> lentPublications = new ArrayList<>();
+        try {
+            for (Publication publication : publications) {
+                publication.lendPublication(ledger);
+                lentPublications.add(publication);
+            }
+        } catch (DomainException e) {
+            lentPublications.forEach(publication -> publication.returnPublication(ledger));
+            throw e;
+        }
         this.publications = publications;
     }
 
@@ -149,11 +190,15 @@ public class Loan {
     }
 
     public void returnPublications() {
+        returnPublications(null);
+    }
+
+    public void returnPublications(AvailabilityLedger ledger) {
         if (publications == null){
             return;
         }
         publications.forEach(publication -> {
-            publication.returnPublication();
+            publication.returnPublication(ledger);
         });
 
         setEndDate(TimeTracker.getToday());
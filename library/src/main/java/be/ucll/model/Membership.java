@@ -4,25 +4,29 @@ package be.ucll.model;
 import java.time.LocalDate;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 
 import be.ucll.utilits.TimeTracker;
+import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
-import jakarta.validation.constraints.NotBlank;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.NotNull;
-import jakarta.validation.constraints.Pattern;
 
 @Entity
 @Table(name = "memberships")
 public class Membership {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "memberships_seq")
+    @SequenceGenerator(name = "memberships_seq", sequenceName = "memberships_seq", allocationSize = 50)
     private Long membership_id;
 
     public static final String START_DATE_REQUIRED_EXCEPTION = "Start date is required.";
@@ -40,20 +44,25 @@ public class Membership {
     @NotNull(message = END_DATE_REQUIRED_EXCEPTION)
     private LocalDate endDate;
 
-    @NotBlank(message = MEMBERSHIP_TYPE_REQUIRED_EXCEPTION)
-    @Pattern(regexp = "BRONZE|SILVER|GOLD", message = INVALID_MEMBERSHIP_TYPE_EXCEPTION)
-    private String type;
+    @NotNull(message = MEMBERSHIP_TYPE_REQUIRED_EXCEPTION)
+    @Column(name = "tier")
+    private MembershipTier type;
 
     private Integer freeLoansQuantity;
 
-    @ManyToOne
+    // optimistic locking, rows inserted with JDBC start at 0 (column default)
+    @Version
+    @JsonIgnore
+    private Long version;
+
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     @JsonBackReference
     private User user;
 
     protected Membership() {}
 
-    public Membership(LocalDate startDate, LocalDate endDate, String type, Integer freeLoansQuantity) {
+    public Membership(LocalDate startDate, LocalDate endDate, MembershipTier type, Integer freeLoansQuantity) {
         setStartDate(startDate);
         setEndDate(endDate);
         setType(type);
@@ -82,11 +91,11 @@ public class Membership {
         this.endDate = endDate;
     }
 
-    public String getType() {
+    public MembershipTier getType() {
         return type;
     }
 
-    public void setType(String type) {
+    public void setType(MembershipTier type) {
         this.type = type;
     }
 
@@ -144,11 +153,16 @@ public class Membership {
                 && (this.endDate.isAfter(other.startDate) || this.endDate.isEqual(other.startDate));
     }
 
+    /// Checks against the default terms of the tier, see areValidFreeLoans(Integer, MembershipTier.Terms)
+    /// for the configured ones.
     public boolean areValidFreeLoans(Integer freeLoansQuantity) {
-        Boolean result = (freeLoansQuantity == null)
-        || ("BRONZE".equals(type) && (freeLoansQuantity < 0 || freeLoansQuantity > 5)) 
-        || ("SILVER".equals(type) && (freeLoansQuantity < 6 || freeLoansQuantity > 10))
-        || ("GOLD".equals(type) && (freeLoansQuantity < 11 || freeLoansQuantity > 15));
-        return !result;
+        return areValidFreeLoans(freeLoansQuantity, type == null ? null : type.getDefaultTerms());
+    }
+
+    public boolean areValidFreeLoans(Integer freeLoansQuantity, MembershipTier.Terms terms) {
+        if (freeLoansQuantity == null) {
+            return false;
+        }
+        return terms == null || terms.allowsFreeLoans(freeLoansQuantity);
     }
 }
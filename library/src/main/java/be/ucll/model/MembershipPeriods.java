@@ -0,0 +1,98 @@
+package be.ucll.model;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/// The memberships of one user sorted by start date, with the periods as epoch days.
+/// The periods of a user never overlap, so the memberships are sorted by end date as well and
+/// every lookup is a binary search. Instances are not changed, with returns a copy.
+public class MembershipPeriods {
+
+    private final Membership[] memberships;
+    private final long[] startDays;
+    private final long[] endDays;
+
+    private MembershipPeriods(Membership[] memberships) {
+        this.memberships = memberships;
+        this.startDays = new long[memberships.length];
+        this.endDays = new long[memberships.length];
+        for (int i = 0; i < memberships.length; i++) {
+            startDays[i] = memberships[i].getStartDate().toEpochDay();
+            endDays[i] = memberships[i].getEndDate().toEpochDay();
+        }
+    }
+
+    public static MembershipPeriods of(List<Membership> memberships) {
+        Membership[] sorted = memberships.toArray(Membership[]::new);
+        Arrays.sort(sorted, Comparator.comparing(Membership::getStartDate));
+        return new MembershipPeriods(sorted);
+    }
+
+    public MembershipPeriods with(Membership membership) {
+        int position = lastStartingOnOrBefore(membership.getStartDate().toEpochDay()) + 1;
+        Membership[] added = new Membership[memberships.length + 1];
+        System.arraycopy(memberships, 0, added, 0, position);
+        added[position] = membership;
+        System.arraycopy(memberships, position, added, position + 1, memberships.length - position);
+        return new MembershipPeriods(added);
+    }
+
+    public int size() {
+        return memberships.length;
+    }
+
+    /// Returns the membership whose period contains the date (both ends included), or null.
+    public Membership at(LocalDate date) {
+        long day = date.toEpochDay();
+        int i = lastStartingOnOrBefore(day);
+        return i >= 0 && endDays[i] >= day ? memberships[i] : null;
+    }
+
+    /// Only the last period that starts before the end of the membership can overlap it.
+    public boolean overlaps(Membership membership) {
+        int i = lastStartingOnOrBefore(membership.getEndDate().toEpochDay());
+        return i >= 0 && endDays[i] >= membership.getStartDate().toEpochDay();
+    }
+
+    /// Returns the earliest membership that ends after the date and has free loans left, or null.
+    /// Free loans change, so they are checked from the first such membership on; a user only has a
+    /// few memberships that did not end yet.
+    public Membership firstWithFreeLoansEndingAfter(LocalDate date) {
+        for (int i = firstEndingAfter(date.toEpochDay()); i < memberships.length; i++) {
+            if (memberships[i].getFreeLoansQuantity() > 0) {
+                return memberships[i];
+            }
+        }
+        return null;
+    }
+
+    private int lastStartingOnOrBefore(long day) {
+        int low = 0;
+        int high = startDays.length - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (startDays[middle] <= day) {
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return high;
+    }
+
+    private int firstEndingAfter(long day) {
+        int low = 0;
+        int high = endDays.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (endDays[middle] > day) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,67 @@
+package be.ucll.model;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+
+/// Membership tiers with their price multiplier and allowed number of free loans.
+/// The database stores the code, which must not change once rows use it; new tiers take a new code.
+/// The terms below are the defaults, the terms in use come from configuration (see MembershipTierSettings).
+/// The set of tiers itself is fixed: a new tier needs a constant here and its code in chk_membership_tier.
+public enum MembershipTier {
+    BRONZE(1, 0.75, 0, 5),
+    SILVER(2, 0.5, 6, 10),
+    GOLD(3, 0.25, 11, 15);
+
+    public record Terms(double multiplier, int minFreeLoans, int maxFreeLoans) {
+
+        public boolean allowsFreeLoans(int freeLoansQuantity) {
+            return freeLoansQuantity >= minFreeLoans && freeLoansQuantity <= maxFreeLoans;
+        }
+    }
+
+    private static final MembershipTier[] BY_CODE;
+
+    static {
+        int maxCode = 0;
+        for (MembershipTier tier : values()) {
+            maxCode = Math.max(maxCode, tier.code);
+        }
+        BY_CODE = new MembershipTier[maxCode + 1];
+        for (MembershipTier tier : values()) {
+            BY_CODE[tier.code] = tier;
+        }
+    }
+
+    private final short code;
+    private final Terms defaultTerms;
+
+    MembershipTier(int code, double multiplier, int minFreeLoans, int maxFreeLoans) {
+        this.code = (short) code;
+        this.defaultTerms = new Terms(multiplier, minFreeLoans, maxFreeLoans);
+    }
+
+    public short getCode() {
+        return code;
+    }
+
+    public Terms getDefaultTerms() {
+        return defaultTerms;
+    }
+
+    public static MembershipTier fromCode(short code) {
+        MembershipTier tier = code > 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+        if (tier == null) {
+            throw new DomainException(Membership.INVALID_MEMBERSHIP_TYPE_EXCEPTION);
+        }
+        return tier;
+    }
+
+    @JsonCreator
+    public static MembershipTier fromName(String name) {
+        for (MembershipTier tier : values()) {
+            if (tier.name().equals(name)) {
+                return tier;
+            }
+        }
+        throw new DomainException(Membership.INVALID_MEMBERSHIP_TYPE_EXCEPTION);
+    }
+}
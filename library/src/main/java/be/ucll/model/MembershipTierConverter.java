@@ -0,0 +1,19 @@
+package be.ucll.model;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+/// Stores a MembershipTier as its code instead of its name.
+@Converter(autoApply = true)
+public class MembershipTierConverter implements AttributeConverter<MembershipTier, Short> {
+
+    @Override
+    public Short convertToDatabaseColumn(MembershipTier tier) {
+        return tier == null ? null : tier.getCode();
+    }
+
+    @Override
+    public MembershipTier convertToEntityAttribute(Short code) {
+        return code == null ? null : MembershipTier.fromCode(code);
+    }
+}
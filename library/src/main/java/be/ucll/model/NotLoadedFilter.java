@@ -0,0 +1,19 @@
+package be.ucll.model;
+
+import org.hibernate.Hibernate;
+
+/// Jackson value filter for lazy associations: a proxy or collection that was not loaded by the query
+/// is left out of the JSON instead of being loaded while serializing.
+/// Use with @JsonInclude(value = JsonInclude.Include.CUSTOM, valueFilter = NotLoadedFilter.class).
+public class NotLoadedFilter {
+
+    @Override
+    public boolean equals(Object value) {
+        return !Hibernate.isInitialized(value);
+    }
+
+    @Override
+    public int hashCode() {
+        return 0;
+    }
+}
@@ -1,15 +1,28 @@
 package be.ucll.model;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import be.ucll.repository.PublicationIndexListener;
+import be.ucll.repository.PublicationLedgerListener;
+import be.ucll.repository.SecondLevelCache;
+import be.ucll.utilits.AvailabilityLedger;
 import be.ucll.utilits.TimeTracker;
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.DiscriminatorColumn;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Inheritance;
 import jakarta.persistence.InheritanceType;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Positive;
 
@@ -17,13 +30,22 @@ import jakarta.validation.constraints.Positive;
 @Table(name = "publications")
 @Inheritance(strategy = InheritanceType.SINGLE_TABLE)
 @DiscriminatorColumn(name = "type")
+@EntityListeners({PublicationIndexListener.class, PublicationLedgerListener.class})
+// Book and Magazine share the region, PublicationLedgerListener also applies the ledger copies to cached publications
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = SecondLevelCache.PUBLICATION_REGION)
 public abstract class Publication {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "publications_seq")
+    @SequenceGenerator(name = "publications_seq", sequenceName = "publications_seq", allocationSize = 50)
     @Column(name = "publication_id")
     private Long id;
 
+    // read only once saved: stock is kept by the AvailabilityLedger and only AvailabilityLedgerFlusher
+    // writes the column, so loan transactions never update or lock the publication row. The field is
+    // the ledger count when the publication was loaded or lent, there is no setter that could be saved.
+    @Column(updatable = false)
     private Integer availableCopies;
 
         @NotBlank(message = INVALID_TITLE_EXCEPTION)
@@ -36,6 +58,10 @@ public abstract class Publication {
     @Column(insertable = false, updatable = false)
     private String type;
 
+    @Version
+    @JsonIgnore
+    private Long version;
+
     public static final String INVALID_TITLE_EXCEPTION = "Title is required";
     public static final String NONPOSITIVE_YEAR_EXCEPTION = "Publication year must be a positive number";
     public static final String FUTURE_YEAR_EXCEPTION = "Publication year cannot be in the future";
@@ -77,7 +103,7 @@ public abstract class Publication {
         return year;
     }
 
-    public void setAvailableCopies(Integer availableCopies) {
+    private void setAvailableCopies(Integer availableCopies) {
         if (availableCopies < 0) {
             throw new DomainException(NEGATIVE_AVAILABLE_COPIES_EXCEPTION);
         }
@@ -101,7 +127,39 @@ public abstract class Publication {
         this.type = type;
     }
 
-    public void lendPublication() {
+    /// Takes one copy. A saved publication takes it from the ledger, an unsaved one counts its own copies
+    /// and does not need a ledger.
+    public void lendPublication(AvailabilityLedger ledger) {
+        if (id == null) {
+            lendUnsavedPublication();
+            return;
+        }
+
+        int remainingCopies = ledger.lend(id, availableCopies);
+        if (remainingCopies == AvailabilityLedger.NO_COPIES_AVAILABLE) {
+            throw new DomainException(String.format(NO_AVAILABLE_COPIES_EXCEPTION, title));
+        }
+        this.availableCopies = remainingCopies;
+    }
+
+    public void returnPublication(AvailabilityLedger ledger) {
+        if (id == null) {
+            setAvailableCopies(availableCopies+1);
+            return;
+        }
+
+        this.availableCopies = ledger.giveBack(id, availableCopies);
+    }
+
+    /// Replaces the loaded column with the ledger count, which is ahead of the column until it is flushed.
+    public void loadLedgerCopies(AvailabilityLedger ledger) {
+        Integer ledgerCopies = ledger.getAvailableCopies(id);
+        if (ledgerCopies != null) {
+            this.availableCopies = ledgerCopies;
+        }
+    }
+
+    private void lendUnsavedPublication() {
         if (availableCopies < 1) {
             String message = String.format(NO_AVAILABLE_COPIES_EXCEPTION, title);
             throw new DomainException(message);
@@ -109,8 +167,4 @@ public abstract class Publication {
 
         setAvailableCopies(availableCopies-1);
     }
-
-    public void returnPublication() {
-        setAvailableCopies(availableCopies+1);
-    }
 }
@@ -1,19 +1,29 @@
 package be.ucll.model;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.annotation.JsonManagedReference;
 
+import be.ucll.utilits.TimeTracker;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.JoinColumn;
+import jakarta.persistence.NamedAttributeNode;
+import jakarta.persistence.NamedEntityGraph;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Transient;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.Max;
 import jakarta.validation.constraints.Min;
@@ -23,10 +33,20 @@ import jakarta.validation.constraints.Size;
 
 @Entity
 @Table(name = "users")
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
+@NamedEntityGraph(name = User.GRAPH_WITH_PROFILE, attributeNodes = @NamedAttributeNode("profile"))
+@NamedEntityGraph(name = User.GRAPH_WITH_MEMBERSHIPS, attributeNodes = {
+    @NamedAttributeNode("profile"),
+    @NamedAttributeNode("memberships")
+})
 public class User {
+
+    public static final String GRAPH_WITH_PROFILE = "User.withProfile";
+    public static final String GRAPH_WITH_MEMBERSHIPS = "User.withMemberships";
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     @Column(name = "user_id")
     private Long id;
 
@@ -43,16 +63,24 @@ public class User {
 
         @NotBlank(message = INVALID_PASSWORD_EXCEPTION)
         @Size(min = 8, message = INVALID_PASSWORD_EXCEPTION)
+    // read from request bodies, never written to a response
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String password;
 
-    @OneToOne
+    @OneToOne(fetch = FetchType.LAZY)
+    @JsonInclude(value = JsonInclude.Include.CUSTOM, valueFilter = NotLoadedFilter.class)
     @JoinColumn(name = "profile_id")
     private Profile profile;
 
     @OneToMany(mappedBy = "user")
+    @JsonInclude(value = JsonInclude.Include.CUSTOM, valueFilter = NotLoadedFilter.class)
     @JsonManagedReference
     public List<Membership> memberships;
 
+    // built from memberships on first use, see membershipPeriods()
+    @Transient
+    private volatile MembershipPeriods membershipPeriods;
+
     public static final String INVALID_NAME_EXCEPTION = "Name is required";
     public static final String INVALID_EMAIL_EXCEPTION = "E-mail must be a valid email format";
     public static final String EMAIL_CANNOT_BE_CHANGED_EXCEPTION = "E-mail cannot be changed";
@@ -76,6 +104,10 @@ public class User {
         setProfile(profile);
     }
 
+    public Long getId() {
+        return id;
+    }
+
     public String getName() {
         return name;
     }
@@ -131,16 +163,33 @@ public class User {
             throw new DomainException(USER_HAS_ALREADY_A_MEMBERSHIP_EXCEPTION);
         }
 
+        MembershipPeriods periods = membershipPeriods();
         this.memberships.add(membership);
+        membershipPeriods = periods.with(membership);
     }
 
     public Boolean MembershipIsValid(Membership membership) {
-        for (Membership userMembership : memberships) {
-            if (userMembership.overlaps(membership)) {
-                return false;
-            }
+        return !membershipPeriods().overlaps(membership);
+    }
+
+    /// Returns the membership that runs on the date, or null.
+    public Membership findMembershipAt(LocalDate date) {
+        return membershipPeriods().at(date);
+    }
+
+    /// Returns the earliest membership that is active today and has free loans left, or null.
+    public Membership findProfitableMembership() {
+        return membershipPeriods().firstWithFreeLoansEndingAfter(TimeTracker.getToday());
+    }
+
+    // memberships added to or removed from the list directly are picked up by building the periods again
+    private MembershipPeriods membershipPeriods() {
+        MembershipPeriods periods = membershipPeriods;
+        if (periods == null || periods.size() != memberships.size()) {
+            periods = MembershipPeriods.of(memberships);
+            membershipPeriods = periods;
         }
-        return true;
+        return periods;
     }
 
     public User copyUser(User other) {
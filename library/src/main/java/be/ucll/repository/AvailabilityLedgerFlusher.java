@@ -0,0 +1,50 @@
+package be.ucll.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import be.ucll.utilits.AvailabilityLedger;
+import jakarta.annotation.PreDestroy;
+
+/// The only writer of publications.available_copies once a publication is saved.
+@Component
+public class AvailabilityLedgerFlusher {
+
+    public static final String UPDATE_AVAILABLE_COPIES_QUERY = "UPDATE publications SET available_copies = ? WHERE publication_id = ?";
+
+    private JdbcTemplate jdbcTemplate;
+    private SecondLevelCache secondLevelCache;
+    private AvailabilityLedger availabilityLedger;
+
+    public AvailabilityLedgerFlusher(JdbcTemplate jdbcTemplate, SecondLevelCache secondLevelCache,
+        AvailabilityLedger availabilityLedger) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.secondLevelCache = secondLevelCache;
+        this.availabilityLedger = availabilityLedger;
+    }
+
+    @Scheduled(fixedDelayString = "${library.availability.flush-interval:1000}")
+    public void flush() {
+        availabilityLedger.flush(this::writeAvailableCopies);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    private void writeAvailableCopies(Map<Long, Integer> availableCopies) {
+        List<Object[]> rows = new ArrayList<>();
+        availableCopies.forEach((publicationId, copies) -> {
+            rows.add(new Object[] {copies, publicationId});
+        });
+        jdbcTemplate.batchUpdate(UPDATE_AVAILABLE_COPIES_QUERY, rows);
+        // the update bypasses Hibernate, cached rows and query results of these publications are stale
+        secondLevelCache.evictPublications(availableCopies.keySet());
+    }
+}
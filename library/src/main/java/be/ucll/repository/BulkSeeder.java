@@ -0,0 +1,193 @@
+package be.ucll.repository;
+
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import be.ucll.model.MembershipTier;
+import be.ucll.utilits.TimeTracker;
+
+/// Writes a generated dataset next to the default one, for staging databases of production size.
+/// Rows are inserted with plain JDBC batches, ids come from the entity sequences (see SequenceIdAllocator)
+/// so JPA inserts keep working next to the seeded rows.
+/// The data only depends on the configured counts and random seed, the same settings always give the
+/// same rows. Loans are historical so they do not hold any copies.
+@Component
+public class BulkSeeder {
+
+    public static final int BATCH_SIZE = 10_000;
+    public static final int LOAN_DAYS = 30;
+    public static final String LOANS_NEED_USERS_AND_PUBLICATIONS_EXCEPTION = "Bulk seeding loans needs seeded users and publications";
+
+    public static final String INSERT_PROFILE_QUERY = "INSERT INTO profiles (profile_id, bio, location, interests) VALUES (?, ?, ?, ?)";
+    public static final String INSERT_USER_QUERY = "INSERT INTO users (user_id, name, age, email, password, profile_id) " + //
+                "VALUES (?, ?, ?, ?, ?, ?)";
+    public static final String INSERT_MEMBERSHIP_QUERY = "INSERT INTO memberships (membership_id, start_date, end_date, tier, free_loans_quantity, user_id) " + //
+                "VALUES (?, ?, ?, ?, ?, ?)";
+    public static final String INSERT_PUBLICATION_QUERY = "INSERT INTO publications (publication_id, available_copies, title, publication_year, author, ISBN, editor, ISSN, type) " + //
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    public static final String INSERT_LOAN_QUERY = "INSERT INTO loans (loan_id, user_id, start_date, end_date, return_date, price) " + //
+                "VALUES (?, ?, ?, ?, ?, ?)";
+
+    private static final MembershipTier[] MEMBERSHIP_TIERS = MembershipTier.values();
+
+    private JdbcTemplate jdbcTemplate;
+    private SequenceIdAllocator sequenceIdAllocator;
+    private int users;
+    private int publications;
+    private int loans;
+    private long randomSeed;
+
+    public BulkSeeder(JdbcTemplate jdbcTemplate,
+        SequenceIdAllocator sequenceIdAllocator,
+        @Value("${library.seed.bulk.users:0}") int users,
+        @Value("${library.seed.bulk.publications:0}") int publications,
+        @Value("${library.seed.bulk.loans:0}") int loans,
+        @Value("${library.seed.bulk.random-seed:42}") long randomSeed
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequenceIdAllocator = sequenceIdAllocator;
+        this.users = users;
+        this.publications = publications;
+        this.loans = loans;
+        this.randomSeed = randomSeed;
+    }
+
+    public boolean isEnabled() {
+        return users > 0 || publications > 0 || loans > 0;
+    }
+
+    public void seed() {
+        if (loans > 0 && (users == 0 || publications == 0)) {
+            throw new IllegalStateException(LOANS_NEED_USERS_AND_PUBLICATIONS_EXCEPTION);
+        }
+        SplittableRandom random = new SplittableRandom(randomSeed);
+        LocalDate today = TimeTracker.getToday();
+
+        // every adult user gets a profile and every third user a membership
+        int[] ages = new int[users];
+        for (int i = 0; i < users; i++) {
+            ages[i] = random.nextInt(1, 101);
+        }
+        List<Integer> adults = new ArrayList<>();
+        for (int i = 0; i < users; i++) {
+            if (ages[i] >= 18) {
+                adults.add(i);
+            }
+        }
+        long[] adultProfileIds = sequenceIdAllocator.allocate("profiles_seq", adults.size());
+        long[] profileIds = new long[users];
+        for (int i = 0; i < adults.size(); i++) {
+            profileIds[adults.get(i)] = adultProfileIds[i];
+        }
+        long[] userIds = sequenceIdAllocator.allocate("users_seq", users);
+        long[] membershipIds = sequenceIdAllocator.allocate("memberships_seq", (users + 2) / 3);
+        long[] publicationIds = sequenceIdAllocator.allocate("publications_seq", publications);
+        long[] loanIds = sequenceIdAllocator.allocate(LoanBatchRepository.LOAN_SEQUENCE, loans);
+
+        insertRows(INSERT_PROFILE_QUERY, adults.size(), (statement, i) -> {
+            int user = adults.get(i);
+            statement.setLong(1, profileIds[user]);
+            statement.setString(2, "Bio " + user);
+            statement.setString(3, "Location " + random.nextInt(1, 51));
+            statement.setString(4, "Interests " + random.nextInt(1, 21));
+        });
+        insertRows(INSERT_USER_QUERY, users, (statement, i) -> {
+            statement.setLong(1, userIds[i]);
+            statement.setString(2, "Seed User " + i);
+            statement.setInt(3, ages[i]);
+            statement.setString(4, "seed.user" + i + "@ucll.be");
+            statement.setString(5, "password" + i);
+            if (profileIds[i] == 0) {
+                statement.setNull(6, Types.BIGINT);
+            } else {
+                statement.setLong(6, profileIds[i]);
+            }
+        });
+        insertRows(INSERT_MEMBERSHIP_QUERY, membershipIds.length, (statement, i) -> {
+            MembershipTier tier = MEMBERSHIP_TIERS[random.nextInt(MEMBERSHIP_TIERS.length)];
+            LocalDate startDate = today.minusDays(random.nextInt(0, 365));
+            statement.setLong(1, membershipIds[i]);
+            statement.setDate(2, Date.valueOf(startDate));
+            statement.setDate(3, Date.valueOf(startDate.plusYears(1)));
+            statement.setShort(4, tier.getCode());
+            statement.setInt(5, tier.getDefaultTerms().minFreeLoans() + random.nextInt(0, 5));
+            statement.setLong(6, userIds[i * 3]);
+        });
+        insertRows(INSERT_PUBLICATION_QUERY, publications, (statement, i) -> {
+            boolean book = random.nextBoolean();
+            statement.setLong(1, publicationIds[i]);
+            statement.setInt(2, random.nextInt(1, 101));
+            statement.setString(3, (book ? "Seed Book " : "Seed Magazine ") + i);
+            statement.setInt(4, random.nextInt(1900, today.getYear() + 1));
+            statement.setString(5, book ? "Author " + random.nextInt(1, 1001) : null);
+            statement.setString(6, book ? String.format("978-%010d", i) : null);
+            statement.setString(7, book ? null : "Editor " + random.nextInt(1, 1001));
+            statement.setString(8, book ? null : String.format("%08d", i));
+            statement.setString(9, book ? "book" : "magazine");
+        });
+
+        long[][] loanPublications = new long[loans][];
+        insertRows(INSERT_LOAN_QUERY, loans, (statement, i) -> {
+            LocalDate startDate = today.minusDays(LOAN_DAYS + 1 + random.nextInt(0, 3650));
+            LocalDate endDate = startDate.plusDays(LOAN_DAYS);
+            statement.setLong(1, loanIds[i]);
+            statement.setLong(2, userIds[random.nextInt(users)]);
+            statement.setDate(3, Date.valueOf(startDate));
+            statement.setDate(4, Date.valueOf(endDate));
+            statement.setDate(5, Date.valueOf(endDate));
+            statement.setInt(6, random.nextInt(0, 31));
+            loanPublications[i] = random.ints(random.nextInt(1, 4), 0, publications)
+                .distinct()
+                .mapToLong(publication -> publicationIds[publication])
+                .toArray();
+        });
+        insertLoanPublications(loanIds, loanPublications);
+    }
+
+    private void insertLoanPublications(long[] loanIds, long[][] loanPublications) {
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < loanPublications.length; i++) {
+            for (long publicationId : loanPublications[i]) {
+                rows.add(new Object[] {loanIds[i], publicationId});
+            }
+            if (rows.size() >= BATCH_SIZE) {
+                jdbcTemplate.batchUpdate(LoanBatchRepository.INSERT_LOAN_PUBLICATION_QUERY, rows);
+                rows.clear();
+            }
+        }
+        jdbcTemplate.batchUpdate(LoanBatchRepository.INSERT_LOAN_PUBLICATION_QUERY, rows);
+    }
+
+    private void insertRows(String query, int count, RowWriter rowWriter) {
+        for (int from = 0; from < count; from += BATCH_SIZE) {
+            int first = from;
+            int size = Math.min(BATCH_SIZE, count - from);
+            jdbcTemplate.batchUpdate(query, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement statement, int i) throws SQLException {
+                    rowWriter.write(statement, first + i);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return size;
+                }
+            });
+        }
+    }
+
+    private interface RowWriter {
+        void write(PreparedStatement statement, int i) throws SQLException;
+    }
+}
@@ -4,19 +4,25 @@ import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import be.ucll.model.Book;
 import be.ucll.model.Loan;
 import be.ucll.model.Magazine;
 import be.ucll.model.Membership;
+import be.ucll.model.MembershipTier;
 import be.ucll.model.Profile;
 import be.ucll.model.Publication;
 import be.ucll.model.User;
+import be.ucll.utilits.AvailabilityLedger;
 import be.ucll.utilits.TimeTracker;
 import jakarta.annotation.PostConstruct;
 
+// memberships are validated against the configured tier terms
 @Component
+@DependsOn("membershipTierSettings")
 public class DbInitializer {
 
     private UserRepository userRepository;
@@ -24,24 +30,71 @@ public class DbInitializer {
     private PublicationRepository publicationRepository;
     private MembershipRepository membershipRepository;
     private LoanRepository loanRepository;
+    private PublicationSearchIndex publicationSearchIndex;
+    private PublicationStockIndex publicationStockIndex;
+    private UserCache userCache;
+    private SecondLevelCache secondLevelCache;
+    private BulkSeeder bulkSeeder;
+    private EntityStreamer entityStreamer;
+    private TransactionTemplate transactionTemplate;
+    private AvailabilityLedger availabilityLedger;
 
     public DbInitializer(
         UserRepository userRepository, 
         ProfileRepository profileRepository, 
         PublicationRepository publicationRepository,
         MembershipRepository membershipRepository,
-        LoanRepository loanRepository
+        LoanRepository loanRepository,
+        PublicationSearchIndex publicationSearchIndex,
+        PublicationStockIndex publicationStockIndex,
+        UserCache userCache,
+        SecondLevelCache secondLevelCache,
+        BulkSeeder bulkSeeder,
+        EntityStreamer entityStreamer,
+        TransactionTemplate transactionTemplate,
+        AvailabilityLedger availabilityLedger
         ) {
         this.userRepository = userRepository;
         this.profileRepository = profileRepository;
         this.publicationRepository = publicationRepository;
         this.membershipRepository = membershipRepository;
         this.loanRepository = loanRepository;
+        this.publicationSearchIndex = publicationSearchIndex;
+        this.publicationStockIndex = publicationStockIndex;
+        this.userCache = userCache;
+        this.secondLevelCache = secondLevelCache;
+        this.bulkSeeder = bulkSeeder;
+        this.entityStreamer = entityStreamer;
+        this.transactionTemplate = transactionTemplate;
+        this.availabilityLedger = availabilityLedger;
     }
 
     @PostConstruct
     public void initialize() {
+        availabilityLedger.clear();
+        publicationSearchIndex.clear();
+        publicationStockIndex.clear();
+        userCache.clear();
+        // the tables can be recreated with the same ids, nothing cached before is valid
+        secondLevelCache.evictAll();
+
+        // one transaction instead of a commit per saved entity
+        transactionTemplate.executeWithoutResult(status -> saveDefaultData());
+
+        if (bulkSeeder.isEnabled()) {
+            bulkSeeder.seed();
+            secondLevelCache.evictAll();
+            // seeded rows bypass the entity listener of the indexes
+            transactionTemplate.executeWithoutResult(status -> {
+                entityStreamer.forEach(publicationRepository.streamByTitleAndType(null, null), publication -> {
+                    publicationSearchIndex.put(publication);
+                    publicationStockIndex.put(publication);
+                });
+            });
+        }
+    }
 
+    private void saveDefaultData() {
         List<Profile> profiles = createProfiles();
 
         List<User> users = createUsers(profiles);
@@ -119,11 +172,11 @@ public class DbInitializer {
         LocalDate now = TimeTracker.getToday();
         LocalDate oneYearLater = now.plusYears(1);
 
-        Membership membership1 = new Membership(now, oneYearLater, "BRONZE", 3);
-        Membership membership2 = new Membership(now, oneYearLater, "SILVER", 8);
-        Membership membership3 = new Membership(now.plusYears(1).plusDays(2), oneYearLater.plusYears(1).plusDays(2), "GOLD", 13);
-        Membership membership4 = new Membership(now, oneYearLater, "BRONZE", 2);
-        Membership membership5 = new Membership(now, oneYearLater, "SILVER", 9);
+        Membership membership1 = new Membership(now, oneYearLater, MembershipTier.BRONZE, 3);
+        Membership membership2 = new Membership(now, oneYearLater, MembershipTier.SILVER, 8);
+        Membership membership3 = new Membership(now.plusYears(1).plusDays(2), oneYearLater.plusYears(1).plusDays(2), MembershipTier.GOLD, 13);
+        Membership membership4 = new Membership(now, oneYearLater, MembershipTier.BRONZE, 2);
+        Membership membership5 = new Membership(now, oneYearLater, MembershipTier.SILVER, 9);
 
         memberships.add(membership1);
         memberships.add(membership2);
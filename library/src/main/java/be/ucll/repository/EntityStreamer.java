@@ -0,0 +1,43 @@
+package be.ucll.repository;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import org.springframework.stereotype.Component;
+
+import jakarta.persistence.EntityManager;
+
+@Component
+public class EntityStreamer {
+
+    // as large as the @BatchSize of Loan.publications: the lazy collections of a chunk are loaded in one query
+    public static final int CHUNK_SIZE = 100;
+
+    private EntityManager entityManager;
+
+    public EntityStreamer(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /// Hands every entity of a repository stream to the consumer, CHUNK_SIZE entities at a time.
+    /// After each chunk the persistence context is cleared, so it does not grow with the size of the
+    /// result: the entities are detached together with everything they loaded lazily.
+    /// Must run inside a transaction, and any managed entity of the caller is detached as well.
+    public <T> void forEach(Stream<T> entities, Consumer<? super T> consumer) {
+        List<T> chunk = new ArrayList<>(CHUNK_SIZE);
+        try (entities) {
+            Iterator<T> iterator = entities.iterator();
+            while (iterator.hasNext()) {
+                chunk.add(iterator.next());
+                if (chunk.size() == CHUNK_SIZE || !iterator.hasNext()) {
+                    chunk.forEach(consumer);
+                    chunk.clear();
+                    entityManager.clear();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package be.ucll.repository;
+
+import java.sql.Types;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Repository;
+
+import be.ucll.model.Loan;
+
+@Repository
+public class LoanBatchRepository {
+
+    public static final String LOAN_SEQUENCE = "loans_seq";
+    public static final String INSERT_LOAN_QUERY = "INSERT INTO loans (loan_id, user_id, start_date, end_date, return_date, price) " + //
+                "VALUES (?, ?, ?, ?, ?, ?)";
+    public static final String INSERT_LOAN_PUBLICATION_QUERY = "INSERT INTO loan_publications (loan_id, publication_id) " + //
+                "VALUES (?, ?)";
+    // a loan is free when its user has a membership that is active and has free loans left (User.findProfitableMembership),
+    // any other loan is priced at the full price, as returnLoan does
+    public static final String OPEN_LOANS_QUERY = "SELECT l.start_date, l.end_date, " + //
+                "(SELECT COUNT(*) FROM loan_publications lp WHERE lp.loan_id = l.loan_id) AS publications, " + //
+                "EXISTS (SELECT 1 FROM memberships m WHERE m.user_id = l.user_id AND m.end_date > ? AND m.free_loans_quantity > 0) AS free_loan " + //
+                "FROM loans l WHERE l.return_date IS NULL AND l.start_date <= ?";
+
+    private JdbcTemplate jdbcTemplate;
+    private SequenceIdAllocator sequenceIdAllocator;
+
+    public LoanBatchRepository(JdbcTemplate jdbcTemplate, SequenceIdAllocator sequenceIdAllocator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.sequenceIdAllocator = sequenceIdAllocator;
+    }
+
+    /// Inserts all loans and their publications with two JDBC batches and returns the loan ids
+    /// in the order of the given loans. Ids are taken from the loan sequence up front.
+    public List<Long> insertLoans(List<Loan> loans) {
+        if (loans.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long[] loanIds = sequenceIdAllocator.allocate(LOAN_SEQUENCE, loans.size());
+
+        List<Object[]> loanRows = new ArrayList<>();
+        List<Object[]> loanPublicationRows = new ArrayList<>();
+        for (int i = 0; i < loans.size(); i++) {
+            Loan loan = loans.get(i);
+            Long loanId = loanIds[i];
+            loanRows.add(new Object[] {
+                loanId, loan.getUser().getId(), loan.getStartDate(), loan.getEndDate(), loan.getReturnDate(), loan.getPrice()
+            });
+            loan.getPublications().forEach(publication -> {
+                loanPublicationRows.add(new Object[] {loanId, publication.getId()});
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT_LOAN_QUERY, loanRows, new int[] {
+            Types.BIGINT, Types.BIGINT, Types.DATE, Types.DATE, Types.DATE, Types.INTEGER
+        });
+        jdbcTemplate.batchUpdate(INSERT_LOAN_PUBLICATION_QUERY, loanPublicationRows);
+        return Arrays.stream(loanIds).boxed().toList();
+    }
+
+    /// Hands every loan that is not returned and started on or before the date to the handler,
+    /// row by row without building entities. Dates are epoch days.
+    public void forEachOpenLoan(LocalDate date, OpenLoanHandler handler) {
+        jdbcTemplate.query(OPEN_LOANS_QUERY, (RowCallbackHandler) resultSet -> handler.handle(
+            (int) resultSet.getDate("start_date").toLocalDate().toEpochDay(),
+            (int) resultSet.getDate("end_date").toLocalDate().toEpochDay(),
+            resultSet.getInt("publications"),
+            resultSet.getBoolean("free_loan")), date, date);
+    }
+
+    public interface OpenLoanHandler {
+        void handle(int startDay, int endDay, int publications, boolean freeLoan);
+    }
+}
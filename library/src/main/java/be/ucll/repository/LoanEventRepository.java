@@ -0,0 +1,87 @@
+package be.ucll.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import be.ucll.dto.LoanEvent;
+
+/// JDBC access to the loan_events outbox. Events are appended with the JdbcTemplate of the running
+/// transaction, so they are stored together with the loan change or not at all.
+@Repository
+public class LoanEventRepository {
+
+    public static final String INSERT_EVENT_QUERY = "INSERT INTO loan_events " + //
+                "(event_type, loan_id, user_id, event_date, publications, price, occurred_at) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    public static final String INSERT_DELETED_LOANS_OF_USER_QUERY = "INSERT INTO loan_events " + //
+                "(event_type, loan_id, user_id, event_date, publications, occurred_at) " + //
+                "SELECT 'DELETED', l.loan_id, l.user_id, ?, " + //
+                "(SELECT COUNT(*) FROM loan_publications lp WHERE lp.loan_id = l.loan_id), ? " + //
+                "FROM loans l JOIN users u ON u.user_id = l.user_id WHERE u.email = ?";
+    public static final String FIND_UNPUBLISHED_QUERY = "SELECT event_id, event_type, loan_id, user_id, event_date, " + //
+                "publications, price, occurred_at FROM loan_events WHERE published_at IS NULL ORDER BY event_id LIMIT ?";
+    public static final String MARK_PUBLISHED_QUERY = "UPDATE loan_events SET published_at = ? WHERE event_id = ?";
+    public static final String DELETE_PUBLISHED_BEFORE_QUERY = "DELETE FROM loan_events WHERE published_at < ?";
+
+    private JdbcTemplate jdbcTemplate;
+
+    public LoanEventRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void append(LoanEvent event) {
+        appendAll(List.of(event));
+    }
+
+    public void appendAll(List<LoanEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        List<Object[]> rows = new ArrayList<>();
+        events.forEach(event -> rows.add(new Object[] {
+            event.type().name(), event.loanId(), event.userId(), event.eventDate(), event.publications(), event.price(), event.occurredAt()
+        }));
+        jdbcTemplate.batchUpdate(INSERT_EVENT_QUERY, rows, new int[] {
+            Types.VARCHAR, Types.BIGINT, Types.BIGINT, Types.DATE, Types.INTEGER, Types.INTEGER, Types.TIMESTAMP
+        });
+    }
+
+    /// Appends a deleted event for every loan of the user, call it before the loans are deleted.
+    public int appendDeletedLoansOfUser(String email, LocalDate deletionDate) {
+        return jdbcTemplate.update(INSERT_DELETED_LOANS_OF_USER_QUERY, deletionDate, LocalDateTime.now(), email);
+    }
+
+    /// The oldest limit events that were not handed to the consumers yet, in the order they were stored.
+    public List<LoanEvent> findUnpublished(int limit) {
+        return jdbcTemplate.query(FIND_UNPUBLISHED_QUERY, (resultSet, rowNum) -> mapEvent(resultSet), limit);
+    }
+
+    public void markPublished(List<LoanEvent> events, LocalDateTime publishedAt) {
+        List<Object[]> rows = new ArrayList<>();
+        events.forEach(event -> rows.add(new Object[] {publishedAt, event.eventId()}));
+        jdbcTemplate.batchUpdate(MARK_PUBLISHED_QUERY, rows);
+    }
+
+    public int deletePublishedBefore(LocalDateTime publishedBefore) {
+        return jdbcTemplate.update(DELETE_PUBLISHED_BEFORE_QUERY, publishedBefore);
+    }
+
+    private LoanEvent mapEvent(ResultSet resultSet) throws SQLException {
+        return new LoanEvent(
+            resultSet.getLong("event_id"),
+            LoanEvent.Type.valueOf(resultSet.getString("event_type")),
+            resultSet.getLong("loan_id"),
+            resultSet.getLong("user_id"),
+            resultSet.getDate("event_date").toLocalDate(),
+            resultSet.getObject("publications", Integer.class),
+            resultSet.getObject("price", Integer.class),
+            resultSet.getTimestamp("occurred_at").toLocalDateTime());
+    }
+}
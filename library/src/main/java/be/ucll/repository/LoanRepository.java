@@ -1,13 +1,21 @@
 package be.ucll.repository;
 
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.springframework.data.jdbc.repository.query.Modifying;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import be.ucll.dto.LoanSummary;
 import be.ucll.model.Loan;
+import jakarta.persistence.QueryHint;
 import jakarta.transaction.Transactional;
 
 @Repository
@@ -19,5 +27,54 @@ public interface LoanRepository extends JpaRepository<Loan, Long> {
 
     List<Loan> findByUserEmail(String email);
 
+    // Loan.user is lazy, loans returned as a whole fetch the user with its profile in the same select
+    @EntityGraph(attributePaths = {"user", "user.profile"})
     List<Loan> findByUserEmailAndEndDateAfter(String email, LocalDate currentDate);
+
+    // Existence probes for the guards, they select a single id instead of loading the loans.
+    boolean existsByUserEmail(String email);
+
+    boolean existsByUserEmailAndEndDateAfter(String email, LocalDate currentDate);
+
+    // Loan history with publications, user and profile fetched in one select.
+    // Memberships are not part of the graph (two bags cannot be fetched together), all loans share one user
+    // so they cost a single extra select.
+    // Without a condition on loans H2 starts the outer joins at loans and scans it, the user id is looked up
+    // first so loans are seeked by user_id.
+    @EntityGraph(attributePaths = {"publications", "user", "user.profile"})
+    @Query("SELECT l FROM Loan l WHERE l.user.id = (SELECT u.id FROM User u WHERE u.email = :email)")
+    List<Loan> findWithDetailsByUserEmail(String email);
+
+    @EntityGraph(attributePaths = {"publications", "user", "user.profile"})
+    List<Loan> findWithDetailsByUserEmailAndEndDateAfter(String email, LocalDate currentDate);
+
+    @Query("SELECT new be.ucll.dto.LoanSummary(l.id, u.email, l.startDate, l.endDate, l.returnDate, l.price, COUNT(p)) " +
+           "FROM Loan l JOIN l.user u LEFT JOIN l.publications p " +
+           "WHERE u.id = (SELECT eu.id FROM User eu WHERE eu.email = :email) " +
+           "GROUP BY l.id, u.email, l.startDate, l.endDate, l.returnDate, l.price ORDER BY l.id")
+    List<LoanSummary> findSummariesByUserEmail(String email);
+
+    @Query("SELECT new be.ucll.dto.LoanSummary(l.id, u.email, l.startDate, l.endDate, l.returnDate, l.price, COUNT(p)) " +
+           "FROM Loan l JOIN l.user u LEFT JOIN l.publications p WHERE u.email = :email AND l.endDate > :currentDate " +
+           "GROUP BY l.id, u.email, l.startDate, l.endDate, l.returnDate, l.price ORDER BY l.id")
+    List<LoanSummary> findSummariesByUserEmailAndEndDateAfter(String email, LocalDate currentDate);
+
+    @Query("SELECT DISTINCT l.user.email FROM Loan l WHERE l.user.email IN :emails AND l.endDate > :currentDate")
+    List<String> findUserEmailsWithLoansEndingAfter(Collection<String> emails, LocalDate currentDate);
+
+    // Pages fetch only to-one associations, a collection fetch would make Hibernate apply the limit in memory.
+    // Publications of a page are loaded in batches (see Loan.publications).
+    @EntityGraph(attributePaths = {"user", "user.profile"})
+    List<Loan> findWithDetailsByUserEmailAndIdGreaterThanOrderByIdAsc(String email, Long id, Limit limit);
+
+    @EntityGraph(attributePaths = {"user", "user.profile"})
+    List<Loan> findWithDetailsByUserEmailAndEndDateAfterAndIdGreaterThanOrderByIdAsc(String email, LocalDate currentDate, Long id, Limit limit);
+
+    @EntityGraph(attributePaths = {"user", "user.profile"})
+    @QueryHints(@QueryHint(name = RepositoryHints.FETCH_SIZE, value = RepositoryHints.STREAM_FETCH_SIZE))
+    Stream<Loan> streamByUserEmailOrderByIdAsc(String email);
+
+    @EntityGraph(attributePaths = {"user", "user.profile"})
+    @QueryHints(@QueryHint(name = RepositoryHints.FETCH_SIZE, value = RepositoryHints.STREAM_FETCH_SIZE))
+    Stream<Loan> streamByUserEmailAndEndDateAfterOrderByIdAsc(String email, LocalDate currentDate);
 }
@@ -0,0 +1,167 @@
+package be.ucll.repository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.hibernate.boot.spi.SessionFactoryOptions;
+import org.hibernate.cache.cfg.spi.DomainDataRegionBuildingContext;
+import org.hibernate.cache.cfg.spi.DomainDataRegionConfig;
+import org.hibernate.cache.spi.support.DomainDataStorageAccess;
+import org.hibernate.cache.spi.support.RegionFactoryTemplate;
+import org.hibernate.cache.spi.support.StorageAccess;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+/// Hibernate second-level cache kept in maps of this JVM, one map per region.
+/// Entity and query regions hold at most MAX_ENTRIES_SETTING entries: a new key in a full region drops
+/// the least recently used entry, like UserCache. The timestamps region is not bounded, it has one
+/// entry per table.
+/// Every region counts its hits, misses, puts and evictions for the Actuator metrics of SecondLevelCache.
+public class LocalCacheRegionFactory extends RegionFactoryTemplate {
+
+    public static final String MAX_ENTRIES_SETTING = "library.cache.max_entries";
+    public static final int DEFAULT_MAX_ENTRIES = 10000;
+
+    private final Map<String, LocalStorage> regions = new ConcurrentHashMap<>();
+    private int maxEntries = DEFAULT_MAX_ENTRIES;
+
+    @Override
+    protected void prepareForUse(SessionFactoryOptions settings, Map<String, Object> configValues) {
+        Object configured = configValues.get(MAX_ENTRIES_SETTING);
+        if (configured != null) {
+            maxEntries = Integer.parseInt(configured.toString());
+        }
+    }
+
+    @Override
+    protected void releaseFromUse() {
+        regions.values().forEach(LocalStorage::evictData);
+        regions.clear();
+    }
+
+    @Override
+    protected DomainDataStorageAccess createDomainDataStorageAccess(DomainDataRegionConfig regionConfig,
+        DomainDataRegionBuildingContext buildingContext) {
+        return storage(regionConfig.getRegionName(), maxEntries);
+    }
+
+    @Override
+    protected StorageAccess createQueryResultsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        return storage(regionName, maxEntries);
+    }
+
+    @Override
+    protected StorageAccess createTimestampsRegionStorageAccess(String regionName, SessionFactoryImplementor sessionFactory) {
+        return storage(regionName, Integer.MAX_VALUE);
+    }
+
+    /// Returns the storage of the region, or null when Hibernate did not build the region yet.
+    /// Query regions are built on their first use.
+    public LocalStorage getRegion(String regionName) {
+        return regions.get(regionName);
+    }
+
+    private LocalStorage storage(String regionName, int maxEntries) {
+        return regions.computeIfAbsent(regionName, name -> new LocalStorage(maxEntries));
+    }
+
+    public static class LocalStorage implements DomainDataStorageAccess {
+
+        private final Map<Object, Object> entries;
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder puts = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        LocalStorage(int maxEntries) {
+            this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                    boolean full = size() > maxEntries;
+                    if (full) {
+                        evictions.increment();
+                    }
+                    return full;
+                }
+            };
+        }
+
+        @Override
+        public Object getFromCache(Object key, SharedSessionContractImplementor session) {
+            Object value;
+            synchronized (entries) {
+                value = entries.get(key);
+            }
+            if (value == null) {
+                misses.increment();
+            } else {
+                hits.increment();
+            }
+            return value;
+        }
+
+        @Override
+        public void putIntoCache(Object key, Object value, SharedSessionContractImplementor session) {
+            synchronized (entries) {
+                entries.put(key, value);
+            }
+            puts.increment();
+        }
+
+        @Override
+        public boolean contains(Object key) {
+            synchronized (entries) {
+                return entries.containsKey(key);
+            }
+        }
+
+        @Override
+        public void evictData() {
+            synchronized (entries) {
+                entries.clear();
+            }
+        }
+
+        @Override
+        public void evictData(Object key) {
+            synchronized (entries) {
+                entries.remove(key);
+            }
+        }
+
+        @Override
+        public void release() {
+            evictData();
+        }
+
+        public long getHits() {
+            return hits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        public long getPuts() {
+            return puts.sum();
+        }
+
+        /// Entries dropped to make room for new keys, explicit evictions are not counted.
+        public long getEvictions() {
+            return evictions.sum();
+        }
+
+        public int size() {
+            synchronized (entries) {
+                return entries.size();
+            }
+        }
+
+        public double getHitRatio() {
+            long requests = getHits() + getMisses();
+            return requests == 0 ? 0 : (double) getHits() / requests;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package be.ucll.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/// JDBC access for the overdue loan scan: chunks of open loans in (end_date, loan_id) order,
+/// the fines found and the checkpoint of the scan.
+@Repository
+public class OverdueLoanRepository {
+
+    private static final String OVERDUE_LOAN_COLUMNS = "SELECT l.loan_id, l.user_id, l.end_date, " + //
+                "(SELECT COUNT(*) FROM loan_publications lp WHERE lp.loan_id = l.loan_id) AS publications " + //
+                "FROM loans l WHERE l.return_date IS NULL AND l.end_date < ? ";
+    // the keyset is spelled out instead of (end_date, loan_id) > (?, ?) so H2 seeks idx_loans_end_date_loan
+    public static final String FIRST_CHUNK_QUERY = OVERDUE_LOAN_COLUMNS + //
+                "ORDER BY l.end_date, l.loan_id LIMIT ?";
+    public static final String NEXT_CHUNK_QUERY = OVERDUE_LOAN_COLUMNS + //
+                "AND l.end_date >= ? AND (l.end_date > ? OR l.loan_id > ?) ORDER BY l.end_date, l.loan_id LIMIT ?";
+    public static final String MERGE_OVERDUE_LOAN_QUERY = "MERGE INTO overdue_loans (loan_id, user_id, end_date, days_late, fine, scan_date) " + //
+                "KEY (loan_id) VALUES (?, ?, ?, ?, ?, ?)";
+    public static final String DELETE_STALE_OVERDUE_LOANS_QUERY = "DELETE FROM overdue_loans WHERE scan_date < ?";
+    public static final String FIND_CHECKPOINT_QUERY = "SELECT scan_date, last_end_date, last_loan_id, scanned_loans, total_fines, completed " + //
+                "FROM scan_checkpoints WHERE scan_name = ?";
+    public static final String MERGE_CHECKPOINT_QUERY = "MERGE INTO scan_checkpoints " + //
+                "(scan_name, scan_date, last_end_date, last_loan_id, scanned_loans, total_fines, completed) " + //
+                "KEY (scan_name) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    public record OverdueLoan(long loanId, long userId, LocalDate endDate, int publications) {
+    }
+
+    /// Where a scan of scanDate stopped; lastEndDate and lastLoanId are null before the first chunk.
+    public record Checkpoint(LocalDate scanDate, LocalDate lastEndDate, Long lastLoanId, long scannedLoans,
+        long totalFines, boolean completed) {
+
+        public static Checkpoint start(LocalDate scanDate) {
+            return new Checkpoint(scanDate, null, null, 0, 0, false);
+        }
+    }
+
+    private JdbcTemplate jdbcTemplate;
+
+    public OverdueLoanRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /// Returns at most limit loans that are not returned and ended before today, following the checkpoint.
+    public List<OverdueLoan> findOverdueLoans(LocalDate today, Checkpoint after, int limit) {
+        if (after.lastLoanId() == null) {
+            return jdbcTemplate.query(FIRST_CHUNK_QUERY, (resultSet, rowNum) -> mapOverdueLoan(resultSet), today, limit);
+        }
+        return jdbcTemplate.query(NEXT_CHUNK_QUERY, (resultSet, rowNum) -> mapOverdueLoan(resultSet),
+            today, after.lastEndDate(), after.lastEndDate(), after.lastLoanId(), limit);
+    }
+
+    /// Inserts or replaces the fines, rows are {loan_id, user_id, end_date, days_late, fine, scan_date}.
+    public void saveOverdueLoans(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate(MERGE_OVERDUE_LOAN_QUERY, rows);
+    }
+
+    public int deleteOverdueLoansScannedBefore(LocalDate scanDate) {
+        return jdbcTemplate.update(DELETE_STALE_OVERDUE_LOANS_QUERY, scanDate);
+    }
+
+    public Optional<Checkpoint> findCheckpoint(String scanName) {
+        return jdbcTemplate.query(FIND_CHECKPOINT_QUERY, (resultSet, rowNum) -> new Checkpoint(
+            resultSet.getDate("scan_date").toLocalDate(),
+            resultSet.getDate("last_end_date") == null ? null : resultSet.getDate("last_end_date").toLocalDate(),
+            resultSet.getObject("last_loan_id", Long.class),
+            resultSet.getLong("scanned_loans"),
+            resultSet.getLong("total_fines"),
+            resultSet.getBoolean("completed")), scanName).stream().findFirst();
+    }
+
+    public void saveCheckpoint(String scanName, Checkpoint checkpoint) {
+        jdbcTemplate.update(MERGE_CHECKPOINT_QUERY, scanName, checkpoint.scanDate(), checkpoint.lastEndDate(),
+            checkpoint.lastLoanId(), checkpoint.scannedLoans(), checkpoint.totalFines(), checkpoint.completed());
+    }
+
+    private OverdueLoan mapOverdueLoan(ResultSet resultSet) throws SQLException {
+        return new OverdueLoan(
+            resultSet.getLong("loan_id"),
+            resultSet.getLong("user_id"),
+            resultSet.getDate("end_date").toLocalDate(),
+            resultSet.getInt("publications"));
+    }
+}
@@ -0,0 +1,76 @@
+package be.ucll.repository;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import be.ucll.model.Publication;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+
+/// Keeps PublicationSearchIndex and PublicationStockIndex in line with the publications table.
+/// The callbacks run at flush time, so inside a transaction the changes are collected per publication
+/// and only applied after the commit; a rolled back insert, edit or delete never reaches the indexes.
+@Component
+public class PublicationIndexListener {
+
+    private PublicationSearchIndex publicationSearchIndex;
+    private PublicationStockIndex publicationStockIndex;
+
+    public PublicationIndexListener(PublicationSearchIndex publicationSearchIndex, PublicationStockIndex publicationStockIndex) {
+        this.publicationSearchIndex = publicationSearchIndex;
+        this.publicationStockIndex = publicationStockIndex;
+    }
+
+    @PostPersist
+    @PostUpdate
+    public void index(Publication publication) {
+        afterCommit(publication.getId(), publication);
+    }
+
+    @PostRemove
+    public void remove(Publication publication) {
+        afterCommit(publication.getId(), null);
+    }
+
+    /// A null publication removes the id from the indexes.
+    private void afterCommit(Long publicationId, Publication publication) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+            || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            apply(publicationId, publication);
+            return;
+        }
+        @SuppressWarnings("unchecked")
+        Map<Long, Publication> pending = (Map<Long, Publication>) TransactionSynchronizationManager.getResource(this);
+        if (pending == null) {
+            Map<Long, Publication> changes = new LinkedHashMap<>();
+            TransactionSynchronizationManager.bindResource(this, changes);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    TransactionSynchronizationManager.unbindResourceIfPossible(PublicationIndexListener.this);
+                    if (status == STATUS_COMMITTED) {
+                        changes.forEach(PublicationIndexListener.this::apply);
+                    }
+                }
+            });
+            pending = changes;
+        }
+        // the last change of a publication in the transaction wins
+        pending.put(publicationId, publication);
+    }
+
+    private void apply(Long publicationId, Publication publication) {
+        if (publication == null) {
+            publicationSearchIndex.remove(publicationId);
+            publicationStockIndex.remove(publicationId);
+        } else {
+            publicationSearchIndex.put(publication);
+            publicationStockIndex.put(publication);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package be.ucll.repository;
+
+import org.springframework.stereotype.Component;
+
+import be.ucll.model.Publication;
+import be.ucll.utilits.AvailabilityLedger;
+import jakarta.persistence.PostLoad;
+
+/// Applies the ledger copies to every loaded publication, also to those assembled from the second-level
+/// cache, so callers never see a column that the flusher has not caught up with yet.
+@Component
+public class PublicationLedgerListener {
+
+    private AvailabilityLedger availabilityLedger;
+
+    public PublicationLedgerListener(AvailabilityLedger availabilityLedger) {
+        this.availabilityLedger = availabilityLedger;
+    }
+
+    @PostLoad
+    public void loadLedgerCopies(Publication publication) {
+        publication.loadLedgerCopies(availabilityLedger);
+    }
+}
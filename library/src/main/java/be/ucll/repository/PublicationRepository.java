@@ -1,19 +1,62 @@
 package be.ucll.repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import be.ucll.dto.PublicationSummary;
 import be.ucll.model.Publication;
+import jakarta.persistence.QueryHint;
 
 @Repository
-public interface PublicationRepository extends JpaRepository<Publication, Long> {
+public interface PublicationRepository extends JpaRepository<Publication, Long>, PublicationRepositoryCustom {
 
+    @QueryHints({
+        @QueryHint(name = RepositoryHints.CACHEABLE, value = "true"),
+        @QueryHint(name = RepositoryHints.CACHE_REGION, value = SecondLevelCache.PUBLICATION_QUERY_REGION)
+    })
     public List<Publication> findByAvailableCopiesGreaterThanEqual(Integer copies);
 
+    @QueryHints({
+        @QueryHint(name = RepositoryHints.CACHEABLE, value = "true"),
+        @QueryHint(name = RepositoryHints.CACHE_REGION, value = SecondLevelCache.PUBLICATION_QUERY_REGION)
+    })
     @Query("SELECT p FROM Publication p WHERE (:title IS NULL OR p.title LIKE %:title%) " +
             "AND (:type IS NULL OR p.type = LOWER(:type))")
     public List<Publication> findByTitleAndType(String title, String type);
+
+    public List<Publication> findByOrderByAvailableCopiesAscIdAsc(Limit limit);
+
+    public List<Publication> findByAvailableCopiesGreaterThanEqualAndIdGreaterThanOrderByIdAsc(Integer copies, Long id, Limit limit);
+
+    @Query("SELECT p FROM Publication p WHERE (:title IS NULL OR p.title LIKE %:title%) " +
+            "AND (:type IS NULL OR p.type = LOWER(:type)) AND p.id > :id ORDER BY p.id")
+    public List<Publication> findByTitleAndTypeAndIdGreaterThan(String title, String type, Long id, Limit limit);
+
+    @Query("SELECT new be.ucll.dto.PublicationSummary(p.id, p.type, p.title, p.year, p.availableCopies) " +
+            "FROM Publication p WHERE (:title IS NULL OR p.title LIKE %:title%) " +
+            "AND (:type IS NULL OR p.type = LOWER(:type)) ORDER BY p.id")
+    public List<PublicationSummary> findSummariesByTitleAndType(String title, String type);
+
+    @Query("SELECT new be.ucll.dto.PublicationSummary(p.id, p.type, p.title, p.year, p.availableCopies) " +
+            "FROM Publication p WHERE p.availableCopies >= :copies ORDER BY p.id")
+    public List<PublicationSummary> findSummariesByAvailableCopiesGreaterThanEqual(Integer copies);
+
+    @Query("SELECT new be.ucll.dto.PublicationSummary(p.id, p.type, p.title, p.year, p.availableCopies) " +
+            "FROM Publication p WHERE p.id IN :ids ORDER BY p.id")
+    public List<PublicationSummary> findSummariesByIdIn(Collection<Long> ids);
+
+    @QueryHints(@QueryHint(name = RepositoryHints.FETCH_SIZE, value = RepositoryHints.STREAM_FETCH_SIZE))
+    public Stream<Publication> streamByAvailableCopiesGreaterThanEqualOrderByIdAsc(Integer copies);
+
+    @QueryHints(@QueryHint(name = RepositoryHints.FETCH_SIZE, value = RepositoryHints.STREAM_FETCH_SIZE))
+    @Query("SELECT p FROM Publication p WHERE (:title IS NULL OR p.title LIKE %:title%) " +
+            "AND (:type IS NULL OR p.type = LOWER(:type)) ORDER BY p.id")
+    public Stream<Publication> streamByTitleAndType(String title, String type);
 }
@@ -0,0 +1,12 @@
+package be.ucll.repository;
+
+import java.util.List;
+
+import be.ucll.model.Publication;
+import jakarta.transaction.Transactional;
+
+public interface PublicationRepositoryCustom {
+
+    @Transactional
+    List<Publication> findAllByIdInOrder(List<Long> ids);
+}
@@ -0,0 +1,32 @@
+package be.ucll.repository;
+
+import java.util.List;
+
+import org.hibernate.Session;
+
+import be.ucll.model.Publication;
+import jakarta.persistence.EntityManager;
+
+public class PublicationRepositoryCustomImpl implements PublicationRepositoryCustom {
+
+    public static final int MULTI_LOAD_BATCH_SIZE = 500;
+
+    private EntityManager entityManager;
+
+    public PublicationRepositoryCustomImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    /// Loads publications with IN queries of at most MULTI_LOAD_BATCH_SIZE ids. Publications already in the
+    /// persistence context are not queried again. The result has the order of the given ids, repeated ids
+    /// give the same instance and missing ids give null.
+    @Override
+    public List<Publication> findAllByIdInOrder(List<Long> ids) {
+        return entityManager.unwrap(Session.class)
+            .byMultipleIds(Publication.class)
+            .withBatchSize(MULTI_LOAD_BATCH_SIZE)
+            .enableSessionCheck(true)
+            .enableOrderedReturn(true)
+            .multiLoad(ids);
+    }
+}
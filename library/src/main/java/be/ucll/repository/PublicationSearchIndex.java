@@ -0,0 +1,209 @@
+package be.ucll.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.springframework.stereotype.Component;
+
+import be.ucll.model.Book;
+import be.ucll.model.Magazine;
+import be.ucll.model.Publication;
+
+/// In-memory inverted index over the publication catalogue.
+/// Titles are indexed by trigrams, which answers the same substring match as "title LIKE %title%" without
+/// a table scan. Words of titles, authors and editors are indexed for ranked full-text search.
+/// The index is kept up to date by PublicationIndexListener and only answers queries once it has been
+/// built from the whole table (see isReady).
+
+@Component
+public class PublicationSearchIndex {
+
+    public static final int GRAM_SIZE = 3;
+    public static final int TITLE_WEIGHT = 2;
+    public static final int PERSON_WEIGHT = 1;
+
+    private record Entry(String title, String type, Set<String> titleWords, Set<String> personWords) {}
+
+    private final Map<Long, Entry> entries = new HashMap<>();
+    private final Map<String, Set<Long>> titleGrams = new HashMap<>();
+    private final Map<String, Set<Long>> words = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready = false;
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    public void put(Publication publication) {
+        if (publication.getId() == null) {
+            return;
+        }
+        String person = null;
+        if (publication instanceof Book book) {
+            person = book.getAuthor();
+        } else if (publication instanceof Magazine magazine) {
+            person = magazine.getEditor();
+        }
+        Entry entry = new Entry(publication.getTitle(), publication.getType(), words(publication.getTitle()), words(person));
+
+        lock.writeLock().lock();
+        try {
+            removeEntry(publication.getId());
+            entries.put(publication.getId(), entry);
+            grams(entry.title()).forEach(gram -> titleGrams.computeIfAbsent(gram, key -> new HashSet<>()).add(publication.getId()));
+            entry.titleWords().forEach(word -> words.computeIfAbsent(word, key -> new HashSet<>()).add(publication.getId()));
+            entry.personWords().forEach(word -> words.computeIfAbsent(word, key -> new HashSet<>()).add(publication.getId()));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(Long publicationId) {
+        lock.writeLock().lock();
+        try {
+            removeEntry(publicationId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            titleGrams.clear();
+            words.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /// Ids, ascending, of publications whose title contains title (case sensitive) and whose type equals
+    /// the lower cased type. Null parameters match everything, as in PublicationRepository.findByTitleAndType.
+    public List<Long> findByTitleAndType(String title, String type, int limit) {
+        lock.readLock().lock();
+        try {
+            Collection<Long> candidates = title == null || title.length() < GRAM_SIZE
+                ? entries.keySet()
+                : titleCandidates(title);
+
+            TreeSet<Long> result = new TreeSet<>();
+            for (Long id : candidates) {
+                Entry entry = entries.get(id);
+                boolean titleMatches = title == null || entry.title().contains(title);
+                boolean typeMatches = type == null || type.toLowerCase().equals(entry.type());
+                if (titleMatches && typeMatches) {
+                    result.add(id);
+                }
+            }
+            return result.stream().limit(limit).toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /// Ids of publications with at least one word of the query in their title, author or editor,
+    /// best matches first. Title words count more than author and editor words.
+    public List<Long> search(String query, String type, int limit) {
+        lock.readLock().lock();
+        try {
+            Map<Long, Integer> scores = new HashMap<>();
+            for (String word : words(query)) {
+                for (Long id : words.getOrDefault(word, Set.of())) {
+                    Entry entry = entries.get(id);
+                    if (type != null && !type.toLowerCase().equals(entry.type())) {
+                        continue;
+                    }
+                    int score = entry.titleWords().contains(word) ? TITLE_WEIGHT : 0;
+                    score += entry.personWords().contains(word) ? PERSON_WEIGHT : 0;
+                    scores.merge(id, score, Integer::sum);
+                }
+            }
+            return scores.entrySet()
+            .stream()
+            .sorted(Comparator.<Map.Entry<Long, Integer>>comparingInt(Map.Entry::getValue).reversed()
+                .thenComparing(Map.Entry::getKey))
+            .limit(limit)
+            .map(Map.Entry::getKey)
+            .toList();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private Collection<Long> titleCandidates(String title) {
+        List<Set<Long>> postings = new ArrayList<>();
+        for (String gram : grams(title)) {
+            Set<Long> posting = titleGrams.get(gram);
+            if (posting == null) {
+                return Set.of();
+            }
+            postings.add(posting);
+        }
+        postings.sort(Comparator.comparingInt(Set::size));
+
+        Set<Long> candidates = new HashSet<>(postings.get(0));
+        for (int i = 1; i < postings.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(postings.get(i));
+        }
+        return candidates;
+    }
+
+    private void removeEntry(Long publicationId) {
+        Entry entry = entries.remove(publicationId);
+        if (entry == null) {
+            return;
+        }
+        grams(entry.title()).forEach(gram -> removePosting(titleGrams, gram, publicationId));
+        entry.titleWords().forEach(word -> removePosting(words, word, publicationId));
+        entry.personWords().forEach(word -> removePosting(words, word, publicationId));
+    }
+
+    private static void removePosting(Map<String, Set<Long>> postings, String key, Long publicationId) {
+        Set<Long> posting = postings.get(key);
+        if (posting == null) {
+            return;
+        }
+        posting.remove(publicationId);
+        if (posting.isEmpty()) {
+            postings.remove(key);
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> result = new HashSet<>();
+        if (text == null) {
+            return result;
+        }
+        for (int i = 0; i + GRAM_SIZE <= text.length(); i++) {
+            result.add(text.substring(i, i + GRAM_SIZE));
+        }
+        return result;
+    }
+
+    private static Set<String> words(String text) {
+        Set<String> result = new HashSet<>();
+        if (text == null) {
+            return result;
+        }
+        for (String word : text.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty()) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+}
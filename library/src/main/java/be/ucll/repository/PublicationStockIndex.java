@@ -0,0 +1,178 @@
+package be.ucll.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.springframework.stereotype.Component;
+
+import be.ucll.dto.StockBucket;
+import be.ucll.model.Publication;
+import be.ucll.utilits.AvailabilityLedger;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/// In-memory index of the publications by available copies, a sorted map from copies to the ids with
+/// that many copies. Threshold queries, the lowest stock and stock histograms are answered from it
+/// without reading the publications table.
+/// Publications are added by PublicationIndexListener and moved on every lend and give back of the
+/// AvailabilityLedger, so the index follows the ledger and not the flushed column. Like
+/// PublicationSearchIndex it only answers queries once it has been built from the whole table.
+/// There is no index wide lock, lends and give backs run this listener on their own thread: moves of one
+/// publication are serialized by its entry in copies, moves of different publications run in parallel.
+/// Queries are weakly consistent, a publication that is being moved can be missing from one answer.
+@Component
+public class PublicationStockIndex implements AvailabilityLedger.Listener {
+
+    private final Map<Long, Integer> copies = new ConcurrentHashMap<>();
+    // emptied postings are kept, there are at most as many as distinct copy counts, and queries skip them
+    private final NavigableMap<Integer, Set<Long>> publicationsByCopies = new ConcurrentSkipListMap<>();
+    private volatile boolean ready = false;
+    private AvailabilityLedger availabilityLedger;
+
+    public PublicationStockIndex(AvailabilityLedger availabilityLedger) {
+        this.availabilityLedger = availabilityLedger;
+    }
+
+    @PostConstruct
+    public void listenToLedger() {
+        availabilityLedger.addListener(this);
+    }
+
+    @PreDestroy
+    public void stopListening() {
+        availabilityLedger.removeListener(this);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        ready = true;
+    }
+
+    public void put(Publication publication) {
+        if (publication.getId() == null) {
+            return;
+        }
+        copies.compute(publication.getId(), (publicationId, current) -> {
+            Integer ledgerCopies = availabilityLedger.getAvailableCopies(publicationId);
+            return move(publicationId, current, ledgerCopies == null ? publication.getAvailableCopies() : ledgerCopies);
+        });
+    }
+
+    /// Reads the count again instead of trusting the order of the calls. The read happens while the
+    /// entry of the publication is held, so the last move of a publication sees its last change.
+    @Override
+    public void copiesChanged(long publicationId, int delta) {
+        copies.computeIfPresent(publicationId, (id, current) -> {
+            Integer ledgerCopies = availabilityLedger.getAvailableCopies(id);
+            return ledgerCopies == null ? current : move(id, current, ledgerCopies);
+        });
+    }
+
+    public void remove(Long publicationId) {
+        copies.computeIfPresent(publicationId, (id, current) -> {
+            removePosting(current, id);
+            return null;
+        });
+    }
+
+    /// Not atomic with concurrent changes, it is meant for rebuilding the index when the data is reseeded.
+    public void clear() {
+        copies.clear();
+        publicationsByCopies.clear();
+    }
+
+    public int size() {
+        return copies.size();
+    }
+
+    /// Available copies of every indexed publication, by id.
+    public NavigableMap<Long, Integer> getAvailableCopies() {
+        return new TreeMap<>(copies);
+    }
+
+    /// Ids, ascending, of the publications with at least minimumCopies available copies.
+    public List<Long> findWithAtLeast(int minimumCopies) {
+        List<Long> ids = new ArrayList<>();
+        publicationsByCopies.tailMap(minimumCopies, true).values().forEach(ids::addAll);
+        ids.sort(null);
+        return ids;
+    }
+
+    /// One keyset page of findWithAtLeast: at most limit ids above afterId, ascending.
+    public List<Long> findWithAtLeast(int minimumCopies, long afterId, int limit) {
+        List<Long> ids = findWithAtLeast(minimumCopies);
+        int from = Collections.binarySearch(ids, afterId + 1);
+        from = from < 0 ? -from - 1 : from;
+        return new ArrayList<>(ids.subList(from, Math.min(ids.size(), from + limit)));
+    }
+
+    /// Ids of the limit publications with the fewest available copies, fewest first and then by id.
+    public List<Long> findLowest(int limit) {
+        List<Long> ids = new ArrayList<>(Math.min(limit, copies.size()));
+        for (Set<Long> posting : publicationsByCopies.values()) {
+            for (Long id : posting) {
+                if (ids.size() == limit) {
+                    return ids;
+                }
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /// Counts the publications with at least minimumCopies available copies per bucket of bucketSize
+    /// copies, starting at a multiple of bucketSize. Empty buckets are left out.
+    public List<StockBucket> histogram(int minimumCopies, int bucketSize) {
+        List<StockBucket> buckets = new ArrayList<>();
+        int bucketStart = -1;
+        int publications = 0;
+        for (Map.Entry<Integer, Set<Long>> entry : publicationsByCopies.tailMap(minimumCopies, true).entrySet()) {
+            int posting = entry.getValue().size();
+            if (posting == 0) {
+                continue;
+            }
+            int start = entry.getKey() / bucketSize * bucketSize;
+            if (start != bucketStart && publications > 0) {
+                buckets.add(new StockBucket(bucketStart, bucketStart + bucketSize - 1, publications));
+                publications = 0;
+            }
+            bucketStart = start;
+            publications += posting;
+        }
+        if (publications > 0) {
+            buckets.add(new StockBucket(bucketStart, bucketStart + bucketSize - 1, publications));
+        }
+        return buckets;
+    }
+
+    /// Called while the entry of the publication in copies is held, returns its new count.
+    private Integer move(Long publicationId, Integer current, int availableCopies) {
+        if (current != null) {
+            if (current == availableCopies) {
+                return current;
+            }
+            removePosting(current, publicationId);
+        }
+        publicationsByCopies.computeIfAbsent(availableCopies, key -> new ConcurrentSkipListSet<>()).add(publicationId);
+        return availableCopies;
+    }
+
+    private void removePosting(int availableCopies, Long publicationId) {
+        // null when clear ran meanwhile
+        Set<Long> posting = publicationsByCopies.get(availableCopies);
+        if (posting != null) {
+            posting.remove(publicationId);
+        }
+    }
+}
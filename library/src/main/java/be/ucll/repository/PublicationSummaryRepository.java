@@ -0,0 +1,91 @@
+package be.ucll.repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import be.ucll.dto.PublicationSummary;
+import be.ucll.utilits.AvailabilityLedger;
+
+/// Reads publication summaries with plain JDBC, outside of any persistence context, for the reactive
+/// catalogue. Lists are read one keyset page at a time, a connection is only held while a page is read.
+/// Copies in the availability ledger win over the stored column, like PublicationLedgerListener.
+@Repository
+public class PublicationSummaryRepository {
+
+    public static final String SELECT_SUMMARIES_QUERY = "SELECT publication_id, type, title, publication_year, available_copies " + //
+                "FROM publications";
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private AvailabilityLedger availabilityLedger;
+
+    public PublicationSummaryRepository(NamedParameterJdbcTemplate jdbcTemplate, AvailabilityLedger availabilityLedger) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.availabilityLedger = availabilityLedger;
+    }
+
+    /// Returns at most limit summaries with an id above afterId, in id order.
+    public List<PublicationSummary> findPageByTitleAndType(String title, String type, Long afterId, Integer limit) {
+        Map<String, Object> parameters = new HashMap<>();
+        List<String> conditions = new ArrayList<>();
+        conditions.add("publication_id > :afterId");
+        if (title != null) {
+            conditions.add("title LIKE :title");
+            parameters.put("title", "%" + title + "%");
+        }
+        if (type != null) {
+            conditions.add("type = LOWER(:type)");
+            parameters.put("type", type);
+        }
+        return findPage(conditions, parameters, afterId, limit);
+    }
+
+    /// Returns at most limit summaries with an id above afterId, in id order.
+    public List<PublicationSummary> findPageByAvailableCopiesGreaterThanEqual(Integer copies, Long afterId, Integer limit) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("copies", copies);
+        return findPage(List.of("available_copies >= :copies", "publication_id > :afterId"), parameters, afterId, limit);
+    }
+
+    /// Returns the summaries in the order of the ids, ids that are not found are skipped.
+    public List<PublicationSummary> findAllByIdInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, PublicationSummary> summaries = new HashMap<>();
+        jdbcTemplate.query(SELECT_SUMMARIES_QUERY + " WHERE publication_id IN (:ids)", Map.of("ids", ids),
+            (ResultSet resultSet) -> {
+                PublicationSummary summary = mapSummary(resultSet, 0);
+                summaries.put(summary.publicationId(), summary);
+            });
+        return ids.stream()
+            .map(summaries::get)
+            .filter(summary -> summary != null)
+            .toList();
+    }
+
+    private List<PublicationSummary> findPage(List<String> conditions, Map<String, Object> parameters, Long afterId,
+        Integer limit) {
+        parameters.put("afterId", afterId);
+        parameters.put("limit", limit);
+        return jdbcTemplate.query(SELECT_SUMMARIES_QUERY + " WHERE " + String.join(" AND ", conditions) +
+            " ORDER BY publication_id LIMIT :limit", parameters, this::mapSummary);
+    }
+
+    private PublicationSummary mapSummary(ResultSet resultSet, int rowNum) throws SQLException {
+        long publicationId = resultSet.getLong("publication_id");
+        Integer ledgerCopies = availabilityLedger.getAvailableCopies(publicationId);
+        return new PublicationSummary(
+            publicationId,
+            resultSet.getString("type"),
+            resultSet.getString("title"),
+            resultSet.getInt("publication_year"),
+            ledgerCopies != null ? ledgerCopies : resultSet.getInt("available_copies"));
+    }
+}
@@ -0,0 +1,10 @@
+package be.ucll.repository;
+
+import org.hibernate.jpa.HibernateHints;
+
+public class RepositoryHints {
+    public static final String FETCH_SIZE = HibernateHints.HINT_FETCH_SIZE;
+    public static final String STREAM_FETCH_SIZE = "500";
+    public static final String CACHEABLE = HibernateHints.HINT_CACHEABLE;
+    public static final String CACHE_REGION = HibernateHints.HINT_CACHE_REGION;
+}
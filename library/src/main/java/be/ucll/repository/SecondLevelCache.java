@@ -0,0 +1,94 @@
+package be.ucll.repository;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.spi.CacheImplementor;
+import org.springframework.stereotype.Component;
+
+import be.ucll.model.Profile;
+import be.ucll.model.Publication;
+import be.ucll.repository.LocalCacheRegionFactory.LocalStorage;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+
+/// Evicts the Hibernate second-level cache for rows written with plain JDBC and publishes the
+/// per region statistics of LocalCacheRegionFactory. Hibernate keeps the cache up to date for
+/// changes made through entities; JDBC writes bypass it, so every writer of publications or
+/// profiles that does not go through Hibernate calls one of the evict methods.
+@Component
+public class SecondLevelCache {
+
+    public static final String PUBLICATION_REGION = "publications";
+    public static final String PROFILE_REGION = "profiles";
+    public static final String PUBLICATION_QUERY_REGION = "publication-queries";
+
+    public static final String METRIC_REQUESTS = "library.cache.requests";
+    public static final String METRIC_PUTS = "library.cache.puts";
+    public static final String METRIC_EVICTIONS = "library.cache.evictions";
+    public static final String METRIC_HIT_RATIO = "library.cache.hit.ratio";
+    public static final String METRIC_SIZE = "library.cache.size";
+
+    private CacheImplementor cache;
+
+    public SecondLevelCache(EntityManagerFactory entityManagerFactory, MeterRegistry meterRegistry) {
+        this.cache = (CacheImplementor) entityManagerFactory.unwrap(SessionFactory.class).getCache();
+        if (cache.getRegionFactory() instanceof LocalCacheRegionFactory regionFactory) {
+            List.of(PUBLICATION_REGION, PROFILE_REGION, PUBLICATION_QUERY_REGION)
+                .forEach(region -> registerMetrics(meterRegistry, regionFactory, region));
+        }
+    }
+
+    /// The stock of these publications changed in the database, cached query results can be stale as well.
+    public void evictPublications(Collection<Long> publicationIds) {
+        publicationIds.forEach(publicationId -> cache.evictEntityData(Publication.class, publicationId));
+        cache.evictQueryRegion(PUBLICATION_QUERY_REGION);
+    }
+
+    public void evictProfiles(Collection<Long> profileIds) {
+        profileIds.forEach(profileId -> cache.evictEntityData(Profile.class, profileId));
+    }
+
+    public void evictAll() {
+        cache.evictAllRegions();
+    }
+
+    private void registerMetrics(MeterRegistry meterRegistry, LocalCacheRegionFactory regionFactory, String region) {
+        FunctionCounter.builder(METRIC_REQUESTS, regionFactory, statistic(region, LocalStorage::getHits))
+            .tags("region", region, "result", "hit")
+            .description("Second-level cache lookups answered from the region")
+            .register(meterRegistry);
+        FunctionCounter.builder(METRIC_REQUESTS, regionFactory, statistic(region, LocalStorage::getMisses))
+            .tags("region", region, "result", "miss")
+            .description("Second-level cache lookups that went to the database")
+            .register(meterRegistry);
+        FunctionCounter.builder(METRIC_PUTS, regionFactory, statistic(region, LocalStorage::getPuts))
+            .tag("region", region)
+            .description("Entries stored in the second-level cache region")
+            .register(meterRegistry);
+        FunctionCounter.builder(METRIC_EVICTIONS, regionFactory, statistic(region, LocalStorage::getEvictions))
+            .tag("region", region)
+            .description("Least recently used entries dropped from the full second-level cache region")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_HIT_RATIO, regionFactory, statistic(region, LocalStorage::getHitRatio))
+            .tag("region", region)
+            .description("Share of the second-level cache lookups of the region that were hits")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_SIZE, regionFactory, statistic(region, LocalStorage::size))
+            .tag("region", region)
+            .description("Entries currently in the second-level cache region")
+            .register(meterRegistry);
+    }
+
+    // query regions only exist after their first query, until then every statistic is 0
+    private static ToDoubleFunction<LocalCacheRegionFactory> statistic(String region, ToDoubleFunction<LocalStorage> value) {
+        return regionFactory -> {
+            LocalStorage storage = regionFactory.getRegion(region);
+            return storage == null ? 0 : value.applyAsDouble(storage);
+        };
+    }
+}
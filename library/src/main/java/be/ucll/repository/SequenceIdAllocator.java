@@ -0,0 +1,51 @@
+package be.ucll.repository;
+
+import java.util.List;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/// Hands out ids for rows written with plain JDBC from the same sequences Hibernate uses.
+/// The entities use pooled generators: every sequence value v stands for the block of ids up to v.
+/// The allocator claims whole blocks the same way, so JDBC and JPA inserts never get the same id.
+@Component
+public class SequenceIdAllocator {
+
+    // must match allocationSize of the @SequenceGenerator of the entities and INCREMENT BY in schema.sql
+    public static final int ALLOCATION_SIZE = 50;
+
+    private JdbcTemplate jdbcTemplate;
+
+    public SequenceIdAllocator(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /// Returns count unused ids in ascending order.
+    public long[] allocate(String sequence, int count) {
+        long[] ids = new long[count];
+        if (count == 0) {
+            return ids;
+        }
+        int blocks = (count + ALLOCATION_SIZE - 1) / ALLOCATION_SIZE;
+        List<Long> values = jdbcTemplate.queryForList(
+            "SELECT NEXT VALUE FOR " + sequence + " FROM SYSTEM_RANGE(1, ?)", Long.class, blocks);
+
+        int i = 0;
+        for (long value : values.stream().sorted().toList()) {
+            // the first value of a fresh sequence is 1, its block has no ids below it
+            for (long id = Math.max(1, value - ALLOCATION_SIZE + 1); id <= value && i < count; id++) {
+                ids[i++] = id;
+            }
+        }
+        if (i < count) {
+            return topUp(sequence, ids, i);
+        }
+        return ids;
+    }
+
+    private long[] topUp(String sequence, long[] ids, int allocated) {
+        long[] rest = allocate(sequence, ids.length - allocated);
+        System.arraycopy(rest, 0, ids, allocated, rest.length);
+        return ids;
+    }
+}
@@ -0,0 +1,183 @@
+package be.ucll.repository;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import be.ucll.model.User;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/// Read-through cache of users by email in front of UserRepository.findByEmail.
+/// The cache holds at most maxSize users (least recently used is dropped first) and every entry
+/// expires after the time to live. Users are cached with their memberships loaded, so they can be
+/// used after the session that loaded them is closed. Unknown emails are not cached.
+/// A cached user is one detached instance shared by all threads, it is read only: code that changes a
+/// user or its memberships loads its own managed copy from UserRepository and calls evict afterwards.
+/// A load that an evict overtakes is returned to its caller but not cached, see get.
+@Component
+public class UserCache {
+
+    public static final String METRIC_REQUESTS = "library.user.cache.requests";
+    public static final String METRIC_EVICTIONS = "library.user.cache.evictions";
+    public static final String METRIC_SIZE = "library.user.cache.size";
+
+    private UserRepository userRepository;
+    private int maxSize;
+    private long timeToLiveNanos;
+
+    private final Map<String, CachedUser> users;
+    // ticket of the newest load per email that is still running, evict withdraws it
+    private final Map<String, Object> loadTickets = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public UserCache(UserRepository userRepository,
+        MeterRegistry meterRegistry,
+        @Value("${library.user-cache.max-size:1000}") int maxSize,
+        @Value("${library.user-cache.time-to-live:30s}") Duration timeToLive
+    ) {
+        this.userRepository = userRepository;
+        this.maxSize = maxSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedUser> eldest) {
+                boolean full = size() > UserCache.this.maxSize;
+                if (full) {
+                    evictions.incrementAndGet();
+                }
+                return full;
+            }
+        };
+        registerMetrics(meterRegistry);
+    }
+
+    /// Returns the user with the email, loading it from the database on a miss. Returns null when no
+    /// such user exists.
+    /// Loads in a transaction of its own, so the cached user is never a managed entity of the caller's
+    /// session: it is detached as soon as get returns.
+    @Transactional(propagation = Propagation.REQUIRES_NEW, readOnly = true)
+    public User get(String email) {
+        Object ticket = new Object();
+        synchronized (users) {
+            CachedUser entry = users.get(email);
+            if (entry != null && !entry.isExpired()) {
+                hits.incrementAndGet();
+                return entry.user();
+            }
+            if (entry != null) {
+                users.remove(email);
+                evictions.incrementAndGet();
+            }
+            loadTickets.put(email, ticket);
+        }
+
+        misses.incrementAndGet();
+        User user = null;
+        try {
+            user = userRepository.findByEmail(email);
+            if (user != null) {
+                Hibernate.initialize(user.getMemberships());
+            }
+        } finally {
+            synchronized (users) {
+                // an evict or a newer load since the ticket was handed out: the user may be stale
+                if (loadTickets.remove(email, ticket) && user != null) {
+                    users.put(email, new CachedUser(user, System.nanoTime() + timeToLiveNanos));
+                }
+            }
+        }
+        return user;
+    }
+
+    /// Tells whether the user is cached, without going to the database or counting as a hit.
+    public boolean contains(String email) {
+        synchronized (users) {
+            CachedUser entry = users.get(email);
+            return entry != null && !entry.isExpired();
+        }
+    }
+
+    /// Inside a transaction the user is evicted again when it completes, so a load that read the
+    /// user before the change was committed does not stay cached.
+    public void evict(String email) {
+        remove(email);
+        if (TransactionSynchronizationManager.isSynchronizationActive()
+            && TransactionSynchronizationManager.isActualTransactionActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    remove(email);
+                }
+            });
+        }
+    }
+
+    private void remove(String email) {
+        synchronized (users) {
+            users.remove(email);
+            loadTickets.remove(email);
+        }
+    }
+
+    public void clear() {
+        synchronized (users) {
+            users.clear();
+            loadTickets.clear();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (users) {
+            return users.size();
+        }
+    }
+
+    private void registerMetrics(MeterRegistry meterRegistry) {
+        FunctionCounter.builder(METRIC_REQUESTS, hits, AtomicLong::get)
+            .tag("result", "hit")
+            .description("User lookups by email answered from the cache")
+            .register(meterRegistry);
+        FunctionCounter.builder(METRIC_REQUESTS, misses, AtomicLong::get)
+            .tag("result", "miss")
+            .description("User lookups by email that went to the database")
+            .register(meterRegistry);
+        FunctionCounter.builder(METRIC_EVICTIONS, evictions, AtomicLong::get)
+            .description("Users dropped from the cache because it was full or the entry expired")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_SIZE, this, UserCache::size)
+            .description("Users currently in the cache")
+            .register(meterRegistry);
+    }
+
+    private record CachedUser(User user, long expiresAt) {
+        boolean isExpired() {
+            return System.nanoTime() - expiresAt >= 0;
+        }
+    }
+}
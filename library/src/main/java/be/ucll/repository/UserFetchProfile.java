@@ -0,0 +1,43 @@
+package be.ucll.repository;
+
+import be.ucll.model.User;
+
+/// How much of a user is loaded next to the users table. Associations outside the profile stay
+/// unloaded proxies and are left out of the JSON.
+public enum UserFetchProfile {
+
+    SUMMARY("summary", null),
+    WITH_PROFILE("withProfile", User.GRAPH_WITH_PROFILE),
+    WITH_MEMBERSHIPS("withMemberships", User.GRAPH_WITH_MEMBERSHIPS);
+
+    private final String parameter;
+    private final String graph;
+
+    UserFetchProfile(String parameter, String graph) {
+        this.parameter = parameter;
+        this.graph = graph;
+    }
+
+    public String getParameter() {
+        return parameter;
+    }
+
+    /// Name of the entity graph to load with, null when only the users table is read.
+    public String getGraph() {
+        return graph;
+    }
+
+    /// Returns the profile with the given request parameter value, SUMMARY when no value is given
+    /// and null when the value is unknown.
+    public static UserFetchProfile fromParameter(String parameter) {
+        if (parameter == null) {
+            return SUMMARY;
+        }
+        for (UserFetchProfile profile : values()) {
+            if (profile.parameter.equals(parameter)) {
+                return profile;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,69 @@
+package be.ucll.repository;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import be.ucll.utilits.TimeTracker;
+
+@Repository
+public class UserPurgeRepository {
+
+    public static final int PURGE_CHUNK_SIZE = 1000;
+
+    public static final String SELECT_PROFILE_IDS_QUERY = "SELECT profile_id FROM users " + //
+                "WHERE user_id IN (:userIds) AND profile_id IS NOT NULL";
+    public static final String INSERT_DELETED_LOAN_EVENTS_QUERY = "INSERT INTO loan_events " + //
+                "(event_type, loan_id, user_id, event_date, publications, occurred_at) " + //
+                "SELECT 'DELETED', l.loan_id, l.user_id, :deletionDate, " + //
+                "(SELECT COUNT(*) FROM loan_publications lp WHERE lp.loan_id = l.loan_id), :occurredAt " + //
+                "FROM loans l WHERE l.user_id IN (:userIds)";
+    public static final String DELETE_LOAN_PUBLICATIONS_QUERY = "DELETE FROM loan_publications " + //
+                "WHERE loan_id IN (SELECT loan_id FROM loans WHERE user_id IN (:userIds))";
+    public static final String DELETE_LOANS_QUERY = "DELETE FROM loans WHERE user_id IN (:userIds)";
+    public static final String DELETE_MEMBERSHIPS_QUERY = "DELETE FROM memberships WHERE user_id IN (:userIds)";
+    public static final String DELETE_USERS_QUERY = "DELETE FROM users WHERE user_id IN (:userIds)";
+    public static final String DELETE_ORPHANED_PROFILES_QUERY = "DELETE FROM profiles " + //
+                "WHERE profile_id IN (:profileIds) " + //
+                "AND NOT EXISTS (SELECT 1 FROM users WHERE users.profile_id = profiles.profile_id)";
+
+    private NamedParameterJdbcTemplate jdbcTemplate;
+    private SecondLevelCache secondLevelCache;
+
+    public UserPurgeRepository(NamedParameterJdbcTemplate jdbcTemplate, SecondLevelCache secondLevelCache) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    /// Deletes the users with all their loans, memberships and the profiles nobody else uses.
+    /// A deleted event is appended to the loan_events outbox for every deleted loan.
+    /// Every table is cleared with one set-based statement per chunk of PURGE_CHUNK_SIZE users.
+    /// Callers run this inside a transaction so a purge never stops halfway.
+    public void purgeUsers(Collection<Long> userIds) {
+        List<Long> ids = new ArrayList<>(userIds);
+        for (int from = 0; from < ids.size(); from += PURGE_CHUNK_SIZE) {
+            purgeChunk(ids.subList(from, Math.min(from + PURGE_CHUNK_SIZE, ids.size())));
+        }
+    }
+
+    private void purgeChunk(List<Long> userIds) {
+        Map<String, List<Long>> users = Map.of("userIds", userIds);
+        List<Long> profileIds = jdbcTemplate.queryForList(SELECT_PROFILE_IDS_QUERY, users, Long.class);
+
+        jdbcTemplate.update(INSERT_DELETED_LOAN_EVENTS_QUERY, Map.of("userIds", userIds,
+            "deletionDate", TimeTracker.getToday(), "occurredAt", LocalDateTime.now()));
+        jdbcTemplate.update(DELETE_LOAN_PUBLICATIONS_QUERY, users);
+        jdbcTemplate.update(DELETE_LOANS_QUERY, users);
+        jdbcTemplate.update(DELETE_MEMBERSHIPS_QUERY, users);
+        jdbcTemplate.update(DELETE_USERS_QUERY, users);
+        if (!profileIds.isEmpty()) {
+            jdbcTemplate.update(DELETE_ORPHANED_PROFILES_QUERY, Map.of("profileIds", profileIds));
+            secondLevelCache.evictProfiles(profileIds);
+        }
+    }
+}
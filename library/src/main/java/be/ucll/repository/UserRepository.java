@@ -1,31 +1,79 @@
 package be.ucll.repository;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Stream;
 
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.stereotype.Repository;
 
+import be.ucll.dto.UserSummary;
 import be.ucll.model.User;
+import jakarta.persistence.QueryHint;
 
 @Repository
-public interface UserRepository extends JpaRepository<User, Long> {
+public interface UserRepository extends JpaRepository<User, Long>, UserRepositoryCustom {
 
     List<User> findByNameContaining(String name);
 
+    @EntityGraph(User.GRAPH_WITH_PROFILE)
     User findByEmail(String email);
 
+    boolean existsByEmail(String email);
+
+    List<User> findByEmailIn(Collection<String> emails);
+
     List<User> findByAgeGreaterThanEqual(Integer age);
 
     List<User> findByAgeBetween(Integer minAge, Integer maxAge);
 
+    @EntityGraph(User.GRAPH_WITH_PROFILE)
     @Query("SELECT u FROM User u ORDER BY u.age DESC LIMIT 1")
     User findOldestUser();
 
-    @Query("SELECT u FROM User u JOIN u.profile p WHERE LOWER(p.interests) = LOWER(:interest)")
+    @Query("SELECT u FROM User u JOIN FETCH u.profile p WHERE LOWER(p.interests) = LOWER(:interest)")
     List<User> findUsersByInterest(String interest);
 
-    @Query("SELECT u FROM User u JOIN u.profile p WHERE LOWER(p.interests) = LOWER(:interest)" + //
+    @Query("SELECT u FROM User u JOIN FETCH u.profile p WHERE LOWER(p.interests) = LOWER(:interest)" + //
     "AND u.age > :givenAge ORDER BY p.location")
     List<User> findByInterestAndGreaterAgeOrderByLocation(String interest, Integer givenAge);
-}
\ No newline at end of file
+
+    // Summaries: constructor expressions read the selected columns only, no entities are managed
+    @Query("SELECT new be.ucll.dto.UserSummary(u.id, u.name, u.age, u.email) FROM User u " +
+           "WHERE (:name IS NULL OR u.name LIKE %:name%) ORDER BY u.id")
+    List<UserSummary> findSummariesByName(String name);
+
+    @Query("SELECT new be.ucll.dto.UserSummary(u.id, u.name, u.age, u.email) FROM User u " +
+           "WHERE u.age >= :age ORDER BY u.id")
+    List<UserSummary> findSummariesByAgeGreaterThanEqual(Integer age);
+
+    @Query("SELECT new be.ucll.dto.UserSummary(u.id, u.name, u.age, u.email) FROM User u " +
+           "WHERE u.age BETWEEN :minAge AND :maxAge ORDER BY u.id")
+    List<UserSummary> findSummariesByAgeBetween(Integer minAge, Integer maxAge);
+
+    // Keyset pagination: next page after the last seen id
+    List<User> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
+
+    List<User> findByNameContainingAndIdGreaterThanOrderByIdAsc(String name, Long id, Limit limit);
+
+    List<User> findByAgeGreaterThanEqualAndIdGreaterThanOrderByIdAsc(Integer age, Long id, Limit limit);
+
+    List<User> findByAgeBetweenAndIdGreaterThanOrderByIdAsc(Integer minAge, Integer maxAge, Long id, Limit limit);
+
+    // Streaming: rows are fetched from the cursor as they are consumed
+    @QueryHints(@QueryHint(name = RepositoryHints.FETCH_SIZE, value = RepositoryHints.STREAM_FETCH_SIZE))
+    Stream<User> streamAllByOrderByIdAsc();
+
+    @QueryHints(@QueryHint(name = RepositoryHints.FETCH_SIZE, value = RepositoryHints.STREAM_FETCH_SIZE))
+    Stream<User> streamByNameContainingOrderByIdAsc(String name);
+
+    @QueryHints(@QueryHint(name = RepositoryHints.FETCH_SIZE, value = RepositoryHints.STREAM_FETCH_SIZE))
+    Stream<User> streamByAgeGreaterThanEqualOrderByIdAsc(Integer age);
+
+    @QueryHints(@QueryHint(name = RepositoryHints.FETCH_SIZE, value = RepositoryHints.STREAM_FETCH_SIZE))
+    Stream<User> streamByAgeBetweenOrderByIdAsc(Integer minAge, Integer maxAge);
+}
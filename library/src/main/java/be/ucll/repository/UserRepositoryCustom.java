@@ -0,0 +1,16 @@
+package be.ucll.repository;
+
+import java.util.List;
+
+import be.ucll.model.User;
+
+public interface UserRepositoryCustom {
+
+    List<User> findAll(UserFetchProfile fetchProfile);
+
+    List<User> findByNameContaining(String name, UserFetchProfile fetchProfile);
+
+    List<User> findByAgeGreaterThanEqual(Integer age, UserFetchProfile fetchProfile);
+
+    List<User> findByAgeBetween(Integer minAge, Integer maxAge, UserFetchProfile fetchProfile);
+}
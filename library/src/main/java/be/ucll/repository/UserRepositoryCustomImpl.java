@@ -0,0 +1,56 @@
+package be.ucll.repository;
+
+import java.util.List;
+
+import be.ucll.model.User;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.TypedQuery;
+
+public class UserRepositoryCustomImpl implements UserRepositoryCustom {
+
+    public static final String FETCH_GRAPH_HINT = "jakarta.persistence.fetchgraph";
+
+    private EntityManager entityManager;
+
+    public UserRepositoryCustomImpl(EntityManager entityManager) {
+        this.entityManager = entityManager;
+    }
+
+    @Override
+    public List<User> findAll(UserFetchProfile fetchProfile) {
+        return query("SELECT u FROM User u ORDER BY u.id", fetchProfile)
+            .getResultList();
+    }
+
+    @Override
+    public List<User> findByNameContaining(String name, UserFetchProfile fetchProfile) {
+        return query("SELECT u FROM User u WHERE u.name LIKE :name ORDER BY u.id", fetchProfile)
+            .setParameter("name", "%" + name + "%")
+            .getResultList();
+    }
+
+    @Override
+    public List<User> findByAgeGreaterThanEqual(Integer age, UserFetchProfile fetchProfile) {
+        return query("SELECT u FROM User u WHERE u.age >= :age ORDER BY u.id", fetchProfile)
+            .setParameter("age", age)
+            .getResultList();
+    }
+
+    @Override
+    public List<User> findByAgeBetween(Integer minAge, Integer maxAge, UserFetchProfile fetchProfile) {
+        return query("SELECT u FROM User u WHERE u.age BETWEEN :minAge AND :maxAge ORDER BY u.id", fetchProfile)
+            .setParameter("minAge", minAge)
+            .setParameter("maxAge", maxAge)
+            .getResultList();
+    }
+
+    /// The graph is a fetch graph: its associations are joined in the same select, everything
+    /// outside it stays lazy.
+    private TypedQuery<User> query(String jpql, UserFetchProfile fetchProfile) {
+        TypedQuery<User> query = entityManager.createQuery(jpql, User.class);
+        if (fetchProfile.getGraph() != null) {
+            query.setHint(FETCH_GRAPH_HINT, entityManager.getEntityGraph(fetchProfile.getGraph()));
+        }
+        return query;
+    }
+}
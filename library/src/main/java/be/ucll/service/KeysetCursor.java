@@ -0,0 +1,48 @@
+package be.ucll.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.function.Function;
+
+import be.ucll.dto.KeysetPage;
+
+/// Opaque cursor tokens for keyset pagination. A token holds the id of the last item of the previous page,
+/// the next page starts right after it.
+
+public class KeysetCursor {
+
+    public static final String INVALID_CURSOR_EXCEPTION = "Invalid cursor";
+    public static final String INVALID_PAGE_SIZE_EXCEPTION = "Page size must be between 1 and %d";
+    public static final Integer MAX_PAGE_SIZE = 1000;
+
+    public static String encode(Long lastId) {
+        byte[] value = String.valueOf(lastId).getBytes(StandardCharsets.UTF_8);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value);
+    }
+
+    /// Returns the id to continue after, 0 when there is no cursor (first page).
+    public static Long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        try {
+            byte[] value = Base64.getUrlDecoder().decode(cursor);
+            return Long.parseLong(new String(value, StandardCharsets.UTF_8));
+        } catch (IllegalArgumentException e) {
+            throw new ServiceException(INVALID_CURSOR_EXCEPTION);
+        }
+    }
+
+    public static void checkPageSize(Integer size) {
+        if (size == null || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new ServiceException(String.format(INVALID_PAGE_SIZE_EXCEPTION, MAX_PAGE_SIZE));
+        }
+    }
+
+    public static <T> KeysetPage<T> toPage(List<T> items, Integer size, Function<T, Long> idGetter) {
+        boolean pageIsFull = items.size() == size;
+        String nextCursor = pageIsFull ? encode(idGetter.apply(items.get(items.size() - 1))) : null;
+        return new KeysetPage<>(items, nextCursor);
+    }
+}
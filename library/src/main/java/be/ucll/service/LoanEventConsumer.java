@@ -0,0 +1,13 @@
+package be.ucll.service;
+
+import java.util.List;
+
+import be.ucll.dto.LoanEvent;
+
+/// Receives the stored loan events from the LoanEventRelay, in batches and in the order they were stored.
+/// Delivery is at least once: a batch is handed out again when a consumer fails or the relay stops before
+/// it is marked as published, so consumers must tolerate events they already saw (eventId is unique).
+public interface LoanEventConsumer {
+
+    void accept(List<LoanEvent> events);
+}
@@ -0,0 +1,100 @@
+package be.ucll.service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import be.ucll.dto.LoanEvent;
+import be.ucll.repository.LoanEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/// Drains the loan_events outbox into the LoanEventConsumer beans in the background, so statistics and
+/// other consumers cost the loan requests nothing but one insert in their own transaction.
+/// Unpublished events are read in batches in event_id order; a batch is marked as published in the same
+/// transaction only after every consumer accepted it, a failing consumer stops the run and the batch is
+/// handed out again on the next run. Published events are deleted once they are older than the retention.
+@Component
+public class LoanEventRelay {
+
+    public static final String METRIC_RELAYED = "library.loan.events.relayed";
+    public static final String METRIC_BATCH_DURATION = "library.loan.events.batch.duration";
+
+    private LoanEventRepository loanEventRepository;
+    private List<LoanEventConsumer> consumers;
+    private TransactionTemplate transactionTemplate;
+    private int batchSize;
+    private Duration retention;
+
+    private final ReentrantLock relayLock = new ReentrantLock();
+    private Counter relayedCounter;
+    private Timer batchTimer;
+
+    public LoanEventRelay(LoanEventRepository loanEventRepository,
+        List<LoanEventConsumer> consumers,
+        TransactionTemplate transactionTemplate,
+        MeterRegistry meterRegistry,
+        @Value("${library.loan-events.batch-size:500}") int batchSize,
+        @Value("${library.loan-events.retention:7d}") Duration retention
+    ) {
+        this.loanEventRepository = loanEventRepository;
+        this.consumers = consumers;
+        this.transactionTemplate = transactionTemplate;
+        this.batchSize = batchSize;
+        this.retention = retention;
+        registerMetrics(meterRegistry);
+    }
+
+    /// Relays every event stored before the run, returns the number of relayed events.
+    /// A run that is already busy is not waited for, its events are picked up by that run or the next.
+    @Scheduled(fixedDelayString = "${library.loan-events.relay-interval:1000}")
+    public int relay() {
+        if (!relayLock.tryLock()) {
+            return 0;
+        }
+        try {
+            int relayed = 0;
+            int batch;
+            do {
+                long startTime = System.nanoTime();
+                batch = transactionTemplate.execute(status -> relayBatch());
+                batchTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+                relayed += batch;
+            } while (batch == batchSize);
+            loanEventRepository.deletePublishedBefore(LocalDateTime.now().minus(retention));
+            return relayed;
+        } finally {
+            relayLock.unlock();
+        }
+    }
+
+    private int relayBatch() {
+        List<LoanEvent> events = loanEventRepository.findUnpublished(batchSize);
+        if (events.isEmpty()) {
+            return 0;
+        }
+        for (LoanEventConsumer consumer : consumers) {
+            consumer.accept(events);
+        }
+        loanEventRepository.markPublished(events, LocalDateTime.now());
+        relayedCounter.increment(events.size());
+        return events.size();
+    }
+
+    private void registerMetrics(MeterRegistry meterRegistry) {
+        relayedCounter = Counter.builder(METRIC_RELAYED)
+            .description("Loan events handed to the consumers")
+            .register(meterRegistry);
+        batchTimer = Timer.builder(METRIC_BATCH_DURATION)
+            .description("Time to read, consume and mark one batch of loan events")
+            .register(meterRegistry);
+    }
+}
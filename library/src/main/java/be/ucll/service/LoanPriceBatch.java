@@ -0,0 +1,74 @@
+package be.ucll.service;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/// Loans in columns for LoanPriceEngine.calculate, the arrays grow while loans are added.
+public class LoanPriceBatch {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int size;
+    private int[] startDays;
+    private int[] endDays;
+    private int[] returnDays;
+    private int[] publicationCounts;
+    private byte[] tiers;
+    private int[] prices;
+    private int[] fines;
+
+    public LoanPriceBatch() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public LoanPriceBatch(int capacity) {
+        startDays = new int[capacity];
+        endDays = new int[capacity];
+        returnDays = new int[capacity];
+        publicationCounts = new int[capacity];
+        tiers = new byte[capacity];
+    }
+
+    public void add(LocalDate startDate, LocalDate endDate, LocalDate returnDate, int publications, byte tier) {
+        add((int) startDate.toEpochDay(), (int) endDate.toEpochDay(), (int) returnDate.toEpochDay(), publications, tier);
+    }
+
+    public void add(int startDay, int endDay, int returnDay, int publications, byte tier) {
+        if (size == startDays.length) {
+            grow();
+        }
+        startDays[size] = startDay;
+        endDays[size] = endDay;
+        returnDays[size] = returnDay;
+        publicationCounts[size] = publications;
+        tiers[size] = tier;
+        size++;
+    }
+
+    public void calculate(double[] multipliers) {
+        prices = new int[size];
+        fines = new int[size];
+        LoanPriceEngine.calculate(size, startDays, endDays, returnDays, publicationCounts, tiers, multipliers, prices, fines);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getPrice(int i) {
+        return prices[i];
+    }
+
+    public int getFine(int i) {
+        return fines[i];
+    }
+
+    private void grow() {
+        int capacity = Math.max(INITIAL_CAPACITY, startDays.length * 2);
+        startDays = Arrays.copyOf(startDays, capacity);
+        endDays = Arrays.copyOf(endDays, capacity);
+        returnDays = Arrays.copyOf(returnDays, capacity);
+        publicationCounts = Arrays.copyOf(publicationCounts, capacity);
+        tiers = Arrays.copyOf(tiers, capacity);
+    }
+}
@@ -0,0 +1,59 @@
+package be.ucll.service;
+
+import be.ucll.model.MembershipTier;
+
+/// Loan prices and fines on primitive values.
+/// A loan costs one unit per publication per day, times the multiplier of the membership tier.
+/// Every day after the end date costs a fine of LATE_FINE_PER_PUBLICATION_PER_DAY per publication.
+/// The batch path works on columns (one array per value, dates as epoch days) with straight loops
+/// without branches, so the JIT can unroll them and keep the values in registers.
+public final class LoanPriceEngine {
+
+    // tier ordinals of the batch columns, FREE is an active membership with free loans left,
+    // the membership tiers follow in the order of MembershipTier
+    public static final byte TIER_NONE = 0;
+    public static final byte TIER_FREE = 1;
+    private static final int FIRST_MEMBERSHIP_TIER = 2;
+
+    public static final double LATE_FINE_PER_PUBLICATION_PER_DAY = 0.50;
+
+    private LoanPriceEngine() {
+    }
+
+    public static byte tierOf(MembershipTier tier) {
+        return (byte) (FIRST_MEMBERSHIP_TIER + tier.ordinal());
+    }
+
+    /// Multipliers indexed by tier ordinal, built once per batch from the configured membership terms.
+    public static double[] multipliers(MembershipTierSettings membershipTierSettings) {
+        MembershipTier[] membershipTiers = MembershipTier.values();
+        double[] multipliers = new double[FIRST_MEMBERSHIP_TIER + membershipTiers.length];
+        multipliers[TIER_NONE] = 1;
+        multipliers[TIER_FREE] = 0;
+        for (MembershipTier tier : membershipTiers) {
+            multipliers[tierOf(tier)] = membershipTierSettings.getMultiplier(tier);
+        }
+        return multipliers;
+    }
+
+    public static int price(long days, int publications, double multiplier) {
+        return (int) (days * publications * multiplier);
+    }
+
+    public static int fine(long daysLate, int publications) {
+        return (int) (Math.max(0, daysLate) * LATE_FINE_PER_PUBLICATION_PER_DAY * publications);
+    }
+
+    /// Fills prices and fines for the first count loans of the columns, multipliers as built by multipliers.
+    public static void calculate(int count, int[] startDays, int[] endDays, int[] returnDays,
+        int[] publicationCounts, byte[] tiers, double[] multipliers, int[] prices, int[] fines) {
+        for (int i = 0; i < count; i++) {
+            long days = returnDays[i] - startDays[i];
+            prices[i] = (int) (days * publicationCounts[i] * multipliers[tiers[i]]);
+        }
+        for (int i = 0; i < count; i++) {
+            int daysLate = Math.max(0, returnDays[i] - endDays[i]);
+            fines[i] = (int) (daysLate * LATE_FINE_PER_PUBLICATION_PER_DAY * publicationCounts[i]);
+        }
+    }
+}
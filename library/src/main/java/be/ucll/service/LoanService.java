@@ -2,16 +2,35 @@ package be.ucll.service;
 
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import org.hibernate.Hibernate;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import be.ucll.dto.BillingPreview;
+import be.ucll.dto.KeysetPage;
+import be.ucll.dto.LoanEvent;
+import be.ucll.dto.LoanRegistration;
+import be.ucll.dto.LoanRequest;
+import be.ucll.dto.LoanSummary;
+import be.ucll.model.DomainException;
 import be.ucll.model.Loan;
 import be.ucll.model.Membership;
 import be.ucll.model.Publication;
 import be.ucll.model.User;
+import be.ucll.repository.EntityStreamer;
+import be.ucll.repository.LoanBatchRepository;
+import be.ucll.repository.LoanEventRepository;
 import be.ucll.repository.LoanRepository;
+import be.ucll.utilits.AvailabilityLedger;
 import be.ucll.utilits.TimeTracker;
+import jakarta.transaction.Transactional;
 
 @Service
 public class LoanService {
@@ -22,72 +41,237 @@ public class LoanService {
     public static final String DELETION_SUCCESS_RESPONSE = "Loans of user successfully deleted";
     public static final String LOAN_RETURN_DATE_HAS_TO_BE_SET_EXCEPTION = "Loan return date must be set for price calculation";
     public static final String USER_HAS_NO_ACTIVE_LOAN_EXCEPTION = "User has no active loan";
+    public static final String DUPLICATE_PUBLICATION_EXCEPTION = "Publication with id %d is requested more than once.";
 
     private LoanRepository loanRepository;
     private UserService userService;
     private PublicationService publicationService;
+    private LoanBatchRepository loanBatchRepository;
+    private EntityStreamer entityStreamer;
+    private OptimisticRetry optimisticRetry;
+    private LoanEventRepository loanEventRepository;
+    private AvailabilityLedger availabilityLedger;
+    private MembershipTierSettings membershipTierSettings;
 
     public LoanService(LoanRepository loanRepository,
         UserService userService,
-        PublicationService publicationService
+        PublicationService publicationService,
+        LoanBatchRepository loanBatchRepository,
+        EntityStreamer entityStreamer,
+        OptimisticRetry optimisticRetry,
+        LoanEventRepository loanEventRepository,
+        AvailabilityLedger availabilityLedger,
+        MembershipTierSettings membershipTierSettings
     ) {
         this.userService = userService;
         this.loanRepository = loanRepository;
         this.publicationService = publicationService;
+        this.loanBatchRepository = loanBatchRepository;
+        this.entityStreamer = entityStreamer;
+        this.optimisticRetry = optimisticRetry;
+        this.loanEventRepository = loanEventRepository;
+        this.availabilityLedger = availabilityLedger;
+        this.membershipTierSettings = membershipTierSettings;
     }
 
+    @Transactional
     public List<Loan> getLoansByUser(String email, Boolean onlyActive) {
         userService.userExists(email);
 
+        List<Loan> loans;
         if (onlyActive == null || !onlyActive) {
-            return loanRepository.findByUserEmail(email);
+            loans = loanRepository.findWithDetailsByUserEmail(email);
         } else {
-            return loanRepository.findByUserEmailAndEndDateAfter(email, TimeTracker.getToday());
+            loans = loanRepository.findWithDetailsByUserEmailAndEndDateAfter(email, TimeTracker.getToday());
+        }
+        // the history shows the memberships of the user, all loans share the same user
+        if (!loans.isEmpty()) {
+            Hibernate.initialize(loans.get(0).getUser().getMemberships());
+        }
+        return loans;
+    }
+
+    public KeysetPage<Loan> getLoansByUserPage(String email, Boolean onlyActive, String cursor, Integer size) {
+        userService.userExists(email);
+        KeysetCursor.checkPageSize(size);
+        Long afterId = KeysetCursor.decode(cursor);
+
+        List<Loan> loans;
+        if (onlyActive == null || !onlyActive) {
+            loans = loanRepository.findWithDetailsByUserEmailAndIdGreaterThanOrderByIdAsc(email, afterId, Limit.of(size));
+        } else {
+            loans = loanRepository.findWithDetailsByUserEmailAndEndDateAfterAndIdGreaterThanOrderByIdAsc(
+                email, TimeTracker.getToday(), afterId, Limit.of(size));
+        }
+        return KeysetCursor.toPage(loans, size, Loan::getId);
+    }
+
+    @Transactional
+    public void streamLoansByUser(String email, Boolean onlyActive, Consumer<Loan> consumer) {
+        userService.userExists(email);
+
+        if (onlyActive == null || !onlyActive) {
+            entityStreamer.forEach(loanRepository.streamByUserEmailOrderByIdAsc(email), consumer);
+        } else {
+            entityStreamer.forEach(loanRepository.streamByUserEmailAndEndDateAfterOrderByIdAsc(email, TimeTracker.getToday()), consumer);
+        }
+    }
+
+    public List<LoanSummary> getLoanSummariesByUser(String email, Boolean onlyActive) {
+        userService.userExists(email);
+
+        if (onlyActive == null || !onlyActive) {
+            return loanRepository.findSummariesByUserEmail(email);
+        } else {
+            return loanRepository.findSummariesByUserEmailAndEndDateAfter(email, TimeTracker.getToday());
         }
     }
 
     public Loan registerLoan(String email, LocalDate startDate, List<Long> publicationsIds) {
+        return optimisticRetry.execute(() -> registerLoanOnce(email, startDate, publicationsIds));
+    }
+
+    private Loan registerLoanOnce(String email, LocalDate startDate, List<Long> publicationsIds) {
         User user = userService.getUserByEmail(email);
         checkUserActiveLoans(email, USER_ALREADY_HAS_AN_ACTIVE_LOAN_EXCEPTION);
 
         List<Publication> publications = publicationService.getPublicationsById(publicationsIds);
-        Loan newLoan = new Loan(user, publications, startDate);
+        Loan newLoan = new Loan(user, publications, startDate, availabilityLedger);
 
-        loanRepository.save(newLoan);
-        return loanRepository.findByUserEmailAndEndDateAfter(email, startDate).get(0);
+        // the copies are taken from the ledger already, they go back when the transaction rolls back
+        loanRepository.saveAndFlush(newLoan);
+        loanEventRepository.append(registeredEvent(newLoan, newLoan.getId()));
+        return newLoan;
     }
 
+    /// Registers many loans at once: users, active loans and publications are each looked up with one
+    /// set-based query and all new loans are written with JDBC batches. An invalid entry does not stop the
+    /// others, every entry gets its own result in the order of the requests.
+    @Transactional
+    public List<LoanRegistration> registerLoans(List<LoanRequest> loanRequests) {
+        Set<String> emails = new HashSet<>();
+        Set<Long> publicationsIds = new HashSet<>();
+        loanRequests.forEach(loanRequest -> {
+            emails.add(loanRequest.email());
+            if (loanRequest.publicationIds() != null) {
+                loanRequest.publicationIds().stream()
+                .filter(publicationId -> publicationId != null)
+                .forEach(publicationsIds::add);
+            }
+        });
+
+        Map<String, User> users = userService.getUsersByEmail(emails);
+        Set<String> emailsWithActiveLoans = new HashSet<>(
+            loanRepository.findUserEmailsWithLoansEndingAfter(emails, TimeTracker.getToday()));
+        Map<Long, Publication> publications = publicationService.findPublicationsById(publicationsIds);
+
+        List<LoanRegistration> results = new ArrayList<>();
+        List<Loan> newLoans = new ArrayList<>();
+        List<Integer> newLoanPositions = new ArrayList<>();
+        for (LoanRequest loanRequest : loanRequests) {
+            try {
+                Loan newLoan = createLoan(loanRequest, users, emailsWithActiveLoans, publications);
+                if (newLoan.getEndDate().isAfter(TimeTracker.getToday())) {
+                    emailsWithActiveLoans.add(loanRequest.email());
+                }
+                newLoans.add(newLoan);
+                newLoanPositions.add(results.size());
+                results.add(null);
+            } catch (ServiceException | DomainException e) {
+                results.add(LoanRegistration.failed(loanRequest.email(), e.getMessage()));
+            }
+        }
+
+        List<Long> loanIds = loanBatchRepository.insertLoans(newLoans);
+        List<LoanEvent> events = new ArrayList<>();
+        for (int i = 0; i < newLoans.size(); i++) {
+            events.add(registeredEvent(newLoans.get(i), loanIds.get(i)));
+        }
+        loanEventRepository.appendAll(events);
+        for (int i = 0; i < newLoans.size(); i++) {
+            String email = newLoans.get(i).getUser().getEmail();
+            results.set(newLoanPositions.get(i), LoanRegistration.succeeded(email, loanIds.get(i)));
+        }
+        return results;
+    }
+
+    private Loan createLoan(LoanRequest loanRequest, Map<String, User> users, Set<String> emailsWithActiveLoans,
+        Map<Long, Publication> publications) {
+        User user = users.get(loanRequest.email());
+        if (user == null) {
+            throw new ServiceException(UserService.USER_DOESNT_EXIST_EXCEPTION);
+        }
+        if (emailsWithActiveLoans.contains(loanRequest.email())) {
+            throw new ServiceException(USER_ALREADY_HAS_AN_ACTIVE_LOAN_EXCEPTION);
+        }
+
+        List<Publication> loanPublications = null;
+        if (loanRequest.publicationIds() != null) {
+            loanPublications = new ArrayList<>();
+            Set<Long> requestedIds = new HashSet<>();
+            for (Long publicationId : loanRequest.publicationIds()) {
+                if (!requestedIds.add(publicationId)) {
+                    throw new ServiceException(String.format(DUPLICATE_PUBLICATION_EXCEPTION, publicationId));
+                }
+                Publication publication = publications.get(publicationId);
+                if (publication == null) {
+                    throw new ServiceException(String.format(PublicationService.PUBLICATION_NOT_FOUND_EXCEPTION, publicationId));
+                }
+                loanPublications.add(publication);
+            }
+        }
+        return new Loan(user, loanPublications, loanRequest.startDate(), availabilityLedger);
+    }
+
+    /// Returns the active loan of the user, redeeming a free loan of its best membership.
+    /// Loan and membership are versioned: when two returns race, the loser is retried and then sees the
+    /// state the winner left (the loan returned, one free loan less).
     public Loan returnLoan(String email, LocalDate returnDate) {
+        Loan loan = optimisticRetry.execute(() -> returnLoanOnce(email, returnDate));
+        userService.evictCachedUser(email);
+        return loan;
+    }
+
+    private Loan returnLoanOnce(String email, LocalDate returnDate) {
         Loan loan = findUserActiveLoan(email);
         loan.setReturnDate(returnDate);
 
-        User user = userService.getUserByEmail(email);
-        List<Membership> memberships = user.getMemberships();
-        Membership membership = findProfitableMembership(memberships);
+        Membership membership = loan.getUser().findProfitableMembership();
         Integer price = calculateTotalLoanPrice(loan, membership);
         loan.setPrice(price);
-        loan.returnPublications();
+        // version conflicts surface here, the copies are given back to the ledger when the transaction commits
+        loanRepository.flush();
+        Long userId = loan.getUser().getId();
+        loanEventRepository.appendAll(List.of(
+            LoanEvent.of(LoanEvent.Type.RETURNED, loan.getId(), userId, returnDate, loan.getPublications().size(), null),
+            LoanEvent.of(LoanEvent.Type.PRICED, loan.getId(), userId, returnDate, null, price)));
+        loan.returnPublications(availabilityLedger);
         
         return loan;
     }
 
+    @Transactional
     public String deleteLoansByUser(String email) {
         userService.getUserByEmail(email); //to check that user exists
         checkUserActiveLoans(email, USER_HAS_ACTIVE_LOANS_EXCEPTION);
 
-        List<Loan> allLoans = loanRepository.findByUserEmail(email);
-        Boolean userHasLoans = allLoans.size() > 0;
+        Boolean userHasLoans = loanRepository.existsByUserEmail(email);
         if (!userHasLoans) {
             throw new ServiceException(USER_HAS_NO_LOANS_EXCEPTION);
         }
 
+        loanEventRepository.appendDeletedLoansOfUser(email, TimeTracker.getToday());
         loanRepository.deleteByUserEmail(email);
         return DELETION_SUCCESS_RESPONSE;
     }
 
+    private LoanEvent registeredEvent(Loan loan, Long loanId) {
+        return LoanEvent.of(LoanEvent.Type.REGISTERED, loanId, loan.getUser().getId(), loan.getStartDate(),
+            loan.getPublications().size(), null);
+    }
+
     public void checkUserActiveLoans(String email, String exceptionMessage) {
-        List<Loan> activeLoans = loanRepository.findByUserEmailAndEndDateAfter(email, TimeTracker.getToday());
-        Boolean userHasActiveLoans = activeLoans.size() > 0;
+        Boolean userHasActiveLoans = loanRepository.existsByUserEmailAndEndDateAfter(email, TimeTracker.getToday());
         if (userHasActiveLoans) {
             throw new ServiceException(exceptionMessage);
         }
@@ -102,33 +286,6 @@ public class LoanService {
         return activeLoans.get(0);
     }
 
-    public Membership findProfitableMembership(List<Membership> memberships) {
-        List<Membership> activeMemberships = findActiveMemberships(memberships);
-        List<Membership> membershipsWithFreeLoans = findMembershipsWithFreeLoans(activeMemberships);
-        return membershipsWithFreeLoans.size() > 0 ? membershipsWithFreeLoans.get(0) : null;
-    }
-
-    public List<Membership> findMembershipsWithFreeLoans(List<Membership> memberships) {
-        return memberships
-        .stream()
-        .filter(membership -> {
-            Boolean membershipHasFreeLoans = membership.getFreeLoansQuantity() > 0;
-            return membershipHasFreeLoans;
-        })
-        .toList();
-    }
-
-    public List<Membership> findActiveMemberships(List<Membership> memberships) {
-        List<Membership> result = memberships
-        .stream()
-        .filter(membership -> {
-            Boolean membershipIsActive = membership.isActive();
-            return membershipIsActive;
-        })
-        .toList();
-        return result;
-    }
-
     public Integer calculateTotalLoanPrice(Loan loan, Membership membership) {
         Integer price = calculateReturnPrice(loan, membership);
         Integer fine = calculateFine(loan);
@@ -143,7 +300,7 @@ public class LoanService {
         
         long days = ChronoUnit.DAYS.between(loan.getStartDate(), loan.getReturnDate());
         Double multiplier = calculateMultiplier(membership);
-        Integer price = (int) (days * loan.getPublications().size() * multiplier);
+        Integer price = LoanPriceEngine.price(days, loan.getPublications().size(), multiplier);
 
         return price;
     }
@@ -160,14 +317,7 @@ public class LoanService {
             return 0;
         }
 
-        switch (membership.getType()) {
-            case "BRONZE":
-                return 0.75;
-            case "SILVER":
-                return 0.5;
-            default:
-                return 0.25;
-        }
+        return membershipTierSettings.getMultiplier(membership.getType());
     }
 
     public Integer calculateFine(Loan loan) {
@@ -176,13 +326,35 @@ public class LoanService {
             throw new ServiceException(LOAN_RETURN_DATE_HAS_TO_BE_SET_EXCEPTION);
         }
     
-        long daysLate = ChronoUnit.DAYS.between(loan.getEndDate(), returnDate);
-        if (daysLate > 0) {
-            double lateFinePerPublicationPerDay = 0.50;
-            Integer lateFine = (int) (daysLate * lateFinePerPublicationPerDay * loan.getPublications().size());
-            return lateFine;
-        } else {
-            return 0;
+        return calculateFine(loan.getEndDate(), returnDate, loan.getPublications().size());
+    }
+
+    public Integer calculateFine(LocalDate endDate, LocalDate returnDate, int publications) {
+        long daysLate = ChronoUnit.DAYS.between(endDate, returnDate);
+        return LoanPriceEngine.fine(daysLate, publications);
+    }
+
+    /// Prices all open loans as if they were returned on the date, without redeeming free loans.
+    /// Loans are read as columns and priced in one batch, see LoanPriceEngine.
+    public BillingPreview previewBilling(LocalDate date) {
+        LocalDate billingDate = date == null ? TimeTracker.getToday() : date;
+        int billingDay = (int) billingDate.toEpochDay();
+
+        LoanPriceBatch batch = new LoanPriceBatch();
+        loanBatchRepository.forEachOpenLoan(billingDate, (startDay, endDay, publications, freeLoan) ->
+            batch.add(startDay, endDay, billingDay, publications, freeLoan ? LoanPriceEngine.TIER_FREE : LoanPriceEngine.TIER_NONE));
+        batch.calculate(LoanPriceEngine.multipliers(membershipTierSettings));
+
+        int overdueLoans = 0;
+        long totalPrice = 0;
+        long totalFines = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            totalPrice += batch.getPrice(i);
+            totalFines += batch.getFine(i);
+            if (batch.getFine(i) > 0) {
+                overdueLoans++;
+            }
         }
+        return new BillingPreview(billingDate, batch.size(), overdueLoans, totalPrice, totalFines);
     }
 }
@@ -0,0 +1,48 @@
+package be.ucll.service;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.stereotype.Component;
+
+import be.ucll.dto.LoanEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+/// Loan statistics fed from the loan event outbox instead of from the requests that change the loans.
+@Component
+public class LoanStatistics implements LoanEventConsumer {
+
+    public static final String METRIC_EVENTS = "library.loan.events";
+    public static final String METRIC_REVENUE = "library.loan.revenue";
+
+    private final Map<LoanEvent.Type, Counter> eventCounters = new EnumMap<>(LoanEvent.Type.class);
+    private Counter revenueCounter;
+
+    public LoanStatistics(MeterRegistry meterRegistry) {
+        registerMetrics(meterRegistry);
+    }
+
+    @Override
+    public void accept(List<LoanEvent> events) {
+        for (LoanEvent event : events) {
+            eventCounters.get(event.type()).increment();
+            if (event.type() == LoanEvent.Type.PRICED && event.price() != null) {
+                revenueCounter.increment(event.price());
+            }
+        }
+    }
+
+    private void registerMetrics(MeterRegistry meterRegistry) {
+        for (LoanEvent.Type type : LoanEvent.Type.values()) {
+            eventCounters.put(type, Counter.builder(METRIC_EVENTS)
+                .description("Loan events by type")
+                .tag("type", type.name().toLowerCase())
+                .register(meterRegistry));
+        }
+        revenueCounter = Counter.builder(METRIC_REVENUE)
+            .description("Sum of the prices of returned loans")
+            .register(meterRegistry);
+    }
+}
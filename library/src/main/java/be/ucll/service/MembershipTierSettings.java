@@ -0,0 +1,38 @@
+package be.ucll.service;
+
+import java.util.EnumMap;
+
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import be.ucll.model.MembershipTier;
+
+/// The membership terms in use, read once at startup, e.g.
+/// library.membership.tiers.GOLD.multiplier=0.2 or library.membership.tiers.SILVER.max-free-loans=12.
+/// Values that are not configured keep the defaults of MembershipTier.
+@Component
+public class MembershipTierSettings {
+
+    public static final String PREFIX = "library.membership.tiers.";
+
+    private final EnumMap<MembershipTier, MembershipTier.Terms> terms = new EnumMap<>(MembershipTier.class);
+
+    public MembershipTierSettings(Environment environment) {
+        for (MembershipTier tier : MembershipTier.values()) {
+            MembershipTier.Terms defaultTerms = tier.getDefaultTerms();
+            String prefix = PREFIX + tier.name() + ".";
+            terms.put(tier, new MembershipTier.Terms(
+                environment.getProperty(prefix + "multiplier", Double.class, defaultTerms.multiplier()),
+                environment.getProperty(prefix + "min-free-loans", Integer.class, defaultTerms.minFreeLoans()),
+                environment.getProperty(prefix + "max-free-loans", Integer.class, defaultTerms.maxFreeLoans())));
+        }
+    }
+
+    public MembershipTier.Terms getTerms(MembershipTier tier) {
+        return terms.get(tier);
+    }
+
+    public double getMultiplier(MembershipTier tier) {
+        return terms.get(tier).multiplier();
+    }
+}
@@ -0,0 +1,62 @@
+package be.ucll.service;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.ConcurrencyFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/// Runs work in its own transaction and runs it again when it lost a race on a versioned row
+/// (optimistic lock) or timed out waiting for a row lock. Between attempts it sleeps a random time
+/// up to a backoff that doubles every attempt (full jitter), so the losers do not collide again.
+/// After maxAttempts the conflict is reported as a ServiceException.
+/// The work must not have effects outside the transaction before its last flush, they would be
+/// repeated by the next attempt.
+@Component
+public class OptimisticRetry {
+
+    public static final String CONCURRENT_UPDATE_EXCEPTION = "The data was changed by another request, please try again";
+
+    private TransactionTemplate transactionTemplate;
+    private int maxAttempts;
+    private long baseBackoffNanos;
+    private long maxBackoffNanos;
+
+    public OptimisticRetry(TransactionTemplate transactionTemplate,
+        @Value("${library.retry.max-attempts:10}") int maxAttempts,
+        @Value("${library.retry.base-backoff:5ms}") Duration baseBackoff,
+        @Value("${library.retry.max-backoff:200ms}") Duration maxBackoff
+    ) {
+        this.transactionTemplate = transactionTemplate;
+        this.maxAttempts = maxAttempts;
+        this.baseBackoffNanos = baseBackoff.toNanos();
+        this.maxBackoffNanos = maxBackoff.toNanos();
+    }
+
+    public <T> T execute(Supplier<T> work) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (ConcurrencyFailureException e) {
+                if (attempt >= maxAttempts) {
+                    throw new ServiceException(CONCURRENT_UPDATE_EXCEPTION);
+                }
+                backOff(attempt);
+            }
+        }
+    }
+
+    private void backOff(int attempt) {
+        long backoff = Math.min(maxBackoffNanos, baseBackoffNanos << Math.min(attempt - 1, 20));
+        try {
+            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(backoff + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ServiceException(CONCURRENT_UPDATE_EXCEPTION);
+        }
+    }
+}
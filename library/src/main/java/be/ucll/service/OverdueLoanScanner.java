@@ -0,0 +1,150 @@
+package be.ucll.service;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import be.ucll.dto.OverdueScan;
+import be.ucll.repository.OverdueLoanRepository;
+import be.ucll.repository.OverdueLoanRepository.Checkpoint;
+import be.ucll.repository.OverdueLoanRepository.OverdueLoan;
+import be.ucll.utilits.TimeTracker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+/// Finds the loans that are not returned and ended before today and stores their fine in overdue_loans.
+/// Loans are read in chunks in (end_date, loan_id) order from idx_loans_end_date_loan, so memory does not
+/// grow with the number of loans. Every chunk is written together with the checkpoint in one transaction:
+/// a scan that is stopped continues after the last written chunk when it runs again on the same day.
+@Component
+public class OverdueLoanScanner {
+
+    public static final String SCAN_NAME = "overdue-loans";
+    public static final String SCAN_ALREADY_RUNNING_EXCEPTION = "The overdue loan scan is already running";
+
+    public static final String METRIC_SCANNED_LOANS = "library.overdue.scan.loans";
+    public static final String METRIC_FINES = "library.overdue.scan.fines";
+    public static final String METRIC_CHUNK_DURATION = "library.overdue.scan.chunk.duration";
+    public static final String METRIC_SCAN_DURATION = "library.overdue.scan.duration";
+    public static final String METRIC_OVERDUE_LOANS = "library.overdue.loans";
+
+    private OverdueLoanRepository overdueLoanRepository;
+    private LoanService loanService;
+    private TransactionTemplate transactionTemplate;
+    private int chunkSize;
+
+    private final ReentrantLock scanLock = new ReentrantLock();
+    private final AtomicLong overdueLoans = new AtomicLong();
+    private Counter scannedLoansCounter;
+    private Counter finesCounter;
+    private Timer chunkTimer;
+    private Timer scanTimer;
+
+    public OverdueLoanScanner(OverdueLoanRepository overdueLoanRepository,
+        LoanService loanService,
+        TransactionTemplate transactionTemplate,
+        MeterRegistry meterRegistry,
+        @Value("${library.overdue-scan.chunk-size:1000}") int chunkSize
+    ) {
+        this.overdueLoanRepository = overdueLoanRepository;
+        this.loanService = loanService;
+        this.transactionTemplate = transactionTemplate;
+        this.chunkSize = chunkSize;
+        registerMetrics(meterRegistry);
+    }
+
+    @Scheduled(cron = "${library.overdue-scan.cron:0 30 2 * * *}")
+    public void scheduledScan() {
+        scan();
+    }
+
+    public OverdueScan scan() {
+        if (!scanLock.tryLock()) {
+            throw new ServiceException(SCAN_ALREADY_RUNNING_EXCEPTION);
+        }
+        try {
+            long startTime = System.nanoTime();
+            OverdueScan result = scan(TimeTracker.getToday());
+            scanTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+            return result;
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    private OverdueScan scan(LocalDate today) {
+        Checkpoint checkpoint = overdueLoanRepository.findCheckpoint(SCAN_NAME)
+            .filter(saved -> saved.scanDate().equals(today))
+            .orElse(Checkpoint.start(today));
+        boolean resumed = checkpoint.lastLoanId() != null && !checkpoint.completed();
+
+        while (!checkpoint.completed()) {
+            Checkpoint current = checkpoint;
+            long startTime = System.nanoTime();
+            checkpoint = transactionTemplate.execute(status -> scanChunk(today, current));
+            chunkTimer.record(System.nanoTime() - startTime, TimeUnit.NANOSECONDS);
+        }
+        overdueLoans.set(checkpoint.scannedLoans());
+        return new OverdueScan(today, checkpoint.scannedLoans(), checkpoint.totalFines(), resumed);
+    }
+
+    private Checkpoint scanChunk(LocalDate today, Checkpoint checkpoint) {
+        List<OverdueLoan> loans = overdueLoanRepository.findOverdueLoans(today, checkpoint, chunkSize);
+
+        List<Object[]> rows = new ArrayList<>(loans.size());
+        long fines = 0;
+        for (OverdueLoan loan : loans) {
+            int fine = loanService.calculateFine(loan.endDate(), today, loan.publications());
+            long daysLate = ChronoUnit.DAYS.between(loan.endDate(), today);
+            rows.add(new Object[] {loan.loanId(), loan.userId(), loan.endDate(), daysLate, fine, today});
+            fines += fine;
+        }
+        overdueLoanRepository.saveOverdueLoans(rows);
+
+        Checkpoint next;
+        if (loans.size() < chunkSize) {
+            // loans returned since the last scan are no longer overdue
+            overdueLoanRepository.deleteOverdueLoansScannedBefore(today);
+            next = new Checkpoint(today, checkpoint.lastEndDate(), checkpoint.lastLoanId(),
+                checkpoint.scannedLoans() + loans.size(), checkpoint.totalFines() + fines, true);
+        } else {
+            OverdueLoan last = loans.get(loans.size() - 1);
+            next = new Checkpoint(today, last.endDate(), last.loanId(),
+                checkpoint.scannedLoans() + loans.size(), checkpoint.totalFines() + fines, false);
+        }
+        overdueLoanRepository.saveCheckpoint(SCAN_NAME, next);
+
+        scannedLoansCounter.increment(loans.size());
+        finesCounter.increment(fines);
+        return next;
+    }
+
+    private void registerMetrics(MeterRegistry meterRegistry) {
+        scannedLoansCounter = Counter.builder(METRIC_SCANNED_LOANS)
+            .description("Overdue loans found by the overdue scan")
+            .register(meterRegistry);
+        finesCounter = Counter.builder(METRIC_FINES)
+            .description("Sum of the fines computed by the overdue scan")
+            .register(meterRegistry);
+        chunkTimer = Timer.builder(METRIC_CHUNK_DURATION)
+            .description("Time to read, price and write one chunk of overdue loans")
+            .register(meterRegistry);
+        scanTimer = Timer.builder(METRIC_SCAN_DURATION)
+            .description("Time of a whole overdue scan")
+            .register(meterRegistry);
+        Gauge.builder(METRIC_OVERDUE_LOANS, overdueLoans, AtomicLong::get)
+            .description("Overdue loans found by the last completed scan")
+            .register(meterRegistry);
+    }
+}
@@ -1,42 +1,254 @@
 package be.ucll.service;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
+import be.ucll.dto.KeysetPage;
+import be.ucll.dto.PublicationSummary;
+import be.ucll.dto.StockBucket;
 import be.ucll.model.Publication;
+import be.ucll.repository.EntityStreamer;
 import be.ucll.repository.PublicationRepository;
+import be.ucll.repository.PublicationSearchIndex;
+import be.ucll.repository.PublicationStockIndex;
+import be.ucll.utilits.AvailabilityLedger;
+import jakarta.transaction.Transactional;
 
 @Service
 public class PublicationService {
     
     public static final String NEGATIVE_AVAILABLE_COPIES_EXCEPTION = "Available copies cannot be negative";
     public static final String PUBLICATION_NOT_FOUND_EXCEPTION = "Publication with id %d not found.";
+    public static final String PUBLICATIONS_NOT_FOUND_EXCEPTION = "Publications with ids %s not found.";
+    public static final String INVALID_LIMIT_EXCEPTION = "Limit must be a positive number";
+    public static final String SEARCH_QUERY_CANNOT_BE_EMPTY_EXCEPTION = "Search query cannot be empty";
+    public static final String SEARCH_INDEX_NOT_READY_EXCEPTION = "Search index is not ready yet";
+    public static final String STOCK_INDEX_NOT_READY_EXCEPTION = "Stock index is not ready yet";
+    public static final String INVALID_BUCKET_SIZE_EXCEPTION = "Bucket size must be a positive number";
 
 
     private PublicationRepository publicationRepository;
+    private EntityStreamer entityStreamer;
+    private PublicationSearchIndex publicationSearchIndex;
+    private PublicationStockIndex publicationStockIndex;
+    private AvailabilityLedger availabilityLedger;
 
-    public PublicationService(PublicationRepository publicationRepository) {
+    public PublicationService(PublicationRepository publicationRepository, EntityStreamer entityStreamer,
+        PublicationSearchIndex publicationSearchIndex, PublicationStockIndex publicationStockIndex,
+        AvailabilityLedger availabilityLedger) {
         this.publicationRepository = publicationRepository;
+        this.entityStreamer = entityStreamer;
+        this.publicationSearchIndex = publicationSearchIndex;
+        this.publicationStockIndex = publicationStockIndex;
+        this.availabilityLedger = availabilityLedger;
     }
 
     public List<Publication> findPublicationsByTitleAndType(String title, String type) {
-        return publicationRepository.findByTitleAndType(title, type);
+        return findPublicationsByTitleAndType(title, type, null);
+    }
+
+    public List<Publication> findPublicationsByTitleAndType(String title, String type, Integer limit) {
+        checkLimit(limit);
+        if (!publicationSearchIndex.isReady()) {
+            List<Publication> publications = publicationRepository.findByTitleAndType(title, type);
+            return limit == null ? publications : publications.stream().limit(limit).toList();
+        }
+        List<Long> ids = publicationSearchIndex.findByTitleAndType(title, type, limit == null ? Integer.MAX_VALUE : limit);
+        return findIndexedPublications(ids);
+    }
+
+    public List<Publication> searchPublications(String query, String type, Integer limit) {
+        return findIndexedPublications(searchPublicationIds(query, type, limit));
+    }
+
+    /// Returns the ids of the matching publications, best match first.
+    public List<Long> searchPublicationIds(String query, String type, Integer limit) {
+        if (query == null || query.isBlank()) {
+            throw new ServiceException(SEARCH_QUERY_CANNOT_BE_EMPTY_EXCEPTION);
+        }
+        checkLimit(limit);
+        if (!publicationSearchIndex.isReady()) {
+            throw new ServiceException(SEARCH_INDEX_NOT_READY_EXCEPTION);
+        }
+        return publicationSearchIndex.search(query, type, limit == null ? Integer.MAX_VALUE : limit);
+    }
+
+    @Transactional
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildSearchIndex() {
+        entityStreamer.forEach(publicationRepository.streamByTitleAndType(null, null), publication -> {
+            publicationSearchIndex.put(publication);
+            publicationStockIndex.put(publication);
+        });
+        publicationSearchIndex.markReady();
+        publicationStockIndex.markReady();
+    }
+
+    private List<Publication> findIndexedPublications(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        // ids of rolled back inserts can still be in the index, those are not found
+        return publicationRepository.findAllByIdInOrder(ids)
+        .stream()
+        .filter(publication -> publication != null)
+        .toList();
+    }
+
+    private void checkLimit(Integer limit) {
+        if (limit != null && limit < 1) {
+            throw new ServiceException(INVALID_LIMIT_EXCEPTION);
+        }
     }
 
     public List<Publication> findPublicationsWithMoreAvailableCopiesThan(Integer copies) {
+        checkAvailableCopies(copies);
+        if (!publicationStockIndex.isReady()) {
+            return publicationRepository.findByAvailableCopiesGreaterThanEqual(copies);
+        }
+        return findIndexedPublications(publicationStockIndex.findWithAtLeast(copies));
+    }
+
+    /// Publications with the fewest available copies first, all of them when limit is null.
+    public List<Publication> findPublicationsWithLowestStock(Integer limit) {
+        checkLimit(limit);
+        if (!publicationStockIndex.isReady()) {
+            return publicationRepository.findByOrderByAvailableCopiesAscIdAsc(limit == null ? Limit.unlimited() : Limit.of(limit));
+        }
+        return findIndexedPublications(publicationStockIndex.findLowest(limit == null ? Integer.MAX_VALUE : limit));
+    }
+
+    /// Only the number of publications with at least copies available copies, per bucket of bucketSize copies.
+    public List<StockBucket> getStockHistogram(Integer copies, Integer bucketSize) {
+        checkAvailableCopies(copies);
+        if (bucketSize < 1) {
+            throw new ServiceException(INVALID_BUCKET_SIZE_EXCEPTION);
+        }
+        if (!publicationStockIndex.isReady()) {
+            throw new ServiceException(STOCK_INDEX_NOT_READY_EXCEPTION);
+        }
+        return publicationStockIndex.histogram(copies, bucketSize);
+    }
+
+    public List<PublicationSummary> findPublicationSummariesByTitleAndType(String title, String type) {
+        return withLedgerCopies(publicationRepository.findSummariesByTitleAndType(title, type));
+    }
+
+    /// The stored column lags the ledger, so the ids come from the stock index; the ledger copies are
+    /// checked again because they can change between the index lookup and the query.
+    public List<PublicationSummary> findPublicationSummariesWithMoreAvailableCopiesThan(Integer copies) {
+        checkAvailableCopies(copies);
+        List<PublicationSummary> summaries;
+        if (publicationStockIndex.isReady()) {
+            List<Long> ids = publicationStockIndex.findWithAtLeast(copies);
+            summaries = ids.isEmpty() ? new ArrayList<>() : publicationRepository.findSummariesByIdIn(ids);
+        } else {
+            summaries = publicationRepository.findSummariesByAvailableCopiesGreaterThanEqual(copies);
+        }
+        return withLedgerCopies(summaries).stream()
+            .filter(summary -> summary.availableCopies() >= copies)
+            .toList();
+    }
+
+    // Projections skip PublicationLedgerListener, so the copies in the ledger are applied here
+    private List<PublicationSummary> withLedgerCopies(List<PublicationSummary> summaries) {
+        return summaries.stream()
+            .map(summary -> {
+                Integer ledgerCopies = availabilityLedger.getAvailableCopies(summary.publicationId());
+                return ledgerCopies == null ? summary : summary.withAvailableCopies(ledgerCopies);
+            })
+            .toList();
+    }
+
+    public KeysetPage<Publication> findPublicationsByTitleAndTypePage(String title, String type, String cursor, Integer size) {
+        KeysetCursor.checkPageSize(size);
+        Long afterId = KeysetCursor.decode(cursor);
+        List<Publication> publications = publicationRepository.findByTitleAndTypeAndIdGreaterThan(title, type, afterId, Limit.of(size));
+        return KeysetCursor.toPage(publications, size, Publication::getId);
+    }
+
+    /// Like findPublicationsWithMoreAvailableCopiesThan the ids come from the stock index. A page can hold
+    /// fewer than size publications when copies were lent meanwhile, the cursor still moves past them.
+    public KeysetPage<Publication> findPublicationsWithMoreAvailableCopiesThanPage(Integer copies, String cursor, Integer size) {
+        checkAvailableCopies(copies);
+        KeysetCursor.checkPageSize(size);
+        Long afterId = KeysetCursor.decode(cursor);
+        if (!publicationStockIndex.isReady()) {
+            List<Publication> publications = publicationRepository
+                .findByAvailableCopiesGreaterThanEqualAndIdGreaterThanOrderByIdAsc(copies, afterId, Limit.of(size));
+            KeysetPage<Publication> page = KeysetCursor.toPage(publications, size, Publication::getId);
+            return new KeysetPage<>(withAtLeast(page.items(), copies), page.nextCursor());
+        }
+        List<Long> ids = publicationStockIndex.findWithAtLeast(copies, afterId, size);
+        String nextCursor = ids.size() == size ? KeysetCursor.encode(ids.get(ids.size() - 1)) : null;
+        return new KeysetPage<>(withAtLeast(findIndexedPublications(ids), copies), nextCursor);
+    }
+
+    @Transactional
+    public void streamPublicationsByTitleAndType(String title, String type, Consumer<Publication> consumer) {
+        entityStreamer.forEach(publicationRepository.streamByTitleAndType(title, type), consumer);
+    }
+
+    @Transactional
+    public void streamPublicationsWithMoreAvailableCopiesThan(Integer copies, Consumer<Publication> consumer) {
+        checkAvailableCopies(copies);
+        entityStreamer.forEach(publicationRepository.streamByAvailableCopiesGreaterThanEqualOrderByIdAsc(copies), publication -> {
+            if (publication.getAvailableCopies() >= copies) {
+                consumer.accept(publication);
+            }
+        });
+    }
+
+    // loaded publications carry the ledger copies (PublicationLedgerListener), the stored column can be higher
+    private List<Publication> withAtLeast(List<Publication> publications, Integer copies) {
+        return publications.stream()
+            .filter(publication -> publication.getAvailableCopies() >= copies)
+            .toList();
+    }
+
+    public void checkAvailableCopies(Integer copies) {
         if (copies < 0) {
             throw new ServiceException(NEGATIVE_AVAILABLE_COPIES_EXCEPTION);
         }
-        return publicationRepository.findByAvailableCopiesGreaterThanEqual(copies);
     }
 
     public List<Publication> getPublicationsById(List<Long> publicationsId) {
-        List<Publication> result = new ArrayList<>();
-        publicationsId.forEach(publicationId -> {
-            Publication foundPublication = getPublicationById(publicationId);
-            result.add(foundPublication);
+        List<Publication> foundPublications = publicationRepository.findAllByIdInOrder(publicationsId);
+
+        Set<Long> missingIds = new LinkedHashSet<>();
+        for (int i = 0; i < publicationsId.size(); i++) {
+            if (foundPublications.get(i) == null) {
+                missingIds.add(publicationsId.get(i));
+            }
+        }
+        if (missingIds.size() == 1) {
+            throw new ServiceException(String.format(PUBLICATION_NOT_FOUND_EXCEPTION, missingIds.iterator().next()));
+        }
+        if (missingIds.size() > 1) {
+            String ids = missingIds.stream().map(String::valueOf).collect(Collectors.joining(", "));
+            throw new ServiceException(String.format(PUBLICATIONS_NOT_FOUND_EXCEPTION, ids));
+        }
+        return new ArrayList<>(foundPublications);
+    }
+
+    public Map<Long, Publication> findPublicationsById(Collection<Long> publicationsId) {
+        Map<Long, Publication> result = new HashMap<>();
+        publicationRepository.findAllByIdInOrder(new ArrayList<>(publicationsId)).forEach(publication -> {
+            if (publication != null) {
+                result.put(publication.getId(), publication);
+            }
         });
         return result;
     }
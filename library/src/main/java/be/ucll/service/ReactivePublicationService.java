@@ -0,0 +1,71 @@
+package be.ucll.service;
+
+import java.util.List;
+import java.util.function.Function;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import be.ucll.dto.KeysetPage;
+import be.ucll.dto.PublicationSummary;
+import be.ucll.repository.PublicationSummaryRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/// Catalogue reads as Flux. Lists are read one keyset page at a time, on the bounded elastic scheduler,
+/// so no request thread waits for the database. The next page is only read once the subscriber has
+/// consumed the previous one, and no connection is held in between: a slow client does not keep one
+/// of the pool. Arguments are checked when the method is called, not on subscription.
+@Service
+public class ReactivePublicationService {
+
+    public static final int SEARCH_BATCH_SIZE = 100;
+
+    private PublicationService publicationService;
+    private PublicationSummaryRepository publicationSummaryRepository;
+    private int pageSize;
+
+    public ReactivePublicationService(PublicationService publicationService,
+        PublicationSummaryRepository publicationSummaryRepository,
+        @Value("${library.reactive.page-size:100}") int pageSize) {
+        this.publicationService = publicationService;
+        this.publicationSummaryRepository = publicationSummaryRepository;
+        this.pageSize = pageSize;
+    }
+
+    public Flux<PublicationSummary> findPublicationsByTitleAndType(String title, String type) {
+        return pages(afterId -> publicationSummaryRepository.findPageByTitleAndType(title, type, afterId, pageSize));
+    }
+
+    public Flux<PublicationSummary> findPublicationsWithMoreAvailableCopiesThan(Integer copies) {
+        publicationService.checkAvailableCopies(copies);
+        // the query filters on the stored column, which lags the ledger copies the summaries carry
+        return pages(afterId -> publicationSummaryRepository.findPageByAvailableCopiesGreaterThanEqual(copies, afterId, pageSize))
+            .filter(summary -> summary.availableCopies() >= copies);
+    }
+
+    /// Ranked search: the ids come from the in-memory index, the summaries are loaded one batch at a
+    /// time when the subscriber asks for more.
+    public Flux<PublicationSummary> searchPublications(String query, String type, Integer limit) {
+        List<Long> ids = publicationService.searchPublicationIds(query, type, limit);
+        return Flux.fromIterable(ids)
+            .buffer(SEARCH_BATCH_SIZE)
+            .concatMap(batch -> Mono.fromCallable(() -> publicationSummaryRepository.findAllByIdInOrder(batch))
+                .subscribeOn(Schedulers.boundedElastic()), 1)
+            .flatMapIterable(summaries -> summaries);
+    }
+
+    // every page is a query of its own, expand only asks for the next page when the items of this one are consumed
+    private Flux<PublicationSummary> pages(Function<Long, List<PublicationSummary>> pageAfter) {
+        return page(pageAfter, null)
+            .expand(page -> page.nextCursor() == null ? Mono.empty() : page(pageAfter, page.nextCursor()))
+            .flatMapIterable(KeysetPage::items, 1);
+    }
+
+    private Mono<KeysetPage<PublicationSummary>> page(Function<Long, List<PublicationSummary>> pageAfter, String cursor) {
+        return Mono.fromCallable(() -> KeysetCursor.toPage(pageAfter.apply(KeysetCursor.decode(cursor)), pageSize,
+                PublicationSummary::publicationId))
+            .subscribeOn(Schedulers.boundedElastic());
+    }
+}
@@ -0,0 +1,130 @@
+package be.ucll.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import be.ucll.dto.StockChange;
+import be.ucll.repository.PublicationStockIndex;
+import be.ucll.utilits.AvailabilityLedger;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+/// Pushes the stock changes of the AvailabilityLedger to subscribers instead of letting them poll.
+/// Lends and give backs are summed per publication and published once per interval, so a burst on one
+/// publication is a single change and a lend that is given back before the interval ends is none.
+/// Every subscriber has its own buffer of bufferSize changes; when a slow subscriber falls behind, its
+/// oldest changes are dropped and the available copies of the next change bring it up to date.
+/// A new subscriber first gets the current count of every publication as a change with delta 0, so it
+/// does not have to read /publications/stock before following the feed.
+@Service
+public class StockChangeFeed implements AvailabilityLedger.Listener {
+
+    public static final String METRIC_SUBSCRIBERS = "library.stock.feed.subscribers";
+    public static final String METRIC_CHANGES = "library.stock.feed.changes";
+    public static final String METRIC_DROPPED = "library.stock.feed.dropped";
+
+    private int bufferSize;
+
+    private final Map<Long, Integer> pendingDeltas = new ConcurrentHashMap<>();
+    // best effort: the per subscriber buffers always have demand, nobody waits on a slow subscriber
+    private final Sinks.Many<StockChange> changes = Sinks.many().multicast().directBestEffort();
+    // the sink does not accept concurrent emissions
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private Counter changesCounter;
+    private Counter droppedCounter;
+    private AvailabilityLedger availabilityLedger;
+    private PublicationStockIndex publicationStockIndex;
+
+    public StockChangeFeed(AvailabilityLedger availabilityLedger,
+        PublicationStockIndex publicationStockIndex,
+        MeterRegistry meterRegistry,
+        @Value("${library.stock-feed.buffer-size:256}") int bufferSize
+    ) {
+        this.availabilityLedger = availabilityLedger;
+        this.publicationStockIndex = publicationStockIndex;
+        this.bufferSize = bufferSize;
+        registerMetrics(meterRegistry);
+    }
+
+    @PostConstruct
+    public void listenToLedger() {
+        availabilityLedger.addListener(this);
+    }
+
+    @PreDestroy
+    public void stop() {
+        availabilityLedger.removeListener(this);
+        changes.tryEmitComplete();
+    }
+
+    /// The live changes are subscribed before the snapshot is read, so no change made in between is lost.
+    /// The buffer of the subscriber also has room for the snapshot, only changes are ever dropped.
+    /// The snapshot is left out while the stock index is still being built.
+    public Flux<StockChange> subscribe() {
+        return Flux.defer(() -> {
+            boolean withSnapshot = publicationStockIndex.isReady();
+            Flux<StockChange> snapshot = Flux.defer(() -> Flux.fromIterable(publicationStockIndex.getAvailableCopies().entrySet()))
+                .map(entry -> new StockChange(entry.getKey(), entry.getValue(), 0));
+            int snapshotSize = withSnapshot ? publicationStockIndex.size() : 0;
+            return Flux.merge(changes.asFlux(), withSnapshot ? snapshot : Flux.empty())
+                .onBackpressureBuffer(bufferSize + snapshotSize, dropped -> droppedCounter.increment(),
+                    BufferOverflowStrategy.DROP_OLDEST);
+        });
+    }
+
+    public int getSubscriberCount() {
+        return changes.currentSubscriberCount();
+    }
+
+    @Override
+    public void copiesChanged(long publicationId, int delta) {
+        if (changes.currentSubscriberCount() > 0) {
+            pendingDeltas.merge(publicationId, delta, Integer::sum);
+        }
+    }
+
+    /// Sends one change per publication whose copies changed since the last publish, ordered by id.
+    @Scheduled(fixedDelayString = "${library.stock-feed.interval:500}")
+    public void publish() {
+        publishLock.lock();
+        try {
+            List<Long> publicationIds = pendingDeltas.keySet().stream().sorted().toList();
+            for (Long publicationId : publicationIds) {
+                // remove is atomic with merge, a change made meanwhile is in this delta or in the next one
+                Integer delta = pendingDeltas.remove(publicationId);
+                Integer availableCopies = availabilityLedger.getAvailableCopies(publicationId);
+                if (delta == null || delta == 0 || availableCopies == null) {
+                    continue;
+                }
+                changes.tryEmitNext(new StockChange(publicationId, availableCopies, delta));
+                changesCounter.increment();
+            }
+        } finally {
+            publishLock.unlock();
+        }
+    }
+
+    private void registerMetrics(MeterRegistry meterRegistry) {
+        Gauge.builder(METRIC_SUBSCRIBERS, this, StockChangeFeed::getSubscriberCount)
+            .description("Clients following the stock change feed")
+            .register(meterRegistry);
+        changesCounter = Counter.builder(METRIC_CHANGES)
+            .description("Coalesced stock changes published to the feed")
+            .register(meterRegistry);
+        droppedCounter = Counter.builder(METRIC_DROPPED)
+            .description("Stock changes dropped because a subscriber buffer was full")
+            .register(meterRegistry);
+    }
+}
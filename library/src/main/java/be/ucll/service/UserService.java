@@ -1,19 +1,36 @@
 package be.ucll.service;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
-import be.ucll.model.Loan;
+import be.ucll.dto.KeysetPage;
+import be.ucll.dto.UserPurge;
+import be.ucll.dto.UserSummary;
 import be.ucll.model.Membership;
 import be.ucll.model.Profile;
 import be.ucll.model.User;
+import be.ucll.repository.EntityStreamer;
+import be.ucll.repository.LoanEventRepository;
 import be.ucll.repository.LoanRepository;
 import be.ucll.repository.MembershipRepository;
 import be.ucll.repository.ProfileRepository;
+import be.ucll.repository.UserCache;
+import be.ucll.repository.UserFetchProfile;
+import be.ucll.repository.UserPurgeRepository;
 import be.ucll.repository.UserRepository;
 import be.ucll.utilits.TimeTracker;
+import jakarta.transaction.Transactional;
 
 @Service
 public class UserService {
@@ -30,6 +47,7 @@ public class UserService {
     public static final String NO_USERS_FOUND_WITH_INTEREST_IN_EXCEPTION = "No users found with interest in %s";
     public static final String NO_USERS_FOUND_WITH_INTEREST_OLDER_THAN_EXCEPTION = "No users found with interest in %s and older than %d";
     public static final String NO_MEMBERSHIP_FOUND_ON_DATE_EXCEPTION = "No membership found for user on date %s.";
+    public static final String INVALID_FETCH_PROFILE_EXCEPTION = "Fetch must be summary, withProfile or withMemberships";
     public static final Integer MIN_AGE_RESTRICTION = 0; //Min age cannot be lower than this number
     public static final Integer MAX_AGE_RESTRICTION = 150; //Max age cannot be higher than this number
     public static final String DELETION_SUCCESS_RESPONSE = "User successfully deleted";
@@ -38,16 +56,31 @@ public class UserService {
     private LoanRepository loanRepository;
     private ProfileRepository profileRepository;
     private MembershipRepository membershipRepository;
+    private EntityStreamer entityStreamer;
+    private UserCache userCache;
+    private UserPurgeRepository userPurgeRepository;
+    private LoanEventRepository loanEventRepository;
+    private MembershipTierSettings membershipTierSettings;
 
     public UserService(
         UserRepository userRepository,
         LoanRepository loanRepository,
         ProfileRepository profileRepository,
-        MembershipRepository membershipRepository) {
+        MembershipRepository membershipRepository,
+        EntityStreamer entityStreamer,
+        UserCache userCache,
+        UserPurgeRepository userPurgeRepository,
+        LoanEventRepository loanEventRepository,
+        MembershipTierSettings membershipTierSettings) {
         this.userRepository = userRepository;
         this.loanRepository = loanRepository;
         this.profileRepository = profileRepository;
         this.membershipRepository = membershipRepository;
+        this.entityStreamer = entityStreamer;
+        this.userCache = userCache;
+        this.userPurgeRepository = userPurgeRepository;
+        this.loanEventRepository = loanEventRepository;
+        this.membershipTierSettings = membershipTierSettings;
     }
 
     public List<User> getAllUsers() {
@@ -59,13 +92,17 @@ public class UserService {
     }
 
     public List<User> getUsersWithinAgeRange(Integer min, Integer max) {
+        checkAgeRange(min, max);
+        return userRepository.findByAgeBetween(min, max);
+    }
+
+    public void checkAgeRange(Integer min, Integer max) {
         if (min > max) {
             throw new ServiceException(MIN_AGE_GREATER_THAN_MAX_EXCEPTION);
         }
         if (min < MIN_AGE_RESTRICTION || max > MAX_AGE_RESTRICTION) {
             throw new ServiceException(INVALID_AGE_RANGE_EXCEPTION);
         }
-        return userRepository.findByAgeBetween(min, max);
     }
 
     public List<User> getUsersByName(String name) {
@@ -79,6 +116,109 @@ public class UserService {
         return result;
     }
 
+    // Fetch profiles: summary reads the users table only, the others join the associations of their entity graph
+
+    public List<User> getUsersByName(String name, String fetch) {
+        UserFetchProfile fetchProfile = getFetchProfile(fetch);
+        if (fetchProfile == UserFetchProfile.SUMMARY) {
+            return getUsersByName(name);
+        }
+        if (name == null) {
+            return userRepository.findAll(fetchProfile);
+        }
+        List<User> result = userRepository.findByNameContaining(name, fetchProfile);
+        if (result.size() == 0) {
+            throw new ServiceException(NO_USERS_FOUND_EXCEPTION);
+        }
+        return result;
+    }
+
+    public List<User> getAllAdultUsers(String fetch) {
+        UserFetchProfile fetchProfile = getFetchProfile(fetch);
+        if (fetchProfile == UserFetchProfile.SUMMARY) {
+            return getAllAdultUsers();
+        }
+        return userRepository.findByAgeGreaterThanEqual(18, fetchProfile);
+    }
+
+    public List<User> getUsersWithinAgeRange(Integer min, Integer max, String fetch) {
+        UserFetchProfile fetchProfile = getFetchProfile(fetch);
+        if (fetchProfile == UserFetchProfile.SUMMARY) {
+            return getUsersWithinAgeRange(min, max);
+        }
+        checkAgeRange(min, max);
+        return userRepository.findByAgeBetween(min, max, fetchProfile);
+    }
+
+    public UserFetchProfile getFetchProfile(String fetch) {
+        UserFetchProfile fetchProfile = UserFetchProfile.fromParameter(fetch);
+        if (fetchProfile == null) {
+            throw new ServiceException(INVALID_FETCH_PROFILE_EXCEPTION);
+        }
+        return fetchProfile;
+    }
+
+    public List<UserSummary> getUserSummariesByName(String name) {
+        List<UserSummary> result = userRepository.findSummariesByName(name);
+        if (name != null && result.size() == 0) {
+            throw new ServiceException(NO_USERS_FOUND_EXCEPTION);
+        }
+        return result;
+    }
+
+    public List<UserSummary> getAdultUserSummaries() {
+        return userRepository.findSummariesByAgeGreaterThanEqual(18);
+    }
+
+    public List<UserSummary> getUserSummariesWithinAgeRange(Integer min, Integer max) {
+        checkAgeRange(min, max);
+        return userRepository.findSummariesByAgeBetween(min, max);
+    }
+
+    public KeysetPage<User> getUsersByNamePage(String name, String cursor, Integer size) {
+        KeysetCursor.checkPageSize(size);
+        Long afterId = KeysetCursor.decode(cursor);
+        List<User> users = name == null
+            ? userRepository.findByIdGreaterThanOrderByIdAsc(afterId, Limit.of(size))
+            : userRepository.findByNameContainingAndIdGreaterThanOrderByIdAsc(name, afterId, Limit.of(size));
+        return KeysetCursor.toPage(users, size, User::getId);
+    }
+
+    public KeysetPage<User> getAllAdultUsersPage(String cursor, Integer size) {
+        KeysetCursor.checkPageSize(size);
+        Long afterId = KeysetCursor.decode(cursor);
+        List<User> users = userRepository.findByAgeGreaterThanEqualAndIdGreaterThanOrderByIdAsc(18, afterId, Limit.of(size));
+        return KeysetCursor.toPage(users, size, User::getId);
+    }
+
+    public KeysetPage<User> getUsersWithinAgeRangePage(Integer min, Integer max, String cursor, Integer size) {
+        checkAgeRange(min, max);
+        KeysetCursor.checkPageSize(size);
+        Long afterId = KeysetCursor.decode(cursor);
+        List<User> users = userRepository.findByAgeBetweenAndIdGreaterThanOrderByIdAsc(min, max, afterId, Limit.of(size));
+        return KeysetCursor.toPage(users, size, User::getId);
+    }
+
+    @Transactional
+    public void streamUsersByName(String name, Consumer<User> consumer) {
+        if (name == null) {
+            entityStreamer.forEach(userRepository.streamAllByOrderByIdAsc(), consumer);
+        } else {
+            entityStreamer.forEach(userRepository.streamByNameContainingOrderByIdAsc(name), consumer);
+        }
+    }
+
+    @Transactional
+    public void streamAllAdultUsers(Consumer<User> consumer) {
+        entityStreamer.forEach(userRepository.streamByAgeGreaterThanEqualOrderByIdAsc(18), consumer);
+    }
+
+    @Transactional
+    public void streamUsersWithinAgeRange(Integer min, Integer max, Consumer<User> consumer) {
+        checkAgeRange(min, max);
+        entityStreamer.forEach(userRepository.streamByAgeBetweenOrderByIdAsc(min, max), consumer);
+    }
+
     public User getOldestUser() {
         User oldestUser = userRepository.findOldestUser();
         if (oldestUser == null) {
@@ -119,39 +259,85 @@ public class UserService {
 
         createUserProfileIfNotNull(newUser.getProfile());
         userRepository.save(newUser);
+        userCache.evict(newUser.getEmail());
         return userRepository.findByEmail(newUser.getEmail());
     }
 
+    @Transactional
     public User updateUser(String email, User newUser) {
         isValidUser(newUser);
 
-        User user = getUserByEmail(email);
+        User user = getUserForUpdate(email);
         user.copyUser(newUser);
         userRepository.save(user);
+        userCache.evict(email);
         return userRepository.findByEmail(email);
     }
 
+    @Transactional
     public String deleteUser(String email) {
-        User user = getUserByEmail(email);
+        User user = getUserForUpdate(email);
         handleUserLoans(email);
         
         handleUserMemberships(user);
 
         userRepository.delete(user);
+        userCache.evict(email);
         return DELETION_SUCCESS_RESPONSE;
     }
 
+    /// Deletes many users at once together with their loans, memberships and unused profiles.
+    /// Users and active loans are looked up with one query each and the deletes are set-based.
+    /// Unknown users and users with active loans are skipped, every email gets its own result.
+    @Transactional
+    public List<UserPurge> purgeUsers(List<String> emails) {
+        List<UserPurge> results = new ArrayList<>();
+        if (emails.isEmpty()) {
+            return results;
+        }
+        Map<String, User> users = getUsersByEmail(emails);
+        Set<String> emailsWithActiveLoans = new HashSet<>(
+            loanRepository.findUserEmailsWithLoansEndingAfter(emails, TimeTracker.getToday()));
+
+        Set<Long> userIds = new LinkedHashSet<>();
+        for (String email : emails) {
+            User user = users.get(email);
+            if (user == null) {
+                results.add(UserPurge.failed(email, USER_DOESNT_EXIST_EXCEPTION));
+            } else if (emailsWithActiveLoans.contains(email)) {
+                results.add(UserPurge.failed(email, LoanService.USER_HAS_ACTIVE_LOANS_EXCEPTION));
+            } else {
+                userIds.add(user.getId());
+                results.add(UserPurge.succeeded(email));
+            }
+        }
+
+        userPurgeRepository.purgeUsers(userIds);
+        users.keySet().forEach(userCache::evict);
+        return results;
+    }
+
+    @Transactional
     public User addMembership(String email, Membership membership) {
-        User currentUser = getUserByEmail(email);
+        if (!membership.areValidFreeLoans(membership.getFreeLoansQuantity(), membershipTierSettings.getTerms(membership.getType()))) {
+            throw new ServiceException(Membership.INVALID_FREE_LOANS_EXCEPTION);
+        }
+        User currentUser = getUserForUpdate(email);
         membership.setUser(currentUser);
         currentUser.setMembership(membership);
 
         membershipRepository.save(membership);
         userRepository.save(currentUser);
+        userCache.evict(email);
 
         return currentUser;
     }
 
+    /// Drops the cached copy of the user after its loans or memberships were changed elsewhere.
+    public void evictCachedUser(String email) {
+        userCache.evict(email);
+    }
+
     public void handleUserMemberships(User user) {
         List<Membership> memberships = user.getMemberships();
         memberships.forEach(membership -> {
@@ -165,19 +351,18 @@ public class UserService {
     }
 
     public void checkUsersActiveLoans(String email) {
-        List<Loan> activeLoans = loanRepository.findByUserEmailAndEndDateAfter(email, TimeTracker.getToday());
-        Boolean userHasActiveLoans = activeLoans.size() > 0;
+        Boolean userHasActiveLoans = loanRepository.existsByUserEmailAndEndDateAfter(email, TimeTracker.getToday());
         if (userHasActiveLoans) {
             throw new ServiceException(LoanService.USER_HAS_ACTIVE_LOANS_EXCEPTION);
         }
     }
 
     public void deleteUserLoansIfExist(String email) {
-        List<Loan> allLoans = loanRepository.findByUserEmail(email);
-        Boolean userHasLoans = allLoans.size() > 0;
+        Boolean userHasLoans = loanRepository.existsByUserEmail(email);
         if (!userHasLoans) {
             return;
         }
+        loanEventRepository.appendDeletedLoansOfUser(email, TimeTracker.getToday());
         loanRepository.deleteByUserEmail(email);
     }
 
@@ -189,15 +374,15 @@ public class UserService {
 
     // userExists and checkUserExists are for different exception messages
     public void userExists(String email) {
-        User user = userRepository.findByEmail(email);
-        Boolean userExists = user != null;
+        Boolean userExists = userCache.contains(email) || userRepository.existsByEmail(email);
         if (!userExists) {
             throw new ServiceException(String.format(USER_WITH_EMAIL_DOESNT_EXIST_EXCEPTION, email));
         }
     }
 
+    /// The cached user, shared with other requests, it must not be changed.
     public User getUserByEmail(String email) {
-        User user = userRepository.findByEmail(email);
+        User user = userCache.get(email);
         Boolean userExists = user != null;
         if (!userExists) {
             throw new ServiceException(USER_DOESNT_EXIST_EXCEPTION);
@@ -205,9 +390,26 @@ public class UserService {
         return user;
     }
 
+    /// A managed user of the running transaction, to be changed instead of the cached one.
+    private User getUserForUpdate(String email) {
+        User user = userRepository.findByEmail(email);
+        if (user == null) {
+            throw new ServiceException(USER_DOESNT_EXIST_EXCEPTION);
+        }
+        return user;
+    }
+
+    public Map<String, User> getUsersByEmail(Collection<String> emails) {
+        Map<String, User> result = new HashMap<>();
+        userRepository.findByEmailIn(emails).forEach(user -> {
+            result.put(user.getEmail(), user);
+        });
+        return result;
+    }
+
     public Membership getMembershipForDate(String email, LocalDate date) {
-        getUserByEmail(email); //to check that user exists
-        Membership membership = membershipRepository.findMembershipByUserEmailAndDate(email, date);
+        // the user comes with its memberships (cached), the period is looked up in memory
+        Membership membership = getUserByEmail(email).findMembershipAt(date);
 
         if (membership == null) {
             String message = String.format(NO_MEMBERSHIP_FOUND_ON_DATE_EXCEPTION, date);
@@ -218,8 +420,7 @@ public class UserService {
     }
 
     public void userDoesNotExists(String email) {
-        User user = userRepository.findByEmail(email);
-        Boolean userExists = user != null;
+        Boolean userExists = userCache.contains(email) || userRepository.existsByEmail(email);
         if (userExists) {
             throw new ServiceException(USER_ALREADY_EXISTS_EXCEPTION);
         }
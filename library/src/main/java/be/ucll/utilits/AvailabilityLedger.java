@@ -0,0 +1,148 @@
+package be.ucll.utilits;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/// In-memory source of truth for available copies of persisted publications.
+/// Lend and return are CAS operations on a per-publication counter, so concurrent checkouts of the
+/// same title never lose a decrement or oversell. Changed counts are remembered as dirty and written
+/// back to the database in batches by AvailabilityLedgerFlusher (write-behind).
+/// Inside a transaction a lend takes the copy right away and puts it back when the transaction does
+/// not commit, a give back is only applied once the transaction committed.
+/// One ledger per application context, it is injected wherever copies are lent, given back or read.
+@Component
+public class AvailabilityLedger {
+    public static final int NO_COPIES_AVAILABLE = -1;
+
+    /// Told after every lend (delta -1) and give back (delta 1), on the thread that changed the counter.
+    /// Concurrent changes can be reported out of order, so listeners read the current count with
+    /// getAvailableCopies instead of keeping their own.
+    public interface Listener {
+        void copiesChanged(long publicationId, int delta);
+    }
+
+    private final Map<Long, AtomicInteger> copies = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final Set<Listener> listeners = new CopyOnWriteArraySet<>();
+    // not a monitor: the writer blocks on JDBC and a virtual thread must not pin its carrier meanwhile
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    /// Takes one copy. The counter is seeded with storedCopies the first time the publication is seen.
+    /// Returns the remaining copies or NO_COPIES_AVAILABLE when nothing could be taken.
+    public int lend(long publicationId, int storedCopies) {
+        AtomicInteger counter = counterFor(publicationId, storedCopies);
+        while (true) {
+            int current = counter.get();
+            if (current < 1) {
+                return NO_COPIES_AVAILABLE;
+            }
+            if (counter.compareAndSet(current, current - 1)) {
+                changed(publicationId, -1);
+                afterCompletion(false, () -> increment(publicationId, counter));
+                return current - 1;
+            }
+        }
+    }
+
+    /// Gives one copy back and returns the new amount of available copies.
+    /// Inside a transaction that is the expected amount, the copy is only given back after the commit.
+    public int giveBack(long publicationId, int storedCopies) {
+        AtomicInteger counter = counterFor(publicationId, storedCopies);
+        if (afterCompletion(true, () -> increment(publicationId, counter))) {
+            return counter.get() + 1;
+        }
+        return increment(publicationId, counter);
+    }
+
+    /// Returns the ledger count for a publication or null when it has not been touched yet.
+    public Integer getAvailableCopies(long publicationId) {
+        AtomicInteger counter = copies.get(publicationId);
+        return counter == null ? null : counter.get();
+    }
+
+    /// Hands all changed counts to the writer and forgets them as dirty.
+    /// Counts that change again while the writer runs are picked up by the next flush.
+    public void flush(Consumer<Map<Long, Integer>> writer) {
+        flushLock.lock();
+        try {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            Map<Long, Integer> changed = new HashMap<>();
+            for (Long publicationId : Set.copyOf(dirty)) {
+                dirty.remove(publicationId);
+                changed.put(publicationId, copies.get(publicationId).get());
+            }
+            try {
+                writer.accept(changed);
+            } catch (RuntimeException e) {
+                dirty.addAll(changed.keySet());
+                throw e;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /// Drops all counters, e.g. when the database is seeded again.
+    public void clear() {
+        flushLock.lock();
+        try {
+            dirty.clear();
+            copies.clear();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private int increment(long publicationId, AtomicInteger counter) {
+        int result = counter.incrementAndGet();
+        changed(publicationId, 1);
+        return result;
+    }
+
+    private void changed(long publicationId, int delta) {
+        dirty.add(publicationId);
+        listeners.forEach(listener -> listener.copiesChanged(publicationId, delta));
+    }
+
+    /// Runs the action when the running transaction commits (onCommit) or does not commit.
+    /// Returns false, without running the action, when there is no transaction to wait for.
+    private boolean afterCompletion(boolean onCommit, Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()
+            || !TransactionSynchronizationManager.isActualTransactionActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if ((status == STATUS_COMMITTED) == onCommit) {
+                    action.run();
+                }
+            }
+        });
+        return true;
+    }
+
+    private AtomicInteger counterFor(long publicationId, int storedCopies) {
+        return copies.computeIfAbsent(publicationId, id -> new AtomicInteger(storedCopies));
+    }
+}
@@ -1,3 +1,6 @@
+DROP TABLE IF EXISTS loan_events;
+DROP TABLE IF EXISTS scan_checkpoints;
+DROP TABLE IF EXISTS overdue_loans;
 DROP TABLE IF EXISTS loan_publications;
 DROP TABLE IF EXISTS publications;
 DROP TABLE IF EXISTS loans;
@@ -5,48 +8,59 @@ DROP TABLE IF EXISTS memberships;
 DROP TABLE IF EXISTS users;
 DROP TABLE IF EXISTS profiles;
 
+-- Id sequences for the pooled generators of the entities (allocationSize 50).
+-- They are not dropped when the tables are recreated, ids keep growing so a running application
+-- never hands out an id twice.
+CREATE SEQUENCE IF NOT EXISTS profiles_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS users_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS memberships_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS loans_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS publications_seq START WITH 1 INCREMENT BY 50;
+
 CREATE TABLE profiles (
-    profile_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    profile_id BIGINT DEFAULT NEXT VALUE FOR profiles_seq PRIMARY KEY,
     bio VARCHAR(255) NOT NULL,
     location VARCHAR(255) NOT NULL,
     interests VARCHAR(255) NOT NULL
 );
 
 CREATE TABLE users (
-    user_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    user_id BIGINT DEFAULT NEXT VALUE FOR users_seq PRIMARY KEY,
     name VARCHAR(255) NOT NULL,
     age INT NOT NULL,
     email VARCHAR(255) NOT NULL,
     password VARCHAR(255) NOT NULL,
-    profile_id INT,
+    profile_id BIGINT,
     FOREIGN KEY (profile_id) REFERENCES profiles(profile_id)
 );
 
 CREATE TABLE memberships (
-    membership_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    membership_id BIGINT DEFAULT NEXT VALUE FOR memberships_seq PRIMARY KEY,
     start_date DATETIME NOT NULL,
     end_date DATETIME NOT NULL,
-    type VARCHAR(255) NOT NULL,
+    tier SMALLINT NOT NULL,
     free_loans_quantity INT NOT NULL,
+    version BIGINT DEFAULT 0 NOT NULL,
     user_id BIGINT,
     CONSTRAINT fk_user_membership FOREIGN KEY (user_id) REFERENCES users(user_id),
-    CONSTRAINT chk_membership_type CHECK (type IN ('BRONZE', 'SILVER', 'GOLD')),
+    CONSTRAINT chk_membership_tier CHECK (tier IN (1, 2, 3)),
     CONSTRAINT chk_membership_dates CHECK (end_date >= start_date),
     CONSTRAINT chk_membership_unique_dates UNIQUE (user_id, start_date, end_date)
 );
 
 CREATE TABLE loans (
-    loan_id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    loan_id BIGINT DEFAULT NEXT VALUE FOR loans_seq PRIMARY KEY,
     user_id BIGINT NOT NULL,
     start_date DATETIME NOT NULL,
     end_date DATETIME,
     return_date DATETIME,
     price INT,
+    version BIGINT DEFAULT 0 NOT NULL,
     FOREIGN KEY (user_id) REFERENCES users(user_id)
 );
 
 CREATE TABLE publications (
-    publication_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    publication_id BIGINT DEFAULT NEXT VALUE FOR publications_seq PRIMARY KEY,
     available_copies INTEGER,
     title VARCHAR(255) NOT NULL,
     publication_year INTEGER,
@@ -54,7 +68,8 @@ CREATE TABLE publications (
     ISBN VARCHAR(255),
     editor VARCHAR(255),
     ISSN VARCHAR(255),
-    type VARCHAR(255) NOT NULL
+    type VARCHAR(255) NOT NULL,
+    version BIGINT DEFAULT 0 NOT NULL
 );
 
 CREATE TABLE loan_publications (
@@ -65,3 +80,51 @@ CREATE TABLE loan_publications (
     FOREIGN KEY (publication_id) REFERENCES publications(publication_id)
 );
 
+-- Fines of the loans found by the last overdue scan, rows of loans that are no longer overdue are
+-- removed when a scan completes
+CREATE TABLE overdue_loans (
+    loan_id BIGINT PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    end_date DATE NOT NULL,
+    days_late INT NOT NULL,
+    fine INT NOT NULL,
+    scan_date DATE NOT NULL,
+    FOREIGN KEY (loan_id) REFERENCES loans(loan_id) ON DELETE CASCADE
+);
+
+-- Progress of long running scans, a restarted scan continues after the last key
+CREATE TABLE scan_checkpoints (
+    scan_name VARCHAR(64) PRIMARY KEY,
+    scan_date DATE NOT NULL,
+    last_end_date DATE,
+    last_loan_id BIGINT,
+    scanned_loans BIGINT NOT NULL,
+    total_fines BIGINT NOT NULL,
+    completed BOOLEAN NOT NULL
+);
+
+-- Outbox of loan lifecycle events, written in the transaction that changes the loan and relayed to
+-- the consumers in batches. Rows are not changed except for published_at, published rows are removed
+-- after the retention. There is no foreign key, events outlive deleted loans.
+CREATE TABLE loan_events (
+    event_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+    event_type VARCHAR(16) NOT NULL,
+    loan_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    event_date DATE NOT NULL,
+    publications INT,
+    price INT,
+    occurred_at TIMESTAMP NOT NULL,
+    published_at TIMESTAMP,
+    CONSTRAINT chk_loan_event_type CHECK (event_type IN ('REGISTERED', 'RETURNED', 'PRICED', 'DELETED'))
+);
+
+-- Indexes for the repository queries
+CREATE UNIQUE INDEX idx_users_email ON users(email);
+CREATE INDEX idx_users_age ON users(age);
+CREATE INDEX idx_loans_user_end_date ON loans(user_id, end_date);
+CREATE INDEX idx_loans_end_date_loan ON loans(end_date, loan_id);
+CREATE INDEX idx_publications_available_copies ON publications(available_copies);
+CREATE INDEX idx_publications_type ON publications(type);
+CREATE INDEX idx_loan_publications_publication ON loan_publications(publication_id);
+CREATE INDEX idx_loan_events_published ON loan_events(published_at, event_id);
@@ -0,0 +1,96 @@
+package be.ucll.Integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.test.context.jdbc.Sql;
+
+import be.ucll.model.User;
+import be.ucll.repository.DbInitializer;
+import be.ucll.repository.UserRepository;
+import be.ucll.service.PublicationService;
+import be.ucll.utilits.TimeTracker;
+
+@SpringBootTest(properties = {
+    "library.seed.bulk.users=300",
+    "library.seed.bulk.publications=50",
+    "library.seed.bulk.loans=2000"
+})
+@Sql("classpath:schema.sql")
+public class BulkSeedingIntegrationTest {
+
+    // ids keep growing over reseeds, the generated values do not
+    private static final String LOANS_FINGERPRINT_QUERY = "SELECT u.email, l.start_date, l.price FROM loans l " + //
+                "JOIN users u ON u.user_id = l.user_id ORDER BY l.loan_id";
+
+    @Autowired
+    private DbInitializer dbInitializer;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private PublicationService publicationService;
+
+    @BeforeEach
+    public void setupDatabasesAndTime() {
+        TimeTracker.resetToday();
+        TimeTracker.resetYear();
+        dbInitializer.initialize();
+    }
+
+    @Test
+    public void givenBulkCounts_whenSeeding_thenGeneratedRowsAddedToDefaultData() {
+        assertEquals(5 + 300, count("users"));
+        assertEquals(10 + 50, count("publications"));
+        assertEquals(5 + 2000, count("loans"));
+        assertEquals(5 + 100, count("memberships"));
+        assertEquals(0, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM loans l JOIN users u ON u.user_id = l.user_id " + //
+            "WHERE u.email LIKE 'seed.user%' AND l.end_date >= ?", Integer.class, TimeTracker.getToday()));
+        assertTrue(count("loan_publications") >= 2000);
+    }
+
+    @Test
+    public void givenSameSettings_whenSeedingAgain_thenSameRowsGenerated() {
+        List<Map<String, Object>> firstRun = jdbcTemplate.queryForList(LOANS_FINGERPRINT_QUERY);
+
+        new ResourceDatabasePopulator(new ClassPathResource("schema.sql")).execute(dataSource);
+        dbInitializer.initialize();
+
+        assertEquals(firstRun, jdbcTemplate.queryForList(LOANS_FINGERPRINT_QUERY));
+    }
+
+    @Test
+    public void givenSeededData_whenSavingNewEntities_thenIdsDoNotCollide() {
+        for (int i = 0; i < 100; i++) {
+            userRepository.save(new User("New User", 30, "new.user" + i + "@ucll.be", "new12345"));
+        }
+
+        assertEquals(5 + 300 + 100, count("users"));
+    }
+
+    @Test
+    public void givenSeededPublications_whenSearching_thenSeededPublicationsFound() {
+        assertEquals(1, publicationService.findPublicationsByTitleAndType("Seed Book 7", null).size()
+            + publicationService.findPublicationsByTitleAndType("Seed Magazine 7", null).size());
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+}
@@ -0,0 +1,109 @@
+package be.ucll.Integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+
+import be.ucll.model.Loan;
+import be.ucll.model.Publication;
+import be.ucll.repository.DbInitializer;
+import be.ucll.repository.PublicationRepository;
+import be.ucll.service.LoanEventRelay;
+import be.ucll.service.LoanService;
+import be.ucll.service.LoanStatistics;
+import be.ucll.service.ServiceException;
+import be.ucll.utilits.TimeTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// the scheduled relay would publish the events before the tests look at them
+@SpringBootTest(properties = "library.loan-events.relay-interval=3600000")
+@Sql("classpath:schema.sql")
+public class LoanEventOutboxIntegrationTest {
+
+    private static final String EVENT_TYPES_QUERY = "SELECT event_type FROM loan_events ORDER BY event_id";
+    private static final String UNPUBLISHED_COUNT_QUERY = "SELECT COUNT(*) FROM loan_events WHERE published_at IS NULL";
+
+    @Autowired
+    private LoanService loanService;
+    @Autowired
+    private LoanEventRelay loanEventRelay;
+    @Autowired
+    private PublicationRepository publicationRepository;
+    @Autowired
+    private DbInitializer dbInitializer;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private LocalDate today;
+
+    @BeforeEach
+    public void setupDatabaseAndTime() {
+        TimeTracker.resetToday();
+        TimeTracker.resetYear();
+        dbInitializer.initialize();
+        today = TimeTracker.getToday();
+    }
+
+    @Test
+    public void givenRegisteredAndReturnedLoan_whenRelaying_thenEventsPublishedToStatistics() {
+        double returnedBefore = eventCount("returned");
+        double revenueBefore = meterRegistry.counter(LoanStatistics.METRIC_REVENUE).count();
+        List<Long> publicationIds = publicationRepository.findAll().stream().map(Publication::getId).toList().subList(0, 3);
+
+        loanService.registerLoan("sarah.doe@ucll.be", today, publicationIds);
+        TimeTracker.setCustomToday(today.plusDays(1));
+        Loan loan = loanService.returnLoan("sarah.doe@ucll.be", today.plusDays(1));
+
+        assertEquals(List.of("REGISTERED", "RETURNED", "PRICED"), jdbcTemplate.queryForList(EVENT_TYPES_QUERY, String.class));
+        assertEquals(loan.getPrice(), jdbcTemplate.queryForObject(
+            "SELECT price FROM loan_events WHERE event_type = 'PRICED' AND loan_id = ?", Integer.class, loan.getId()));
+
+        assertEquals(3, loanEventRelay.relay());
+
+        assertEquals(0, jdbcTemplate.queryForObject(UNPUBLISHED_COUNT_QUERY, Integer.class));
+        assertEquals(1, eventCount("returned") - returnedBefore);
+        assertEquals(loan.getPrice().doubleValue(), meterRegistry.counter(LoanStatistics.METRIC_REVENUE).count() - revenueBefore);
+        assertEquals(0, loanEventRelay.relay());
+    }
+
+    @Test
+    public void givenFailedLoanRegistration_whenRegistering_thenNoEventStored() {
+        assertThrows(ServiceException.class, () -> loanService.registerLoan("sarah.doe@ucll.be", today, List.of(-1L)));
+
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM loan_events", Integer.class));
+    }
+
+    @Test
+    public void givenUserWithPastLoans_whenDeletingLoans_thenDeletedEventPerLoanStored() {
+        loanService.deleteLoansByUser("john.doe@ucll.be");
+
+        assertEquals(List.of("DELETED"), jdbcTemplate.queryForList(EVENT_TYPES_QUERY, String.class));
+        assertEquals(2, jdbcTemplate.queryForObject("SELECT publications FROM loan_events", Integer.class));
+    }
+
+    @Test
+    public void givenEventsPublishedBeforeRetention_whenRelaying_thenTheyAreDeleted() {
+        loanService.deleteLoansByUser("john.doe@ucll.be");
+        loanEventRelay.relay();
+        jdbcTemplate.update("UPDATE loan_events SET published_at = DATEADD('DAY', -8, published_at)");
+
+        loanEventRelay.relay();
+
+        assertEquals(0, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM loan_events", Integer.class));
+    }
+
+    private double eventCount(String type) {
+        return meterRegistry.counter(LoanStatistics.METRIC_EVENTS, "type", type).count();
+    }
+}
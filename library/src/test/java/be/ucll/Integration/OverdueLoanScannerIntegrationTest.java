@@ -0,0 +1,118 @@
+package be.ucll.Integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+
+import be.ucll.dto.OverdueScan;
+import be.ucll.repository.DbInitializer;
+import be.ucll.repository.OverdueLoanRepository;
+import be.ucll.service.OverdueLoanScanner;
+import be.ucll.utilits.TimeTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+
+// chunks of two loans, the four overdue default loans take three chunks
+@SpringBootTest(properties = "library.overdue-scan.chunk-size=2")
+@Sql("classpath:schema.sql")
+public class OverdueLoanScannerIntegrationTest {
+
+    private static final String OVERDUE_LOAN_IDS_QUERY = "SELECT loan_id FROM loans " + //
+                "WHERE return_date IS NULL AND end_date < ? ORDER BY end_date, loan_id";
+
+    @Autowired
+    private OverdueLoanScanner overdueLoanScanner;
+    @Autowired
+    private OverdueLoanRepository overdueLoanRepository;
+    @Autowired
+    private DbInitializer dbInitializer;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private LocalDate today;
+    private long daysLate;
+
+    @BeforeEach
+    public void setupDatabaseAndTime() {
+        TimeTracker.resetToday();
+        TimeTracker.resetYear();
+        dbInitializer.initialize();
+        today = TimeTracker.getToday();
+        // the four loans of a year ago ended 30 days after they started
+        daysLate = ChronoUnit.DAYS.between(today.minusYears(1).plusDays(30), today);
+    }
+
+    @Test
+    public void givenOverdueLoans_whenScanning_thenFinesOfAllOverdueLoansStored() {
+        double scannedBefore = meterRegistry.counter(OverdueLoanScanner.METRIC_SCANNED_LOANS).count();
+
+        OverdueScan scan = overdueLoanScanner.scan();
+
+        // 2 + 2 + 2 + 6 publications at half a unit per day
+        assertEquals(new OverdueScan(today, 4, 6 * daysLate, false), scan);
+        assertEquals(4, count("overdue_loans"));
+        assertEquals(6 * daysLate, jdbcTemplate.queryForObject("SELECT SUM(fine) FROM overdue_loans", Long.class));
+        assertTrue(overdueLoanRepository.findCheckpoint(OverdueLoanScanner.SCAN_NAME).get().completed());
+        assertEquals(4, meterRegistry.counter(OverdueLoanScanner.METRIC_SCANNED_LOANS).count() - scannedBefore);
+        assertEquals(4, meterRegistry.get(OverdueLoanScanner.METRIC_OVERDUE_LOANS).gauge().value());
+    }
+
+    @Test
+    public void givenCheckpointOfStoppedScan_whenScanning_thenScanContinuesAfterCheckpoint() {
+        List<Long> loanIds = jdbcTemplate.queryForList(OVERDUE_LOAN_IDS_QUERY, Long.class, today);
+        LocalDate endDate = today.minusYears(1).plusDays(30);
+        overdueLoanRepository.saveCheckpoint(OverdueLoanScanner.SCAN_NAME,
+            new OverdueLoanRepository.Checkpoint(today, endDate, loanIds.get(1), 2, 2 * daysLate, false));
+
+        OverdueScan scan = overdueLoanScanner.scan();
+
+        assertEquals(new OverdueScan(today, 4, 6 * daysLate, true), scan);
+        // only the chunks after the checkpoint were written by this scan
+        assertEquals(loanIds.subList(2, 4), jdbcTemplate.queryForList(
+            "SELECT loan_id FROM overdue_loans ORDER BY end_date, loan_id", Long.class));
+    }
+
+    @Test
+    public void givenLoanReturnedAfterScan_whenScanningNextDay_thenLoanNoLongerOverdue() {
+        overdueLoanScanner.scan();
+        Long returnedLoanId = jdbcTemplate.queryForList(OVERDUE_LOAN_IDS_QUERY, Long.class, today).get(0);
+        jdbcTemplate.update("UPDATE loans SET return_date = ? WHERE loan_id = ?", today, returnedLoanId);
+        TimeTracker.setCustomToday(today.plusDays(1));
+
+        OverdueScan scan = overdueLoanScanner.scan();
+
+        assertEquals(3, scan.overdueLoans());
+        assertEquals(3, count("overdue_loans"));
+        assertEquals(0, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM overdue_loans WHERE loan_id = ?", Integer.class, returnedLoanId));
+    }
+
+    @Test
+    public void givenScanQueries_whenExplainingThem_thenLoansAreSeekedByEndDate() {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN " + OverdueLoanRepository.NEXT_CHUNK_QUERY
+            .replaceFirst("\\?", "DATE '2024-01-01'")
+            .replaceFirst("\\?", "DATE '2023-01-01'")
+            .replaceFirst("\\?", "DATE '2023-01-01'")
+            .replaceFirst("\\?", "10")
+            .replaceFirst("\\?", "1000"), String.class);
+
+        assertTrue(plan.contains("IDX_LOANS_END_DATE_LOAN"), plan);
+        assertFalse(plan.contains("tableScan"), plan);
+    }
+
+    private int count(String table) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Integer.class);
+    }
+}
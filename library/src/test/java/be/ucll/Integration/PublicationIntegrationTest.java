@@ -1,16 +1,54 @@
 package be.ucll.Integration;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import javax.sql.DataSource;
+
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import com.zaxxer.hikari.HikariDataSource;
+
+import be.ucll.dto.KeysetPage;
+import be.ucll.dto.PublicationSummary;
+import be.ucll.dto.StockChange;
+import be.ucll.model.Book;
+import be.ucll.model.Publication;
+import be.ucll.repository.AvailabilityLedgerFlusher;
 import be.ucll.repository.DbInitializer;
+import be.ucll.repository.PublicationRepository;
+import be.ucll.repository.PublicationSearchIndex;
+import be.ucll.repository.PublicationStockIndex;
+import be.ucll.repository.PublicationSummaryRepository;
+import be.ucll.repository.SecondLevelCache;
 import be.ucll.service.PublicationService;
+import be.ucll.service.ReactivePublicationService;
 import be.ucll.service.ServiceException;
+import be.ucll.service.StockChangeFeed;
+import be.ucll.utilits.AvailabilityLedger;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Flux;
 
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
 @AutoConfigureWebTestClient
@@ -20,12 +58,227 @@ public class PublicationIntegrationTest {
     private WebTestClient webTestClient;
     @Autowired
     private DbInitializer dbInitializer;
+    @Autowired
+    private PublicationRepository publicationRepository;
+    @Autowired
+    private PublicationService publicationService;
+    @Autowired
+    private ReactivePublicationService reactivePublicationService;
+    @Autowired
+    private PublicationSummaryRepository publicationSummaryRepository;
+    @Autowired
+    private DataSource dataSource;
+    @Autowired
+    private AvailabilityLedgerFlusher availabilityLedgerFlusher;
+    @Autowired
+    private AvailabilityLedger availabilityLedger;
+    @Autowired
+    private MeterRegistry meterRegistry;
+    @Autowired
+    private StockChangeFeed stockChangeFeed;
+    @Autowired
+    private PublicationSearchIndex publicationSearchIndex;
+    @Autowired
+    private PublicationStockIndex publicationStockIndex;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
 
     @BeforeEach
     public void setupDatabases() {
         dbInitializer.initialize();
     }
 
+    @Test
+    public void givenIdsInCustomOrder_whenGettingPublicationsById_thenPublicationsReturnedInThatOrder() {
+        List<Long> ids = new ArrayList<>(publicationRepository.findAll().stream().map(Publication::getId).toList());
+        Collections.reverse(ids);
+        ids.add(ids.get(0));
+
+        List<Publication> publications = publicationService.getPublicationsById(ids);
+
+        assertEquals(ids, publications.stream().map(Publication::getId).toList());
+        assertSame(publications.get(0), publications.get(ids.size() - 1));
+    }
+
+    @Test
+    public void givenPageSize_whenGetPublicationsPages_thenAllPublicationsReturnedOnce() {
+        KeysetPage<Publication> firstPage = publicationService.findPublicationsByTitleAndTypePage(null, null, null, 4);
+        KeysetPage<Publication> secondPage = publicationService.findPublicationsByTitleAndTypePage(null, null, firstPage.nextCursor(), 4);
+        KeysetPage<Publication> lastPage = publicationService.findPublicationsByTitleAndTypePage(null, null, secondPage.nextCursor(), 4);
+
+        assertEquals(4, firstPage.items().size());
+        assertEquals(4, secondPage.items().size());
+        assertEquals(2, lastPage.items().size());
+        assertNull(lastPage.nextCursor());
+        assertTrue(firstPage.items().get(3).getId() < secondPage.items().get(0).getId());
+    }
+
+    @Test
+    public void givenPageSize_whenGetStockPage_thenPageWithCursorIsReturned() {
+        webTestClient
+        .get()
+        .uri("/publications/stock/40?size=2")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .jsonPath("$.items.length()").isEqualTo(2)
+        .jsonPath("$.nextCursor").isNotEmpty();
+    }
+
+    @Test
+    public void givenFields_whenGetStockSummaries_thenOnlyRequestedFieldsAreReturned() {
+        webTestClient
+        .get()
+        .uri("/publications/stock/40/summary?fields=title,availableCopies")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .jsonPath("$.length()").isEqualTo(4)
+        .jsonPath("$[0].title").isEqualTo("National Geographic")
+        .jsonPath("$[0].availableCopies").isEqualTo(97)
+        .jsonPath("$[0].publicationId").doesNotExist()
+        .jsonPath("$[0].year").doesNotExist();
+    }
+
+    @Test
+    public void givenTypeBook_whenGetPublicationSummaries_thenBookSummariesAreReturned() {
+        webTestClient
+        .get()
+        .uri("/publications/summary?type=book")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .jsonPath("$.length()").isEqualTo(5)
+        .jsonPath("$[*].type").value(types -> assertEquals(Collections.nCopies(5, "book"), types))
+        .jsonPath("$[*].author").doesNotExist();
+    }
+
+    @Test
+    public void givenNdjsonAccept_whenGetPublications_thenPublicationsAreStreamedAsLines() {
+        String body = webTestClient
+        .get()
+        .uri("/publications/stock/40")
+        .accept(MediaType.APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody(String.class)
+        .returnResult()
+        .getResponseBody();
+
+        assertEquals(4, body.strip().split("\n").length);
+    }
+
+    @Test
+    public void givenNdjsonAccept_whenGetReactiveStock_thenSummariesAreStreamed() {
+        List<PublicationSummary> summaries = webTestClient
+        .get()
+        .uri("/reactive/publications/stock/40")
+        .accept(MediaType.APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectHeader()
+        .contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+        .returnResult(PublicationSummary.class)
+        .getResponseBody()
+        .collectList()
+        .block();
+
+        assertEquals(List.of("National Geographic", "Time", "Vogue", "Scientific American"),
+            summaries.stream().map(PublicationSummary::title).toList());
+    }
+
+    @Test
+    public void givenEventStreamAccept_whenSearchReactivePublications_thenRankedSummariesAreSent() {
+        List<PublicationSummary> summaries = webTestClient
+        .get()
+        .uri("/reactive/publications/search?query=orwell 1984&limit=5")
+        .accept(MediaType.TEXT_EVENT_STREAM)
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectHeader()
+        .contentTypeCompatibleWith(MediaType.TEXT_EVENT_STREAM)
+        .returnResult(PublicationSummary.class)
+        .getResponseBody()
+        .collectList()
+        .block();
+
+        assertEquals("1984", summaries.get(0).title());
+    }
+
+    @Test
+    public void givenSubscriberTakingTwo_whenStreamingReactivePublications_thenNoConnectionIsHeld() {
+        List<PublicationSummary> summaries = reactivePublicationService.findPublicationsByTitleAndType(null, null)
+            .take(2)
+            .collectList()
+            .block();
+
+        assertEquals(2, summaries.size());
+        assertEquals(0, ((HikariDataSource) dataSource).getHikariPoolMXBean().getActiveConnections());
+    }
+
+    @Test
+    public void givenSmallPages_whenStreamingReactiveStock_thenAllPagesAreReadWithoutHoldingAConnection() {
+        ReactivePublicationService pagedService = new ReactivePublicationService(publicationService, publicationSummaryRepository, 3);
+        Iterator<PublicationSummary> summaries = pagedService.findPublicationsWithMoreAvailableCopiesThan(0).toIterable(1).iterator();
+        List<Long> ids = new ArrayList<>();
+
+        ids.add(summaries.next().publicationId());
+        assertEquals(0, ((HikariDataSource) dataSource).getHikariPoolMXBean().getActiveConnections());
+        summaries.forEachRemaining(summary -> ids.add(summary.publicationId()));
+
+        assertEquals(publicationRepository.findAll().stream().map(Publication::getId).sorted().toList(), ids);
+    }
+
+    @Test
+    public void givenLentPublication_whenStreamingReactiveStockWithoutFlush_thenLedgerCopiesAreFiltered() {
+        Publication lowest = publicationService.findPublicationsWithLowestStock(1).get(0);
+        int copies = lowest.getAvailableCopies();
+        availabilityLedger.lend(lowest.getId(), copies);
+
+        List<Long> ids = reactivePublicationService.findPublicationsWithMoreAvailableCopiesThan(copies)
+            .map(PublicationSummary::publicationId)
+            .collectList()
+            .block();
+
+        assertEquals(publicationStockIndex.findWithAtLeast(copies), ids);
+    }
+
+    @Test
+    public void givenNegativeStock_whenGetReactiveStock_thenClientErrorReturned() {
+        webTestClient
+        .get()
+        .uri("/reactive/publications/stock/-1")
+        .accept(MediaType.APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus()
+        .is4xxClientError()
+        .expectBody()
+        .jsonPath("$.ServiceException").isEqualTo(PublicationService.NEGATIVE_AVAILABLE_COPIES_EXCEPTION);
+    }
+
+    @Test
+    public void givenQuery_whenSearchPublications_thenRankedPublicationsAreReturned() {
+        webTestClient
+        .get()
+        .uri("/publications/search?query=orwell 1984&limit=5")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .json("[\n" + //
+                        "  {\n" + //
+                        "    \"title\": \"1984\",\n" + //
+                        "    \"author\": \"George Orwell\"\n" + //
+                        "  }\n" + //
+                        "]");
+    }
+
     @Test
     public void givenPublications_whenGetPublications_thenPublicationsAreReturned() {
         webTestClient
@@ -450,4 +703,214 @@ public class PublicationIntegrationTest {
                         "  }\r\n" + //
                         "]");
     }
+
+    @Test
+    public void givenCachedPublication_whenGettingItAgain_thenCacheHitWithLedgerCopies() {
+        Publication publication = publicationService.findPublicationsWithMoreAvailableCopiesThan(0).get(0);
+        publicationService.getPublicationById(publication.getId());
+        double hitsBefore = cacheRequests(SecondLevelCache.PUBLICATION_REGION, "hit");
+        double missesBefore = cacheRequests(SecondLevelCache.PUBLICATION_REGION, "miss");
+        availabilityLedger.lend(publication.getId(), publication.getAvailableCopies());
+
+        Publication cached = publicationService.getPublicationById(publication.getId());
+
+        assertEquals(publication.getAvailableCopies() - 1, cached.getAvailableCopies());
+        assertEquals(1, cacheRequests(SecondLevelCache.PUBLICATION_REGION, "hit") - hitsBefore);
+        assertEquals(0, cacheRequests(SecondLevelCache.PUBLICATION_REGION, "miss") - missesBefore);
+        assertTrue(meterRegistry.get(SecondLevelCache.METRIC_HIT_RATIO)
+            .tag("region", SecondLevelCache.PUBLICATION_REGION).gauge().value() > 0);
+    }
+
+    // the repository query is the fallback while the stock index is not built
+    @Test
+    public void givenCachedQuery_whenStockFlushedBelowThreshold_thenQueryNoLongerReturnsPublication() {
+        Publication publication = publicationService.findPublicationsWithMoreAvailableCopiesThan(0).get(0);
+        int copies = publication.getAvailableCopies();
+        assertTrue(ids(publicationRepository.findByAvailableCopiesGreaterThanEqual(copies)).contains(publication.getId()));
+        double queryHitsBefore = cacheRequests(SecondLevelCache.PUBLICATION_QUERY_REGION, "hit");
+        assertTrue(ids(publicationRepository.findByAvailableCopiesGreaterThanEqual(copies)).contains(publication.getId()));
+        assertEquals(1, cacheRequests(SecondLevelCache.PUBLICATION_QUERY_REGION, "hit") - queryHitsBefore);
+
+        availabilityLedger.lend(publication.getId(), copies);
+        availabilityLedgerFlusher.flush();
+
+        assertFalse(ids(publicationRepository.findByAvailableCopiesGreaterThanEqual(copies)).contains(publication.getId()));
+        assertEquals(copies - 1, publicationService.getPublicationById(publication.getId()).getAvailableCopies());
+    }
+
+    @Test
+    public void givenCommittedInsert_whenSearching_thenIndexesContainPublication() {
+        Long insertedId = transactionTemplate.execute(status ->
+            publicationRepository.saveAndFlush(new Book("Committed title", "Author", "978-0-545-01022-1", 2000, 999)).getId());
+
+        assertEquals(List.of(insertedId), publicationSearchIndex.findByTitleAndType("Committed title", null, 10));
+        assertTrue(publicationStockIndex.findWithAtLeast(999).contains(insertedId));
+    }
+
+    @Test
+    public void givenRolledBackInsertAndDelete_whenSearching_thenIndexesUnchanged() {
+        Long keptId = transactionTemplate.execute(status ->
+            publicationRepository.saveAndFlush(new Book("Kept title", "Author", "978-0-545-01022-1", 2000, 999)).getId());
+
+        Long insertedId = transactionTemplate.execute(status -> {
+            Publication inserted = publicationRepository.saveAndFlush(new Book("Rolled back title", "Author", "978-0-545-01022-2", 2000, 1000));
+            publicationRepository.delete(publicationRepository.findById(keptId).get());
+            publicationRepository.flush();
+            status.setRollbackOnly();
+            return inserted.getId();
+        });
+
+        assertEquals(List.of(), publicationSearchIndex.findByTitleAndType("Rolled back title", null, 10));
+        assertFalse(publicationStockIndex.findWithAtLeast(1000).contains(insertedId));
+        assertEquals(List.of(keptId), publicationSearchIndex.findByTitleAndType("Kept title", null, 10));
+        assertTrue(publicationStockIndex.findWithAtLeast(999).contains(keptId));
+    }
+
+    @Test
+    public void givenLentPublication_whenGettingStockWithoutFlush_thenStockIndexFollowsLedger() {
+        Publication lowest = publicationService.findPublicationsWithLowestStock(1).get(0);
+        int copies = lowest.getAvailableCopies();
+        availabilityLedger.lend(lowest.getId(), copies);
+
+        assertFalse(ids(publicationService.findPublicationsWithMoreAvailableCopiesThan(copies)).contains(lowest.getId()));
+        assertTrue(ids(publicationService.findPublicationsWithMoreAvailableCopiesThan(copies - 1)).contains(lowest.getId()));
+    }
+
+    @Test
+    public void givenLentPublication_whenGettingStockSummariesWithoutFlush_thenLedgerCopiesAreFiltered() {
+        Publication lowest = publicationService.findPublicationsWithLowestStock(1).get(0);
+        int copies = lowest.getAvailableCopies();
+        availabilityLedger.lend(lowest.getId(), copies);
+
+        assertFalse(publicationService.findPublicationSummariesWithMoreAvailableCopiesThan(copies).stream()
+            .anyMatch(summary -> summary.publicationId().equals(lowest.getId())));
+        assertTrue(publicationService.findPublicationSummariesWithMoreAvailableCopiesThan(copies - 1).stream()
+            .anyMatch(summary -> summary.publicationId().equals(lowest.getId()) && summary.availableCopies() == copies - 1));
+    }
+
+    @Test
+    public void givenLentPublication_whenPagingAndStreamingStockWithoutFlush_thenLedgerCopiesAreFiltered() {
+        Publication lowest = publicationService.findPublicationsWithLowestStock(1).get(0);
+        int copies = lowest.getAvailableCopies();
+        availabilityLedger.lend(lowest.getId(), copies);
+
+        List<Long> pagedIds = new ArrayList<>();
+        KeysetPage<Publication> page = publicationService.findPublicationsWithMoreAvailableCopiesThanPage(copies, null, 2);
+        pagedIds.addAll(ids(page.items()));
+        while (page.nextCursor() != null) {
+            page = publicationService.findPublicationsWithMoreAvailableCopiesThanPage(copies, page.nextCursor(), 2);
+            pagedIds.addAll(ids(page.items()));
+        }
+        List<Long> streamedIds = new ArrayList<>();
+        publicationService.streamPublicationsWithMoreAvailableCopiesThan(copies, publication -> streamedIds.add(publication.getId()));
+
+        List<Long> expectedIds = publicationStockIndex.findWithAtLeast(copies);
+        assertFalse(expectedIds.contains(lowest.getId()));
+        assertEquals(expectedIds, pagedIds);
+        assertEquals(expectedIds, streamedIds);
+    }
+
+    @Test
+    public void givenLimit_whenGetLowestStock_thenPublicationsWithFewestCopiesReturned() {
+        List<Publication> byStock = publicationService.findPublicationsWithMoreAvailableCopiesThan(0).stream()
+            .sorted(Comparator.comparing(Publication::getAvailableCopies).thenComparing(Publication::getId))
+            .toList();
+
+        webTestClient
+        .get()
+        .uri("/publications/stock/lowest?limit=2")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.length()").isEqualTo(2)
+        .jsonPath("$[0].title").isEqualTo(byStock.get(0).getTitle())
+        .jsonPath("$[1].title").isEqualTo(byStock.get(1).getTitle());
+    }
+
+    @Test
+    public void givenBucketSize_whenGetStock_thenOnlyCountsPerBucketReturned() {
+        List<Publication> publications = publicationService.findPublicationsWithMoreAvailableCopiesThan(40);
+
+        webTestClient
+        .get()
+        .uri("/publications/stock/40?bucketSize=1000")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .json("[{\"fromCopies\": 0, \"toCopies\": 999, \"publications\": " + publications.size() + "}]");
+    }
+
+    @Test
+    public void givenZeroBucketSize_whenGetStock_thenErrorReturned() {
+        webTestClient
+        .get()
+        .uri("/publications/stock/0?bucketSize=0")
+        .exchange()
+        .expectStatus().isBadRequest()
+        .expectBody()
+        .json("{\"ServiceException\": \"" + PublicationService.INVALID_BUCKET_SIZE_EXCEPTION + "\"}");
+    }
+
+    @Test
+    public void givenSubscribedClient_whenPublicationLent_thenStockChangePushed() {
+        Publication publication = publicationService.findPublicationsWithLowestStock(1).get(0);
+        int subscribersBefore = stockChangeFeed.getSubscriberCount();
+        // the response starts with the first event, so the change is made once the client subscribed
+        CompletableFuture<Void> lending = CompletableFuture.runAsync(() -> {
+            long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+            while (stockChangeFeed.getSubscriberCount() == subscribersBefore && System.nanoTime() < deadline) {
+                Thread.onSpinWait();
+            }
+            publication.lendPublication(availabilityLedger);
+            publication.lendPublication(availabilityLedger);
+            stockChangeFeed.publish();
+        });
+
+        Flux<StockChange> changes = webTestClient
+        .get()
+        .uri("/publications/stock/changes")
+        .accept(MediaType.TEXT_EVENT_STREAM)
+        .exchange()
+        .expectStatus().isOk()
+        .returnResult(StockChange.class)
+        .getResponseBody();
+
+        // the snapshot of the current stock comes first
+        StockChange change = changes.filter(stockChange -> stockChange.delta() != 0).blockFirst(Duration.ofSeconds(10));
+        lending.join();
+        assertEquals(new StockChange(publication.getId(), publication.getAvailableCopies(), -2), change);
+    }
+
+    @Test
+    public void givenNewClient_whenSubscribingToStockChanges_thenCurrentStockSentFirst() {
+        Map<Long, Integer> stock = publicationStockIndex.getAvailableCopies();
+
+        List<StockChange> snapshot = webTestClient
+        .get()
+        .uri("/publications/stock/changes")
+        .accept(MediaType.TEXT_EVENT_STREAM)
+        .exchange()
+        .expectStatus().isOk()
+        .returnResult(StockChange.class)
+        .getResponseBody()
+        .take(stock.size())
+        .collectList()
+        .block(Duration.ofSeconds(10));
+
+        Map<Long, Integer> sent = new HashMap<>();
+        snapshot.forEach(change -> {
+            assertEquals(0, change.delta());
+            sent.put(change.publicationId(), change.availableCopies());
+        });
+        assertEquals(stock, sent);
+    }
+
+    private double cacheRequests(String region, String result) {
+        return meterRegistry.get(SecondLevelCache.METRIC_REQUESTS).tags("region", region, "result", result)
+            .functionCounter().count();
+    }
+
+    private List<Long> ids(List<Publication> publications) {
+        return publications.stream().map(Publication::getId).toList();
+    }
 }
@@ -0,0 +1,132 @@
+package be.ucll.Integration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import be.ucll.LibraryApplication;
+import be.ucll.controller.InFlightRequestFilter;
+
+/// Starts the application once with platform threads and once with virtual threads and sends the
+/// same burst of concurrent clients to the loan history of a user.
+/// The test is tagged `load` and only runs with the load-test profile: `mvn test -Pload-test`.
+/// The highest number of requests in flight and the p99 latency of both modes are published as report
+/// entries of the test (see the surefire XML report).
+/// The number of clients can be changed with -Dlibrary.load-test.clients=..., the p99 bound with
+/// -Dlibrary.load-test.max-p99-millis=...
+@Tag("load")
+public class RequestLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("library.load-test.clients", 5000);
+    private static final long MAX_P99_MILLIS = Long.getLong("library.load-test.max-p99-millis", 60_000);
+    private static final int WARM_UP_REQUESTS = 50;
+    private static final int TOMCAT_MAX_THREADS = 200;
+    // few connections so requests wait for one, that is where virtual threads unmount
+    private static final int JDBC_POOL_SIZE = 2;
+    private static final String LOANS_PATH = "/users/jane.toe@ucll.be/loans";
+
+    @Test
+    public void givenPlatformThreads_whenManyClientsGetUserLoans_thenInFlightRequestsBoundedByThreadPool(TestReporter reporter)
+        throws Exception {
+        LoadResult result = runLoad(false);
+        result.report(reporter);
+
+        assertEquals(CLIENTS, result.succeeded());
+        assertTrue(result.maxInFlight() <= TOMCAT_MAX_THREADS, "max in flight " + result.maxInFlight());
+        assertTrue(result.p99Millis() <= MAX_P99_MILLIS, "p99 " + result.p99Millis() + " ms");
+    }
+
+    // the build compiles for Java 17 (java.version of the Spring Boot parent), on a Java 17 runtime
+    // Spring Boot ignores spring.threads.virtual.enabled and the requests would run on platform threads
+    @Test
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    public void givenVirtualThreads_whenManyClientsGetUserLoans_thenInFlightRequestsNotBoundedByThreadPool(TestReporter reporter)
+        throws Exception {
+        LoadResult result = runLoad(true);
+        result.report(reporter);
+
+        assertEquals(CLIENTS, result.succeeded());
+        assertTrue(result.maxInFlight() > TOMCAT_MAX_THREADS, "max in flight " + result.maxInFlight());
+        assertTrue(result.p99Millis() <= MAX_P99_MILLIS, "p99 " + result.p99Millis() + " ms");
+    }
+
+    private LoadResult runLoad(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(LibraryApplication.class)
+            .web(WebApplicationType.SERVLET)
+            // arguments, not default properties: those would lose against application.properties
+            .run(
+                "--server.port=0",
+                "--server.tomcat.threads.max=" + TOMCAT_MAX_THREADS,
+                "--spring.threads.virtual.enabled=" + virtualThreads,
+                "--spring.datasource.url=jdbc:h2:mem:load-" + (virtualThreads ? "virtual" : "platform"),
+                "--spring.datasource.hikari.maximum-pool-size=" + JDBC_POOL_SIZE,
+                "--spring.datasource.hikari.connection-timeout=" + Duration.ofMinutes(2).toMillis(),
+                "--spring.jpa.show-sql=false")) {
+
+            int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+            InFlightRequestFilter inFlightRequestFilter = context.getBean(InFlightRequestFilter.class);
+            HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + LOANS_PATH))
+                .timeout(Duration.ofMinutes(2))
+                .build();
+
+            for (int i = 0; i < WARM_UP_REQUESTS; i++) {
+                client.send(request, HttpResponse.BodyHandlers.discarding());
+            }
+            inFlightRequestFilter.resetMaxInFlight();
+
+            // every client has its own connection, the requests are all sent before any is awaited
+            long[] latencies = new long[CLIENTS];
+            AtomicInteger succeeded = new AtomicInteger();
+            List<CompletableFuture<Void>> responses = new ArrayList<>();
+            for (int i = 0; i < CLIENTS; i++) {
+                int clientIndex = i;
+                long startTime = System.nanoTime();
+                responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenAccept(response -> {
+                        latencies[clientIndex] = System.nanoTime() - startTime;
+                        if (response.statusCode() == 200) {
+                            succeeded.incrementAndGet();
+                        }
+                    }));
+            }
+            CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).join();
+
+            // allOf happens after every latency is written
+            Arrays.sort(latencies);
+            long p99Nanos = latencies[(int) Math.ceil(CLIENTS * 0.99) - 1];
+            return new LoadResult(virtualThreads, succeeded.get(), inFlightRequestFilter.getMaxInFlight(),
+                Duration.ofNanos(p99Nanos).toMillis());
+        }
+    }
+
+    private record LoadResult(boolean virtualThreads, int succeeded, int maxInFlight, long p99Millis) {
+
+        void report(TestReporter reporter) {
+            String mode = virtualThreads ? "virtual" : "platform";
+            reporter.publishEntry(mode + ".clients", String.valueOf(CLIENTS));
+            reporter.publishEntry(mode + ".max-in-flight", String.valueOf(maxInFlight));
+            reporter.publishEntry(mode + ".p99-millis", String.valueOf(p99Millis));
+        }
+    }
+}
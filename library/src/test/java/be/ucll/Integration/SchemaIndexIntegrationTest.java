@@ -0,0 +1,180 @@
+package be.ucll.Integration;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.jdbc.Sql;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import be.ucll.model.Loan;
+import be.ucll.repository.DbInitializer;
+import be.ucll.repository.LoanBatchRepository;
+import be.ucll.repository.LoanRepository;
+import be.ucll.repository.PublicationRepository;
+import be.ucll.repository.SecondLevelCache;
+import be.ucll.repository.UserRepository;
+import be.ucll.utilits.TimeTracker;
+
+// Runs EXPLAIN on the SQL that Hibernate generates for every indexed repository query and fails when
+// H2 plans a table scan. The statements are recorded with a StatementInspector while the repository
+// methods run; their parameters are bound to null, H2 chooses the indexes when it prepares the statement.
+// Substring (LIKE %x%), LOWER(column) and optional (:x IS NULL OR ...) filters cannot use a B-tree index
+// and are left out, the publication searches are answered by PublicationSearchIndex.
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.session_factory.statement_inspector=" +
+    "be.ucll.Integration.SchemaIndexIntegrationTest$RecordingStatementInspector")
+@Sql("classpath:schema.sql")
+public class SchemaIndexIntegrationTest {
+
+    private static final String EMAIL = "jane.toe@ucll.be";
+    private static final Pattern SCANNED_TABLE = Pattern.compile("PUBLIC\\.(\\w+)\\.tableScan");
+
+    public static class RecordingStatementInspector implements StatementInspector {
+
+        private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>();
+
+        @Override
+        public String inspect(String sql) {
+            STATEMENTS.add(sql);
+            return sql;
+        }
+    }
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private LoanRepository loanRepository;
+    @Autowired
+    private PublicationRepository publicationRepository;
+    @Autowired
+    private SecondLevelCache secondLevelCache;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private DbInitializer dbInitializer;
+
+    private LocalDate today;
+
+    @BeforeEach
+    public void setupDatabase() {
+        TimeTracker.resetToday();
+        TimeTracker.resetYear();
+        dbInitializer.initialize();
+        // cached entities and query results would not reach the database
+        secondLevelCache.evictAll();
+        today = TimeTracker.getToday();
+    }
+
+    @Test
+    public void givenRepositoryQueries_whenExplainingTheGeneratedSql_thenNoTableIsScanned() {
+        Map<String, Runnable> queries = new LinkedHashMap<>();
+        queries.put("UserRepository.findByEmail", () -> userRepository.findByEmail(EMAIL));
+        queries.put("UserRepository.existsByEmail", () -> userRepository.existsByEmail(EMAIL));
+        queries.put("UserRepository.findByEmailIn", () -> userRepository.findByEmailIn(List.of(EMAIL, "john.doe@ucll.be")));
+        queries.put("UserRepository.findByAgeGreaterThanEqual", () -> userRepository.findByAgeGreaterThanEqual(18));
+        queries.put("UserRepository.findByAgeBetween", () -> userRepository.findByAgeBetween(10, 20));
+        queries.put("UserRepository.findSummariesByAgeGreaterThanEqual", () -> userRepository.findSummariesByAgeGreaterThanEqual(18));
+        queries.put("UserRepository.findSummariesByAgeBetween", () -> userRepository.findSummariesByAgeBetween(10, 20));
+        queries.put("User.memberships", () -> userRepository.findByEmail("john.doe@ucll.be").getMemberships().size());
+        queries.put("LoanRepository.findByUserEmail", () -> loanRepository.findByUserEmail(EMAIL));
+        queries.put("LoanRepository.findByUserEmailAndEndDateAfter", () -> loanRepository.findByUserEmailAndEndDateAfter(EMAIL, today));
+        queries.put("LoanRepository.existsByUserEmail", () -> loanRepository.existsByUserEmail(EMAIL));
+        queries.put("LoanRepository.existsByUserEmailAndEndDateAfter", () -> loanRepository.existsByUserEmailAndEndDateAfter(EMAIL, today));
+        queries.put("LoanRepository.findWithDetailsByUserEmail", () -> loanRepository.findWithDetailsByUserEmail(EMAIL));
+        queries.put("LoanRepository.findWithDetailsByUserEmailAndEndDateAfter", () -> loanRepository.findWithDetailsByUserEmailAndEndDateAfter(EMAIL, today));
+        queries.put("LoanRepository.findWithDetailsByUserEmailAndIdGreaterThanOrderByIdAsc", () ->
+            loanRepository.findWithDetailsByUserEmailAndIdGreaterThanOrderByIdAsc(EMAIL, 0L, Limit.of(10)));
+        queries.put("LoanRepository.findWithDetailsByUserEmailAndEndDateAfterAndIdGreaterThanOrderByIdAsc", () ->
+            loanRepository.findWithDetailsByUserEmailAndEndDateAfterAndIdGreaterThanOrderByIdAsc(EMAIL, today, 0L, Limit.of(10)));
+        queries.put("LoanRepository.streamByUserEmailOrderByIdAsc", () -> {
+            try (Stream<Loan> loans = loanRepository.streamByUserEmailOrderByIdAsc(EMAIL)) {
+                loans.count();
+            }
+        });
+        queries.put("LoanRepository.streamByUserEmailAndEndDateAfterOrderByIdAsc", () -> {
+            try (Stream<Loan> loans = loanRepository.streamByUserEmailAndEndDateAfterOrderByIdAsc(EMAIL, today)) {
+                loans.count();
+            }
+        });
+        queries.put("LoanRepository.findSummariesByUserEmail", () -> loanRepository.findSummariesByUserEmail(EMAIL));
+        queries.put("LoanRepository.findSummariesByUserEmailAndEndDateAfter", () -> loanRepository.findSummariesByUserEmailAndEndDateAfter(EMAIL, today));
+        queries.put("LoanRepository.findUserEmailsWithLoansEndingAfter", () ->
+            loanRepository.findUserEmailsWithLoansEndingAfter(List.of(EMAIL, "john.doe@ucll.be"), today));
+        queries.put("PublicationRepository.findByAvailableCopiesGreaterThanEqual", () -> publicationRepository.findByAvailableCopiesGreaterThanEqual(40));
+        queries.put("PublicationRepository.findSummariesByAvailableCopiesGreaterThanEqual", () ->
+            publicationRepository.findSummariesByAvailableCopiesGreaterThanEqual(40));
+
+        List<Executable> checks = new ArrayList<>();
+        queries.forEach((name, query) -> {
+            List<String> statements = record(query);
+            checks.add(() -> assertFalse(statements.isEmpty(), name + " did not query the database"));
+            statements.forEach(sql -> {
+                String plan = explain(sql);
+                checks.add(() -> assertNoScannedTables(name, plan, Set.of()));
+            });
+        });
+        assertAll(checks);
+    }
+
+    @Test
+    public void givenBillingPreviewQuery_whenExplainingIt_thenMembershipsOfUserOnDateAreSeeked() {
+        // the preview reads all open loans, the memberships and publications of each loan must be seeked
+        assertNoScannedTables("LoanBatchRepository.OPEN_LOANS_QUERY", explain(LoanBatchRepository.OPEN_LOANS_QUERY), Set.of("LOANS"));
+    }
+
+    private List<String> record(Runnable query) {
+        RecordingStatementInspector.STATEMENTS.clear();
+        transactionTemplate.executeWithoutResult(status -> query.run());
+        List<String> selects = new ArrayList<>();
+        for (String sql : RecordingStatementInspector.STATEMENTS) {
+            if (sql.trim().toLowerCase().startsWith("select")) {
+                selects.add(sql);
+            }
+        }
+        return selects;
+    }
+
+    private String explain(String sql) {
+        return jdbcTemplate.query("EXPLAIN " + sql, statement -> {
+            int parameters = statement.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= parameters; i++) {
+                statement.setObject(i, null);
+            }
+        }, resultSet -> {
+            resultSet.next();
+            return resultSet.getString(1);
+        });
+    }
+
+    private void assertNoScannedTables(String name, String plan, Set<String> allowedScans) {
+        Set<String> scannedTables = new TreeSet<>();
+        Matcher matcher = SCANNED_TABLE.matcher(plan);
+        while (matcher.find()) {
+            scannedTables.add(matcher.group(1));
+        }
+        scannedTables.removeAll(allowedScans);
+        assertEquals(Set.of(), scannedTables, name + " scans a table:\n" + plan);
+    }
+}
@@ -1,24 +1,39 @@
 package be.ucll.Integration;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
 import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import be.ucll.dto.SparseFieldset;
+import be.ucll.model.Book;
 import be.ucll.model.DomainException;
+import be.ucll.model.Loan;
 import be.ucll.model.Membership;
 import be.ucll.model.MembershipTest;
+import be.ucll.model.MembershipTier;
 import be.ucll.model.Publication;
 import be.ucll.model.User;
 import be.ucll.model.UserTest;
@@ -32,9 +47,12 @@ import be.ucll.service.PublicationService;
 import be.ucll.service.ServiceException;
 import be.ucll.service.UserService;
 import be.ucll.unit.utils.LoanTestsUtils;
+import be.ucll.utilits.AvailabilityLedger;
 import be.ucll.utilits.TimeTracker;
+import jakarta.persistence.EntityManagerFactory;
 
-@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+    properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 @AutoConfigureWebTestClient()
 @Sql("classpath:schema.sql")
 public class UserIntegrationTest {
@@ -51,6 +69,18 @@ public class UserIntegrationTest {
     private MembershipRepository membershipRepository;
     @Autowired
     private PublicationRepository publicationRepository;
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+    @Autowired
+    private LoanService loanService;
+    @Autowired
+    private UserService userService;
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    @Autowired
+    private AvailabilityLedger availabilityLedger;
 
     @BeforeEach
     public void setupDatabasesAndTime() {
@@ -59,6 +89,20 @@ public class UserIntegrationTest {
         dbInitializer.initialize();
     }
 
+    @Test
+    public void givenRunningTransaction_whenGettingUserByEmail_thenCachedUserIsNotTheManagedOne() {
+        String email = "john.doe@ucll.be";
+        userService.evictCachedUser(email);
+
+        transactionTemplate.executeWithoutResult(status -> {
+            User managedUser = userRepository.findByEmail(email);
+            User cachedUser = userService.getUserByEmail(email);
+
+            assertNotSame(managedUser, cachedUser);
+            assertEquals(managedUser.getId(), cachedUser.getId());
+        });
+    }
+
     @Test
     public void givenUsers_whenGetUsers_thenUsersAreReturned() {
         webTestClient
@@ -72,34 +116,30 @@ public class UserIntegrationTest {
                         "  {\n" + //
                         "    \"name\": \"John Doe\",\n" + //
                         "    \"age\": 25,\n" + //
-                        "    \"email\": \"john.doe@ucll.be\",\n" + //
-                        "    \"password\": \"john1234\"\n" + //
+                        "    \"email\": \"john.doe@ucll.be\"\n" + //
                         "  },\n" + //
                         "  {\n" + //
                         "    \"name\": \"Jane Toe\",\n" + //
                         "    \"age\": 30,\n" + //
-                        "    \"email\": \"jane.toe@ucll.be\",\n" + //
-                        "    \"password\": \"jane1234\"\n" + //
+                        "    \"email\": \"jane.toe@ucll.be\"\n" + //
                         "  },\n" + //
                         "  {\n" + //
                         "    \"name\": \"Jack Doe\",\n" + //
                         "    \"age\": 5,\n" + //
-                        "    \"email\": \"jack.doe@ucll.be\",\n" + //
-                        "    \"password\": \"jack1234\"\n" + //
+                        "    \"email\": \"jack.doe@ucll.be\"\n" + //
                         "  },\n" + //
                         "  {\n" + //
                         "    \"name\": \"Sarah Doe\",\n" + //
                         "    \"age\": 4,\n" + //
-                        "    \"email\": \"sarah.doe@ucll.be\",\n" + //
-                        "    \"password\": \"sarah1234\"\n" + //
+                        "    \"email\": \"sarah.doe@ucll.be\"\n" + //
                         "  },\n" + //
                         "  {\n" + //
                         "    \"name\": \"Birgit Doe\",\n" + //
                         "    \"age\": 18,\n" + //
-                        "    \"email\": \"birgit.doe@ucll.be\",\n" + //
-                        "    \"password\": \"birgit1234\"\n" + //
+                        "    \"email\": \"birgit.doe@ucll.be\"\n" + //
                         "  }\n" + //
-                        "]");
+                        "]")
+        .jsonPath("$[*].password").doesNotExist();
     }
 
     @Test
@@ -115,20 +155,17 @@ public class UserIntegrationTest {
                         "  {\n" + //
                         "    \"name\": \"John Doe\",\n" + //
                         "    \"age\": 25,\n" + //
-                        "    \"email\": \"john.doe@ucll.be\",\n" + //
-                        "    \"password\": \"john1234\"\n" + //
+                        "    \"email\": \"john.doe@ucll.be\"\n" + //
                         "  },\n" + //
                         "  {\n" + //
                         "    \"name\": \"Jane Toe\",\n" + //
                         "    \"age\": 30,\n" + //
-                        "    \"email\": \"jane.toe@ucll.be\",\n" + //
-                        "    \"password\": \"jane1234\"\n" + //
+                        "    \"email\": \"jane.toe@ucll.be\"\n" + //
                         "  },\n" + //
                         "  {\n" + //
                         "    \"name\": \"Birgit Doe\",\n" + //
                         "    \"age\": 18,\n" + //
-                        "    \"email\": \"birgit.doe@ucll.be\",\n" + //
-                        "    \"password\": \"birgit1234\"\n" + //
+                        "    \"email\": \"birgit.doe@ucll.be\"\n" + //
                         "  }\n" + //
                         "]");
     }
@@ -146,24 +183,263 @@ public class UserIntegrationTest {
                         "  {\n" + //
                         "    \"name\": \"Jack Doe\",\n" + //
                         "    \"age\": 5,\n" + //
-                        "    \"email\": \"jack.doe@ucll.be\",\n" + //
-                        "    \"password\": \"jack1234\"\n" + //
+                        "    \"email\": \"jack.doe@ucll.be\"\n" + //
                         "  },\n" + //
                         "  {\n" + //
                         "    \"name\": \"Sarah Doe\",\n" + //
                         "    \"age\": 4,\n" + //
-                        "    \"email\": \"sarah.doe@ucll.be\",\n" + //
-                        "    \"password\": \"sarah1234\"\n" + //
+                        "    \"email\": \"sarah.doe@ucll.be\"\n" + //
                         "  },\n" + //
                         "  {\n" + //
                         "    \"name\": \"Birgit Doe\",\n" + //
                         "    \"age\": 18,\n" + //
-                        "    \"email\": \"birgit.doe@ucll.be\",\n" + //
-                        "    \"password\": \"birgit1234\"\n" + //
+                        "    \"email\": \"birgit.doe@ucll.be\"\n" + //
                         "  }\n" + //
                         "]");
     }
 
+    @Test
+    public void givenUsers_whenGetUserSummaries_thenSummariesWithoutPasswordAreReturned() {
+        webTestClient
+        .get()
+        .uri("/users/adults/summary")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .json("[\n" + //
+                        "  {\n" + //
+                        "    \"name\": \"John Doe\",\n" + //
+                        "    \"age\": 25,\n" + //
+                        "    \"email\": \"john.doe@ucll.be\"\n" + //
+                        "  },\n" + //
+                        "  {\n" + //
+                        "    \"name\": \"Jane Toe\",\n" + //
+                        "    \"age\": 30,\n" + //
+                        "    \"email\": \"jane.toe@ucll.be\"\n" + //
+                        "  },\n" + //
+                        "  {\n" + //
+                        "    \"name\": \"Birgit Doe\",\n" + //
+                        "    \"age\": 18,\n" + //
+                        "    \"email\": \"birgit.doe@ucll.be\"\n" + //
+                        "  }\n" + //
+                        "]")
+        .jsonPath("$[*].password").doesNotExist();
+    }
+
+    @Test
+    public void givenFields_whenGetUserSummaries_thenOnlyRequestedFieldsAreReturned() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        webTestClient
+        .get()
+        .uri("/users/age/0/18/summary?fields=email")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .json("[\n" + //
+                        "  {\"email\": \"jack.doe@ucll.be\"},\n" + //
+                        "  {\"email\": \"sarah.doe@ucll.be\"},\n" + //
+                        "  {\"email\": \"birgit.doe@ucll.be\"}\n" + //
+                        "]", true);
+
+        assertEquals(0, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    public void givenUnknownField_whenGetUserSummaries_thenClientErrorReturned() {
+        webTestClient
+        .get()
+        .uri("/users/summary?fields=email,password")
+        .exchange()
+        .expectStatus()
+        .is4xxClientError()
+        .expectBody()
+        .jsonPath("$.ServiceException").isEqualTo(
+            String.format(SparseFieldset.UNKNOWN_FIELD_EXCEPTION, "password", List.of("userId", "name", "age", "email")));
+    }
+
+    @Test
+    public void givenSummaryFetch_whenGetAdults_thenOnlyUsersTableIsRead() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        webTestClient
+        .get()
+        .uri("/users/adults")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .jsonPath("$.length()").isEqualTo(3)
+        .jsonPath("$[*].profile").doesNotExist()
+        .jsonPath("$[*].memberships").doesNotExist();
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(3, statistics.getEntityLoadCount());
+    }
+
+    @Test
+    public void givenWithProfileFetch_whenGetAdults_thenProfilesAreJoined() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        webTestClient
+        .get()
+        .uri("/users/adults?fetch=withProfile")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .jsonPath("$[1].email").isEqualTo("jane.toe@ucll.be")
+        .jsonPath("$[1].profile.bio").isEqualTo("Bio 2")
+        .jsonPath("$[1].memberships").doesNotExist();
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void givenWithMembershipsFetch_whenGetUsersInAgeRange_thenMembershipsAreJoined() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        webTestClient
+        .get()
+        .uri("/users/age/0/18?fetch=withMemberships")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .jsonPath("$.length()").isEqualTo(3)
+        .jsonPath("$[0].profile").isEmpty()
+        .jsonPath("$[0].memberships").isArray();
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    public void givenUnknownFetch_whenGetUsers_thenClientErrorReturned() {
+        webTestClient
+        .get()
+        .uri("/users?fetch=everything")
+        .exchange()
+        .expectStatus()
+        .is4xxClientError()
+        .expectBody()
+        .json("{\r\n" + //
+                        "  \""+ServiceException.class.getSimpleName()+"\": \""+UserService.INVALID_FETCH_PROFILE_EXCEPTION +"\"\r\n" + //
+                        "}");
+    }
+
+    @Test
+    public void givenUserWithLoans_whenGetUserLoans_thenStatementCountIsBounded() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        webTestClient
+        .get()
+        .uri("/users/jane.toe@ucll.be/loans")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful();
+
+        // user exists check (user and profile), loans with publications, user and profile, memberships of the user
+        assertTrue(statistics.getPrepareStatementCount() <= 4);
+    }
+
+    @Test
+    public void givenUserWithManyHistoricalLoans_whenCheckingLoans_thenNoLoansAreLoaded() {
+        User user = userRepository.findByEmail("birgit.doe@ucll.be");
+        LocalDate startDate = TimeTracker.getToday().minusYears(2);
+        List<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            rows.add(new Object[] {user.getId(), startDate, startDate.plusDays(30), startDate.plusDays(30), 0});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO loans (user_id, start_date, end_date, return_date, price) VALUES (?, ?, ?, ?, ?)", rows);
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        loanService.checkUserActiveLoans(user.getEmail(), LoanService.USER_HAS_ACTIVE_LOANS_EXCEPTION);
+        userService.checkUsersActiveLoans(user.getEmail());
+        assertTrue(loanRepository.existsByUserEmail(user.getEmail()));
+
+        assertEquals(3, statistics.getPrepareStatementCount());
+        assertEquals(0, statistics.getEntityLoadCount());
+
+        // the old guard loaded the whole history only to compare its size with zero
+        assertEquals(10000, loanRepository.findByUserEmail(user.getEmail()).size());
+        assertTrue(statistics.getEntityLoadCount() >= 10000);
+    }
+
+    @Test
+    public void givenManyLoansWithPublications_whenSavingInOneTransaction_thenInsertsAreBatched() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            User user = userRepository.findByEmail("john.doe@ucll.be");
+            List<Publication> publications = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                publications.add(publicationRepository.save(new Book("Batch Book " + i, "Author", "978-0000000000", 2000, 1000)));
+            }
+            List<Loan> loans = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                loans.add(new Loan(user, publications, TimeTracker.getToday().minusYears(1), availabilityLedger));
+            }
+            loanRepository.saveAll(loans);
+        });
+
+        // 205 entity inserts and 1000 loan_publications rows; with identity columns every row was its own statement
+        assertEquals(205, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() < 60);
+    }
+
+    @Test
+    public void givenValidEmail_whenGetUserLoanSummaries_thenFlatLoansAreReturned() {
+        webTestClient
+        .get()
+        .uri("/users/jane.toe@ucll.be/loans/summary")
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .json("[\n" + //
+                        "  {\n" + //
+                        "    \"email\": \"jane.toe@ucll.be\",\n" + //
+                        "    \"price\": 0,\n" + //
+                        "    \"publicationCount\": 2\n" + //
+                        "  },\n" + //
+                        "  {\n" + //
+                        "    \"email\": \"jane.toe@ucll.be\",\n" + //
+                        "    \"price\": 0,\n" + //
+                        "    \"publicationCount\": 4\n" + //
+                        "  }\n" + //
+                        "]");
+    }
+
+    @Test
+    public void givenUserWithTwoLoans_whenStreamingLoans_thenPublicationsOfBothLoansAreLoadedInOneQuery() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        String body = webTestClient
+        .get()
+        .uri("/users/jane.toe@ucll.be/loans")
+        .accept(MediaType.APPLICATION_NDJSON)
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody(String.class)
+        .returnResult()
+        .getResponseBody();
+
+        assertEquals(2, body.strip().split("\n").length);
+        assertEquals(1, statistics.getCollectionFetchCount());
+    }
+
     @Test
     public void givenValidEmail_whenGetUserLoans_thenUsersLoansAreReturned() {
         webTestClient
@@ -178,8 +454,7 @@ public class UserIntegrationTest {
                         "    \"user\": {\n" + //
                         "      \"name\": \"Jane Toe\",\n" + //
                         "      \"age\": 30,\n" + //
-                        "      \"email\": \"jane.toe@ucll.be\",\n" + //
-                        "      \"password\": \"jane1234\"\n" + //
+                        "      \"email\": \"jane.toe@ucll.be\"\n" + //
                         "    },\n" + //
                         "    \"publications\": [\n" + //
                         "      {\n" + //
@@ -202,8 +477,7 @@ public class UserIntegrationTest {
                         "    \"user\": {\n" + //
                         "      \"name\": \"Jane Toe\",\n" + //
                         "      \"age\": 30,\n" + //
-                        "      \"email\": \"jane.toe@ucll.be\",\n" + //
-                        "      \"password\": \"jane1234\"\n" + //
+                        "      \"email\": \"jane.toe@ucll.be\"\n" + //
                         "    },\n" + //
                         "    \"publications\": [\n" + //
                         "      {\n" + //
@@ -254,9 +528,8 @@ public class UserIntegrationTest {
                         "      \"name\": \"Jane Toe\",\r\n" + //
                         "      \"age\": 30,\r\n" + //
                         "      \"email\": \"jane.toe@ucll.be\",\r\n" + //
-                        "      \"password\": \"jane1234\",\r\n" + //
                         "      \"profile\": {\r\n" + //
-                        "        \"profileId\": 2,\r\n" + //
+                        "        \"profileId\": " + profileIdOf("jane.toe@ucll.be") + ",\r\n" + //
                         "        \"bio\": \"Bio 2\",\r\n" + //
                         "        \"location\": \"Location 2\",\r\n" + //
                         "        \"interests\": \"Interests 2\"\r\n" + //
@@ -398,8 +671,7 @@ public class UserIntegrationTest {
         .json("{\n" + //
                         "  \"name\": \"Johns Doe\",\n" + //
                         "  \"age\": 25,\n" + //
-                        "  \"email\": \"johnss.doe@ucll.be\",\n" + //
-                        "  \"password\": \"john1234ss\"\n" + //
+                        "  \"email\": \"johnss.doe@ucll.be\"\n" + //
                         "}");
         
         assertTrue(userRepository.findByEmail("johnss.doe@ucll.be") != null);
@@ -425,8 +697,7 @@ public class UserIntegrationTest {
         .json("{\n" + //
                         "  \"name\": \"John Does\",\n" + //
                         "  \"age\": 27,\n" + //
-                        "  \"email\": \"john.doe@ucll.be\",\n" + //
-                        "  \"password\": \"john12342\"\n" + //
+                        "  \"email\": \"john.doe@ucll.be\"\n" + //
                         "}");
         
         User actualUser = userRepository.findByEmail("john.doe@ucll.be");
@@ -549,6 +820,39 @@ public class UserIntegrationTest {
         assertTrue(loanRepository.findByUserEmail("john.doe@ucll.be").size() == 0);
     }
 
+    @Test
+    public void givenEmails_whenPurgingUsers_thenUsersWithoutActiveLoansPurged() {
+        User john = userRepository.findByEmail("john.doe@ucll.be");
+        Long johnProfileId = jdbcTemplate.queryForObject(
+            "SELECT profile_id FROM users WHERE user_id = ?", Long.class, john.getId());
+
+        webTestClient
+        .post()
+        .uri("/users/purge")
+        .header("Content-Type", "application/json")
+        .bodyValue(List.of("john.doe@ucll.be", "jane.toe@ucll.be", "unknown@ucll.be", "jack.doe@ucll.be"))
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .json("[\n" + //
+                        "  {\"email\": \"john.doe@ucll.be\", \"purged\": true},\n" + //
+                        "  {\"email\": \"jane.toe@ucll.be\", \"purged\": false, \"message\": \"" + LoanService.USER_HAS_ACTIVE_LOANS_EXCEPTION + "\"},\n" + //
+                        "  {\"email\": \"unknown@ucll.be\", \"purged\": false, \"message\": \"" + UserService.USER_DOESNT_EXIST_EXCEPTION + "\"},\n" + //
+                        "  {\"email\": \"jack.doe@ucll.be\", \"purged\": true}\n" + //
+                        "]");
+
+        assertTrue(userRepository.findByEmail("john.doe@ucll.be") == null);
+        assertTrue(userRepository.findByEmail("jack.doe@ucll.be") == null);
+        assertTrue(userRepository.findByEmail("jane.toe@ucll.be") != null);
+        assertTrue(!loanRepository.existsByUserEmail("john.doe@ucll.be"));
+        assertTrue(!loanRepository.existsByUserEmail("jack.doe@ucll.be"));
+        assertEquals(0, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM memberships WHERE user_id = ?", Integer.class, john.getId()));
+        assertEquals(0, jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM profiles WHERE profile_id = ?", Integer.class, johnProfileId));
+    }
+
     @Test
     public void givenUsers_whenGettingTheOldestUser_thenTheOldestUserIsGiven() {
         webTestClient
@@ -563,9 +867,8 @@ public class UserIntegrationTest {
                         "  \"name\": \"Jane Toe\",\n" + //
                         "  \"age\": 30,\n" + //
                         "  \"email\": \"jane.toe@ucll.be\",\n" + //
-                        "  \"password\": \"jane1234\",\n" + //
                         "  \"profile\": {\n" + //
-                        "    \"profileId\": 2,\n" + //
+                        "    \"profileId\": " + profileIdOf("jane.toe@ucll.be") + ",\n" + //
                         "    \"bio\": \"Bio 2\",\n" + //
                         "    \"location\": \"Location 2\",\n" + //
                         "    \"interests\": \"Interests 2\"\n" + //
@@ -589,9 +892,8 @@ public class UserIntegrationTest {
                         "  \"name\": \"Jane Toe\",\n" + //
                         "  \"age\": 30,\n" + //
                         "  \"email\": \"jane.toe@ucll.be\",\n" + //
-                        "  \"password\": \"jane1234\",\n" + //
                         "  \"profile\": {\n" + //
-                        "    \"profileId\": 2,\n" + //
+                        "    \"profileId\": " + profileIdOf("jane.toe@ucll.be") + ",\n" + //
                         "    \"bio\": \"Bio 2\",\n" + //
                         "    \"location\": \"Location 2\",\n" + //
                         "    \"interests\": \"Interests 2\"\n" + //
@@ -676,9 +978,8 @@ public class UserIntegrationTest {
                         "    \"name\": \"Jane Toe\",\n" + //
                         "    \"age\": 30,\n" + //
                         "    \"email\": \"jane.toe@ucll.be\",\n" + //
-                        "    \"password\": \"jane1234\",\n" + //
                         "    \"profile\": {\n" + //
-                        "      \"profileId\": 2,\n" + //
+                        "      \"profileId\": " + profileIdOf("jane.toe@ucll.be") + ",\n" + //
                         "      \"bio\": \"Bio 2\",\n" + //
                         "      \"location\": \"Location 2\",\n" + //
                         "      \"interests\": \"Interests 2\"\n" + //
@@ -688,9 +989,8 @@ public class UserIntegrationTest {
                         "    \"name\": \"Birgit Doe\",\n" + //
                         "    \"age\": 18,\n" + //
                         "    \"email\": \"birgit.doe@ucll.be\",\n" + //
-                        "    \"password\": \"birgit1234\",\n" + //
                         "    \"profile\": {\n" + //
-                        "      \"profileId\": 5,\n" + //
+                        "      \"profileId\": " + profileIdOf("birgit.doe@ucll.be") + ",\n" + //
                         "      \"bio\": \"Bio 5\",\n" + //
                         "      \"location\": \"Location 5\",\n" + //
                         "      \"interests\": \"Interests 2\"\n" + //
@@ -710,9 +1010,8 @@ public class UserIntegrationTest {
                         "    \"name\": \"Jane Toe\",\n" + //
                         "    \"age\": 30,\n" + //
                         "    \"email\": \"jane.toe@ucll.be\",\n" + //
-                        "    \"password\": \"jane1234\",\n" + //
                         "    \"profile\": {\n" + //
-                        "      \"profileId\": 2,\n" + //
+                        "      \"profileId\": " + profileIdOf("jane.toe@ucll.be") + ",\n" + //
                         "      \"bio\": \"Bio 2\",\n" + //
                         "      \"location\": \"Location 2\",\n" + //
                         "      \"interests\": \"Interests 2\"\n" + //
@@ -722,9 +1021,8 @@ public class UserIntegrationTest {
                         "    \"name\": \"Birgit Doe\",\n" + //
                         "    \"age\": 18,\n" + //
                         "    \"email\": \"birgit.doe@ucll.be\",\n" + //
-                        "    \"password\": \"birgit1234\",\n" + //
                         "    \"profile\": {\n" + //
-                        "      \"profileId\": 5,\n" + //
+                        "      \"profileId\": " + profileIdOf("birgit.doe@ucll.be") + ",\n" + //
                         "      \"bio\": \"Bio 5\",\n" + //
                         "      \"location\": \"Location 5\",\n" + //
                         "      \"interests\": \"Interests 2\"\n" + //
@@ -802,9 +1100,8 @@ public class UserIntegrationTest {
                         "    \"name\": \"Jane Toe\",\r\n" + //
                         "    \"age\": 30,\r\n" + //
                         "    \"email\": \"jane.toe@ucll.be\",\r\n" + //
-                        "    \"password\": \"jane1234\",\r\n" + //
                         "    \"profile\": {\r\n" + //
-                        "      \"profileId\": 2,\r\n" + //
+                        "      \"profileId\": " + profileIdOf("jane.toe@ucll.be") + ",\r\n" + //
                         "      \"bio\": \"Bio 2\",\r\n" + //
                         "      \"location\": \"Location 2\",\r\n" + //
                         "      \"interests\": \"Interests 2\"\r\n" + //
@@ -814,9 +1111,8 @@ public class UserIntegrationTest {
                         "    \"name\": \"Birgit Doe\",\r\n" + //
                         "    \"age\": 18,\r\n" + //
                         "    \"email\": \"birgit.doe@ucll.be\",\r\n" + //
-                        "    \"password\": \"birgit1234\",\r\n" + //
                         "    \"profile\": {\r\n" + //
-                        "      \"profileId\": 5,\r\n" + //
+                        "      \"profileId\": " + profileIdOf("birgit.doe@ucll.be") + ",\r\n" + //
                         "      \"bio\": \"Bio 5\",\r\n" + //
                         "      \"location\": \"Location 5\",\r\n" + //
                         "      \"interests\": \"Interests 2\"\r\n" + //
@@ -849,7 +1145,6 @@ public class UserIntegrationTest {
                         "    \"name\": \"Sarah Doe\",\n" + //
                         "    \"age\": 4,\n" + //
                         "    \"email\": \"sarah.doe@ucll.be\",\n" + //
-                        "    \"password\": \"sarah1234\",\n" + //
                         "    \"profile\": null,\n" + //
                         "    \"memberships\": [\n" + //
                         "      {\n" + //
@@ -906,6 +1201,38 @@ public class UserIntegrationTest {
         "}");
     }
 
+    @Test
+    public void givenLoanRequests_whenRegisterLoansInBatch_thenEveryRequestHasItsResult() {
+        LocalDate today = TimeTracker.getToday();
+        List<Publication> publications = publicationRepository.findAll();
+        Long firstId = publications.get(0).getId();
+        Long secondId = publications.get(1).getId();
+
+        String bodyValue = String.format("[\n" + //
+                        "  {\"email\": \"sarah.doe@ucll.be\", \"startDate\": \"%s\", \"publicationIds\": [%d, %d]},\n" + //
+                        "  {\"email\": \"unknown@ucll.be\", \"startDate\": \"%s\", \"publicationIds\": [%d]},\n" + //
+                        "  {\"email\": \"john.doe@ucll.be\", \"startDate\": \"%s\", \"publicationIds\": [%d]}\n" + //
+                        "]", today, firstId, secondId, today, firstId, today, secondId);
+
+        webTestClient
+        .post()
+        .uri("/users/loans/batch")
+        .header("Content-Type", "application/json")
+        .bodyValue(bodyValue)
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .json("[\n" + //
+                        "  {\"email\": \"sarah.doe@ucll.be\", \"registered\": true},\n" + //
+                        "  {\"email\": \"unknown@ucll.be\", \"registered\": false, \"message\": \"" + UserService.USER_DOESNT_EXIST_EXCEPTION + "\"},\n" + //
+                        "  {\"email\": \"john.doe@ucll.be\", \"registered\": true}\n" + //
+                        "]");
+
+        assertEquals(1, loanRepository.findByUserEmailAndEndDateAfter("sarah.doe@ucll.be", today).size());
+        assertEquals(1, loanRepository.findByUserEmailAndEndDateAfter("john.doe@ucll.be", today).size());
+    }
+
     @Test
     public void givenValidInfo_whenReturnLoan_thenLoanReturned() {
         
@@ -934,6 +1261,82 @@ public class UserIntegrationTest {
         .is2xxSuccessful();
     }  
 
+    @Test
+    public void givenConcurrentReturns_whenReturningLoan_thenLoanReturnedOnceAndOneFreeLoanRedeemed() throws Exception {
+        LocalDate today = TimeTracker.getToday();
+        String email = "john.doe@ucll.be";
+        int returns = 6;
+        List<Long> ids = publicationRepository.findAll().stream().map(Publication::getId).toList().subList(0, 2);
+        loanService.registerLoan(email, today, ids);
+        TimeTracker.setCustomToday(today.plusDays(1));
+
+        ExecutorService executor = Executors.newFixedThreadPool(returns);
+        int returned = 0;
+        try {
+            List<Future<Loan>> results = new ArrayList<>();
+            for (int i = 0; i < returns; i++) {
+                results.add(executor.submit(() -> loanService.returnLoan(email, today.plusDays(1))));
+            }
+            // the losers are retried and then see the loan is no longer active
+            for (Future<Loan> result : results) {
+                try {
+                    result.get();
+                    returned++;
+                } catch (ExecutionException e) {
+                    assertEquals(LoanService.USER_HAS_NO_ACTIVE_LOAN_EXCEPTION, e.getCause().getMessage());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(1, returned);
+        // the bronze membership starts with 3 free loans
+        assertEquals(2, jdbcTemplate.queryForObject(
+            "SELECT free_loans_quantity FROM memberships WHERE tier = ? AND user_id = " + //
+            "(SELECT user_id FROM users WHERE email = ?)", Integer.class, MembershipTier.BRONZE.getCode(), email));
+        assertEquals(0, jdbcTemplate.queryForObject(
+            "SELECT l.price FROM loans l JOIN users u ON u.user_id = l.user_id WHERE u.email = ? AND l.start_date = ?",
+            Integer.class, email, today));
+    }
+
+    @Test
+    public void givenOpenLoans_whenPreviewingBilling_thenAllOpenLoansPricedAsReturnedOnDate() {
+        LocalDate today = TimeTracker.getToday();
+        long days = ChronoUnit.DAYS.between(today.minusYears(1), today);
+
+        // john has a bronze membership with free loans, the loan of jane from two days ago is not late
+        webTestClient
+        .get()
+        .uri("/loans/billing/preview?date=" + today)
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .jsonPath("$.date").isEqualTo(today.toString())
+        .jsonPath("$.loans").isEqualTo(5)
+        .jsonPath("$.overdueLoans").isEqualTo(4)
+        .jsonPath("$.totalPrice").isEqualTo(10 * days + 8)
+        .jsonPath("$.totalFines").isEqualTo(6 * (days - 30));
+    }
+
+    @Test
+    public void givenMembershipWithoutFreeLoans_whenPreviewingBilling_thenLoanPricedAtFullPrice() {
+        LocalDate today = TimeTracker.getToday();
+        long days = ChronoUnit.DAYS.between(today.minusYears(1), today);
+        jdbcTemplate.update("UPDATE memberships SET free_loans_quantity = 0");
+
+        // like a return, a membership without free loans left does not lower the price of the two publications of john
+        webTestClient
+        .get()
+        .uri("/loans/billing/preview?date=" + today)
+        .exchange()
+        .expectStatus()
+        .is2xxSuccessful()
+        .expectBody()
+        .jsonPath("$.totalPrice").isEqualTo(10 * days + 8 + days * 2);
+    }
+
     @Test 
     public void givenValidDateAndMembership_whenGettingMembershipByDate_thanMembershipReturned() {
         TimeTracker.setCustomToday(MembershipTest.DEFAULT_TODAY);
@@ -969,4 +1372,9 @@ public class UserIntegrationTest {
         membershipRepository.deleteAll();
         userRepository.deleteAll();
     }
+
+    // profile ids come from a pooled sequence that is not reset with the tables
+    private Long profileIdOf(String email) {
+        return userRepository.findByEmail(email).getProfile().getProfileId();
+    }
 }
@@ -141,8 +141,7 @@ public class LoanTest {
     @Test
     public void givenZeroCopiesPublication_whenCreatingLoan_thenLoanCopiesDomainExceptionIsThrown() {
         User DefaultUser = UserTest.createDefaultUser(); 
-        Magazine DefaultMagazine = MagazineTest.createDefaultMagazine(); 
-        DefaultMagazine.setAvailableCopies(0);
+        Magazine DefaultMagazine = new Magazine(MagazineTest.DEFAULT_TITLE, MagazineTest.DEFAULT_EDITOR, MagazineTest.DEFAULT_ISSN, MagazineTest.DEFAULT_YEAR, 0);
         ArrayList<Publication> Publications = new ArrayList<>();
         Publications.add(DefaultMagazine);
         
@@ -0,0 +1,65 @@
+package be.ucll.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import be.ucll.utilits.TimeTracker;
+
+public class MembershipPeriodsTest {
+
+    private static final LocalDate TODAY = MembershipTest.DEFAULT_TODAY;
+
+    private Membership first;
+    private Membership second;
+    private Membership third;
+
+    @BeforeEach
+    public void createMemberships() {
+        TimeTracker.setCustomToday(TODAY);
+        first = new Membership(TODAY, TODAY.plusYears(1), MembershipTier.BRONZE, 2);
+        second = new Membership(TODAY.plusYears(1).plusDays(1), TODAY.plusYears(2).plusDays(1), MembershipTier.SILVER, 8);
+        third = new Membership(TODAY.plusYears(3), TODAY.plusYears(4), MembershipTier.GOLD, 12);
+    }
+
+    @Test
+    public void givenUnsortedMemberships_whenLookingUpDate_thenMembershipRunningOnDateReturned() {
+        MembershipPeriods periods = MembershipPeriods.of(List.of(third, first, second));
+
+        assertEquals(first, periods.at(TODAY.plusDays(10)));
+        assertEquals(first, periods.at(TODAY.plusYears(1)));
+        assertEquals(second, periods.at(TODAY.plusYears(1).plusDays(1)));
+        assertEquals(third, periods.at(TODAY.plusYears(4)));
+        assertNull(periods.at(TODAY.minusDays(1)));
+        assertNull(periods.at(TODAY.plusYears(2).plusDays(10)));
+    }
+
+    @Test
+    public void givenMemberships_whenCheckingOverlap_thenOnlyOverlappingPeriodsFound() {
+        MembershipPeriods periods = MembershipPeriods.of(List.of(first, third));
+
+        assertTrue(periods.overlaps(new Membership(TODAY.plusDays(5), TODAY.plusYears(1).plusDays(5), MembershipTier.BRONZE, 1)));
+        assertTrue(periods.overlaps(new Membership(TODAY.plusYears(2).plusDays(10), TODAY.plusYears(3).plusDays(10), MembershipTier.BRONZE, 1)));
+        assertFalse(periods.overlaps(second));
+        assertFalse(periods.overlaps(new Membership(TODAY.plusYears(4).plusDays(1), TODAY.plusYears(5).plusDays(1), MembershipTier.BRONZE, 1)));
+    }
+
+    @Test
+    public void givenMembershipWithoutFreeLoans_whenFindingFreeLoans_thenNextMembershipWithFreeLoansReturned() {
+        MembershipPeriods periods = MembershipPeriods.of(List.of(first, third)).with(second);
+
+        assertEquals(3, periods.size());
+        assertEquals(first, periods.firstWithFreeLoansEndingAfter(TODAY));
+        first.setFreeLoansQuantity(0);
+        assertEquals(second, periods.firstWithFreeLoansEndingAfter(TODAY));
+        assertEquals(third, periods.firstWithFreeLoansEndingAfter(TODAY.plusYears(2).plusDays(1)));
+        assertNull(periods.firstWithFreeLoansEndingAfter(TODAY.plusYears(4)));
+    }
+}
@@ -1,6 +1,7 @@
 package be.ucll.model;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -23,9 +24,9 @@ public class MembershipTest {
 
     public static final LocalDate DEFAULT_TODAY = LocalDate.of(1111, 1, 12);
     public static final LocalDate DEFAULT_1YEAR_AFTER_TODAY = LocalDate.of(1112, 1, 12);
-    public static final String BRONZE_TYPE = "BRONZE";
-    public static final String SILVER_TYPE = "SILVER";
-    public static final String GOLD_TYPE = "GOLD";
+    public static final MembershipTier BRONZE_TYPE = MembershipTier.BRONZE;
+    public static final MembershipTier SILVER_TYPE = MembershipTier.SILVER;
+    public static final MembershipTier GOLD_TYPE = MembershipTier.GOLD;
     public static final Integer DEFAULT_BRONZE_FREE_LOANS = 4;
     public static final Integer DEFAULT_SILVER_FREE_LOANS = 8;
     public static final Integer DEFAULT_GOLD_FREE_LOANS = 12;
@@ -106,18 +107,25 @@ public class MembershipTest {
 
     @Test
     public void givenWrongType_whenCreatingMembership_thenMembershipTypeDomainExceptionIsThrown() {
-        Membership membership = new Membership(DEFAULT_TODAY, DEFAULT_1YEAR_AFTER_TODAY, "wrong", DEFAULT_BRONZE_FREE_LOANS);
-
-        Set<ConstraintViolation<Membership>> violations = validator.validate(membership);
-        assertEquals(1, violations.size());
+        Exception exception = assertThrows(DomainException.class, () -> {
+            new Membership(DEFAULT_TODAY, DEFAULT_1YEAR_AFTER_TODAY, MembershipTier.fromName("wrong"), DEFAULT_BRONZE_FREE_LOANS);
+        });
 
-        Iterator<ConstraintViolation<Membership>> violationIterator = violations.iterator();
-        ConstraintViolation<Membership> violation = violationIterator.next();
         String expectedMessage = Membership.INVALID_MEMBERSHIP_TYPE_EXCEPTION;
-        String actualMessage = violation.getMessage();
+        String actualMessage = exception.getMessage();
+
         assertEquals(expectedMessage, actualMessage);
     }
 
+    @Test
+    public void givenTierTerms_whenCheckingFreeLoans_thenTermsOfTheGivenTiersUsed() {
+        Membership membership = new Membership(DEFAULT_TODAY, DEFAULT_1YEAR_AFTER_TODAY, GOLD_TYPE, 13);
+
+        assertFalse(membership.areValidFreeLoans(18));
+        assertTrue(membership.areValidFreeLoans(18, new MembershipTier.Terms(0.2, 11, 20)));
+        assertFalse(membership.areValidFreeLoans(null, GOLD_TYPE.getDefaultTerms()));
+    }
+
     @Test
     public void givenWrongStartDate_whenCreatingMembership_thenMembershipTypeDomainExceptionIsThrown() {
         Exception exception = assertThrows(DomainException.class, () -> {
@@ -18,10 +18,8 @@ public class PublicationTest {
 
     @Test
     public void givenNegativeAvailableCopies_whenCreatingMagazine_thenMagazineCopiesDomainExceptionIsThrown() {
-        Publication publication = MagazineTest.createDefaultMagazine();
-        
         Exception exception = assertThrows(DomainException.class, () -> {
-            publication.setAvailableCopies(-1);
+            new Magazine(MagazineTest.DEFAULT_TITLE, MagazineTest.DEFAULT_EDITOR, MagazineTest.DEFAULT_ISSN, MagazineTest.DEFAULT_YEAR, -1);
         });
 
         String expectedMessage = Publication.NEGATIVE_AVAILABLE_COPIES_EXCEPTION;
@@ -247,7 +247,7 @@ public class UserTest {
         Membership membership = new Membership();
         membership.setStartDate(now);
         membership.setEndDate(now.plusYears(1));
-        membership.setType("GOLD");
+        membership.setType(MembershipTier.GOLD);
 
         User user = createDefaultUser();
         user.setMembership(membership);
@@ -267,12 +267,12 @@ public class UserTest {
         Membership membership = new Membership();
         membership.setStartDate(now);
         membership.setEndDate(now.plusYears(1));
-        membership.setType("GOLD");
+        membership.setType(MembershipTier.GOLD);
 
         Membership membership1 = new Membership();
         membership1.setStartDate(now.plusDays(100));
         membership1.setEndDate(now.plusYears(1).plusDays(100));
-        membership1.setType("BRONZE");
+        membership1.setType(MembershipTier.BRONZE);
 
         User user = createDefaultUser();
         user.setMembership(membership);
@@ -0,0 +1,53 @@
+package be.ucll.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import be.ucll.repository.LocalCacheRegionFactory.LocalStorage;
+
+public class LocalCacheRegionFactoryTest {
+
+    @Test
+    public void givenFullRegion_whenPuttingNewKey_thenLeastRecentlyUsedEntryIsEvicted() {
+        LocalStorage storage = new LocalStorage(2);
+        storage.putIntoCache(1L, "first", null);
+        storage.putIntoCache(2L, "second", null);
+        storage.getFromCache(1L, null);
+
+        storage.putIntoCache(3L, "third", null);
+
+        assertEquals(2, storage.size());
+        assertTrue(storage.contains(1L));
+        assertFalse(storage.contains(2L));
+        assertEquals("third", storage.getFromCache(3L, null));
+        assertEquals(1, storage.getEvictions());
+    }
+
+    @Test
+    public void givenFullRegion_whenReplacingCachedKey_thenNothingIsEvicted() {
+        LocalStorage storage = new LocalStorage(2);
+        storage.putIntoCache(1L, "first", null);
+        storage.putIntoCache(2L, "second", null);
+
+        storage.putIntoCache(1L, "first again", null);
+
+        assertEquals("first again", storage.getFromCache(1L, null));
+        assertEquals("second", storage.getFromCache(2L, null));
+        assertEquals(0, storage.getEvictions());
+    }
+
+    @Test
+    public void givenEvictedKey_whenGettingFromCache_thenMissIsCounted() {
+        LocalStorage storage = new LocalStorage(1);
+        storage.putIntoCache(1L, "first", null);
+        storage.putIntoCache(2L, "second", null);
+
+        assertNull(storage.getFromCache(1L, null));
+        assertEquals(1, storage.getMisses());
+        assertEquals(2, storage.getPuts());
+    }
+}
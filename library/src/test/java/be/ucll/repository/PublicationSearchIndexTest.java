@@ -0,0 +1,63 @@
+package be.ucll.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import be.ucll.model.Publication;
+import be.ucll.utilits.TimeTracker;
+
+public class PublicationSearchIndexTest {
+
+    private PublicationSearchIndex publicationSearchIndex;
+
+    @BeforeEach
+    public void setupIndex() {
+        TimeTracker.resetToday();
+        TimeTracker.resetYear();
+        publicationSearchIndex = new PublicationSearchIndex();
+        List<Publication> publications = DbInitializer.createPublications();
+        for (int i = 0; i < publications.size(); i++) {
+            Publication publication = publications.get(i);
+            ReflectionTestUtils.setField(publication, "id", (long) i + 1);
+            publicationSearchIndex.put(publication);
+        }
+    }
+
+    @Test
+    public void givenTitlePart_whenFindingByTitleAndType_thenSameMatchesAsLikeQueryReturned() {
+        assertEquals(List.of(1L, 5L), publicationSearchIndex.findByTitleAndType("The", null, 10));
+        assertEquals(List.of(7L), publicationSearchIndex.findByTitleAndType("ime", null, 10));
+        assertEquals(List.of(), publicationSearchIndex.findByTitleAndType("time", null, 10));
+    }
+
+    @Test
+    public void givenShortTitleAndType_whenFindingByTitleAndType_thenMatchingTypeReturned() {
+        assertEquals(List.of(6L, 9L), publicationSearchIndex.findByTitleAndType("c", "Magazine", 10));
+        assertEquals(List.of(1L, 2L), publicationSearchIndex.findByTitleAndType(null, "book", 2));
+        assertEquals(List.of(), publicationSearchIndex.findByTitleAndType("", "", 10));
+    }
+
+    @Test
+    public void givenWords_whenSearching_thenTitleMatchesRankedBeforeAuthorMatches() {
+        Publication book = DbInitializer.createDefaultBookList().get(0);
+        ReflectionTestUtils.setField(book, "id", 20L);
+        book.setTitle("Orwell");
+        publicationSearchIndex.put(book);
+
+        assertEquals(List.of(20L, 3L), publicationSearchIndex.search("orwell", null, 10));
+        assertEquals(List.of(20L), publicationSearchIndex.search("ORWELL", null, 1));
+    }
+
+    @Test
+    public void givenRemovedPublication_whenSearching_thenPublicationNotReturned() {
+        publicationSearchIndex.remove(3L);
+
+        assertEquals(List.of(), publicationSearchIndex.search("orwell", null, 10));
+        assertEquals(List.of(), publicationSearchIndex.findByTitleAndType("1984", null, 10));
+    }
+}
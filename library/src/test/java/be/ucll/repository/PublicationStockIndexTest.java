@@ -0,0 +1,128 @@
+package be.ucll.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import be.ucll.dto.StockBucket;
+import be.ucll.model.Publication;
+import be.ucll.utilits.AvailabilityLedger;
+import be.ucll.utilits.TimeTracker;
+
+public class PublicationStockIndexTest {
+
+    private AvailabilityLedger availabilityLedger;
+    private PublicationStockIndex publicationStockIndex;
+
+    // ids 1 to 10 with 10, 15, 20, 12, 8, 100, 80, 60, 40 and 20 copies
+    @BeforeEach
+    public void setupIndex() {
+        TimeTracker.resetToday();
+        TimeTracker.resetYear();
+        availabilityLedger = new AvailabilityLedger();
+        publicationStockIndex = new PublicationStockIndex(availabilityLedger);
+        publicationStockIndex.listenToLedger();
+        List<Publication> publications = DbInitializer.createPublications();
+        for (int i = 0; i < publications.size(); i++) {
+            Publication publication = publications.get(i);
+            ReflectionTestUtils.setField(publication, "id", (long) i + 1);
+            publicationStockIndex.put(publication);
+        }
+    }
+
+    @AfterEach
+    public void stopListening() {
+        publicationStockIndex.stopListening();
+    }
+
+    @Test
+    public void givenThreshold_whenFindingWithAtLeast_thenIdsWithEnoughCopiesReturnedInIdOrder() {
+        assertEquals(List.of(3L, 6L, 7L, 8L, 9L, 10L), publicationStockIndex.findWithAtLeast(20));
+        assertEquals(List.of(6L), publicationStockIndex.findWithAtLeast(81));
+        assertEquals(List.of(), publicationStockIndex.findWithAtLeast(101));
+    }
+
+    @Test
+    public void givenAfterIdAndLimit_whenFindingWithAtLeast_thenOnePageOfIdsReturned() {
+        assertEquals(List.of(3L, 6L), publicationStockIndex.findWithAtLeast(20, 0, 2));
+        assertEquals(List.of(7L, 8L), publicationStockIndex.findWithAtLeast(20, 6, 2));
+        assertEquals(List.of(6L, 7L), publicationStockIndex.findWithAtLeast(20, 4, 2));
+        assertEquals(List.of(10L), publicationStockIndex.findWithAtLeast(20, 9, 2));
+        assertEquals(List.of(), publicationStockIndex.findWithAtLeast(20, 10, 2));
+    }
+
+    @Test
+    public void givenLimit_whenFindingLowest_thenFewestCopiesFirstAndTiesById() {
+        assertEquals(List.of(5L, 1L, 4L), publicationStockIndex.findLowest(3));
+        assertEquals(List.of(5L, 1L, 4L, 2L, 3L, 10L), publicationStockIndex.findLowest(6));
+    }
+
+    @Test
+    public void givenLedgerChanges_whenQuerying_thenPublicationsMovedToTheirNewCopies() {
+        availabilityLedger.lend(3L, 20);
+        availabilityLedger.lend(3L, 20);
+        availabilityLedger.lend(1L, 10);
+        availabilityLedger.lend(1L, 10);
+        availabilityLedger.giveBack(5L, 8);
+
+        assertEquals(List.of(6L, 7L, 8L, 9L, 10L), publicationStockIndex.findWithAtLeast(20));
+        assertEquals(List.of(1L, 5L, 4L), publicationStockIndex.findLowest(3));
+    }
+
+    @Test
+    public void givenBucketSize_whenMakingHistogram_thenOnlyNonEmptyBucketsCounted() {
+        assertEquals(List.of(
+            new StockBucket(0, 9, 1),
+            new StockBucket(10, 19, 3),
+            new StockBucket(20, 29, 2),
+            new StockBucket(40, 49, 1),
+            new StockBucket(60, 69, 1),
+            new StockBucket(80, 89, 1),
+            new StockBucket(100, 109, 1)), publicationStockIndex.histogram(0, 10));
+        assertEquals(List.of(new StockBucket(0, 49, 1), new StockBucket(50, 99, 2), new StockBucket(100, 149, 1)),
+            publicationStockIndex.histogram(40, 50));
+    }
+
+    @Test
+    public void givenRemovedPublication_whenQuerying_thenPublicationNotReturned() {
+        publicationStockIndex.remove(5L);
+        availabilityLedger.lend(5L, 8);
+
+        assertEquals(List.of(1L, 4L), publicationStockIndex.findLowest(2));
+    }
+
+    @Test
+    public void givenConcurrentLendsAndGiveBacks_whenQuerying_thenIndexMatchesLedger() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 4000; i++) {
+            long publicationId = i % 10 + 1;
+            boolean giveBack = i % 3 == 0;
+            executor.submit(() -> {
+                if (giveBack) {
+                    availabilityLedger.giveBack(publicationId, 0);
+                } else {
+                    availabilityLedger.lend(publicationId, 0);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        for (long publicationId = 1; publicationId <= 10; publicationId++) {
+            int ledgerCopies = availabilityLedger.getAvailableCopies(publicationId);
+            assertTrue(publicationStockIndex.findWithAtLeast(ledgerCopies).contains(publicationId));
+            assertFalse(publicationStockIndex.findWithAtLeast(ledgerCopies + 1).contains(publicationId));
+        }
+        assertEquals(10, publicationStockIndex.findLowest(20).size());
+    }
+}
@@ -0,0 +1,136 @@
+package be.ucll.repository;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import be.ucll.model.User;
+import be.ucll.utilits.TimeTracker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+@ExtendWith(MockitoExtension.class)
+public class UserCacheTest {
+
+    @Mock
+    private UserRepository userRepository;
+
+    private MeterRegistry meterRegistry;
+    private List<User> users;
+
+    @BeforeEach
+    public void setup() {
+        TimeTracker.resetToday();
+        TimeTracker.resetYear();
+        meterRegistry = new SimpleMeterRegistry();
+        users = DbInitializer.createUsers();
+    }
+
+    @Test
+    public void givenCachedUser_whenGettingUserAgain_thenRepositoryQueriedOnce() {
+        User user = users.get(0);
+        when(userRepository.findByEmail(user.getEmail())).thenReturn(user);
+        UserCache userCache = new UserCache(userRepository, meterRegistry, 10, Duration.ofMinutes(1));
+
+        assertSame(user, userCache.get(user.getEmail()));
+        assertSame(user, userCache.get(user.getEmail()));
+        assertSame(user, userCache.get(user.getEmail()));
+
+        verify(userRepository, times(1)).findByEmail(user.getEmail());
+        assertEquals(2, userCache.getHits());
+        assertEquals(1, userCache.getMisses());
+        assertEquals(2.0, meterRegistry.get(UserCache.METRIC_REQUESTS).tag("result", "hit").functionCounter().count());
+        assertEquals(1.0, meterRegistry.get(UserCache.METRIC_REQUESTS).tag("result", "miss").functionCounter().count());
+    }
+
+    @Test
+    public void givenUnknownEmail_whenGettingUser_thenNullReturnedAndNotCached() {
+        UserCache userCache = new UserCache(userRepository, meterRegistry, 10, Duration.ofMinutes(1));
+
+        assertNull(userCache.get("unknown@ucll.be"));
+        assertNull(userCache.get("unknown@ucll.be"));
+
+        verify(userRepository, times(2)).findByEmail("unknown@ucll.be");
+        assertEquals(0, userCache.size());
+    }
+
+    @Test
+    public void givenFullCache_whenGettingNewUser_thenLeastRecentlyUsedEvicted() {
+        User first = users.get(0);
+        User second = users.get(1);
+        User third = users.get(2);
+        when(userRepository.findByEmail(first.getEmail())).thenReturn(first);
+        when(userRepository.findByEmail(second.getEmail())).thenReturn(second);
+        when(userRepository.findByEmail(third.getEmail())).thenReturn(third);
+        UserCache userCache = new UserCache(userRepository, meterRegistry, 2, Duration.ofMinutes(1));
+
+        userCache.get(first.getEmail());
+        userCache.get(second.getEmail());
+        userCache.get(first.getEmail());
+        userCache.get(third.getEmail());
+        userCache.get(first.getEmail());
+        userCache.get(second.getEmail());
+
+        verify(userRepository, times(1)).findByEmail(first.getEmail());
+        verify(userRepository, times(2)).findByEmail(second.getEmail());
+        assertEquals(2, userCache.size());
+        assertEquals(2, userCache.getEvictions());
+        assertEquals(2.0, meterRegistry.get(UserCache.METRIC_EVICTIONS).functionCounter().count());
+    }
+
+    @Test
+    public void givenExpiredUser_whenGettingUser_thenUserLoadedAgain() {
+        User user = users.get(0);
+        when(userRepository.findByEmail(user.getEmail())).thenReturn(user);
+        UserCache userCache = new UserCache(userRepository, meterRegistry, 10, Duration.ZERO);
+
+        userCache.get(user.getEmail());
+        userCache.get(user.getEmail());
+
+        verify(userRepository, times(2)).findByEmail(user.getEmail());
+        assertEquals(0, userCache.getHits());
+        assertEquals(1, userCache.getEvictions());
+    }
+
+    @Test
+    public void givenEvictedUser_whenGettingUser_thenUserLoadedAgain() {
+        User user = users.get(0);
+        when(userRepository.findByEmail(user.getEmail())).thenReturn(user);
+        UserCache userCache = new UserCache(userRepository, meterRegistry, 10, Duration.ofMinutes(1));
+
+        userCache.get(user.getEmail());
+        userCache.evict(user.getEmail());
+        userCache.get(user.getEmail());
+
+        verify(userRepository, times(2)).findByEmail(user.getEmail());
+    }
+
+    @Test
+    public void givenEvictDuringLoad_whenGettingUser_thenLoadedUserNotCached() {
+        User user = users.get(0);
+        UserCache userCache = new UserCache(userRepository, meterRegistry, 10, Duration.ofMinutes(1));
+        when(userRepository.findByEmail(user.getEmail())).thenAnswer(invocation -> {
+            // the user is changed and evicted while this load reads it
+            userCache.evict(user.getEmail());
+            return user;
+        });
+
+        assertSame(user, userCache.get(user.getEmail()));
+
+        assertEquals(0, userCache.size());
+        userCache.get(user.getEmail());
+        verify(userRepository, times(2)).findByEmail(user.getEmail());
+    }
+}
@@ -0,0 +1,48 @@
+package be.ucll.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+
+import be.ucll.service.LoanPriceEngineTest.RandomLoans;
+
+/// Times LOANS random loans priced one by one, the way LoanService did before the engine, and in one batch.
+/// There is no JMH in the build, the rounds before the best one warm up the JIT. The best time of each
+/// path, in total and per loan, is published as report entries.
+/// Tagged `load`, so it only runs with the load-test profile: `mvn test -Pload-test`.
+/// The number of loans can be changed with -Dlibrary.price-benchmark.loans=...
+@Tag("load")
+public class LoanPriceEngineBenchmarkTest {
+
+    private static final int LOANS = Integer.getInteger("library.price-benchmark.loans", 1_000_000);
+    private static final int ROUNDS = 10;
+
+    @Test
+    public void givenManyLoans_whenCalculatingBatch_thenSameTotalsAsPricePerLoan(TestReporter reporter) {
+        RandomLoans loans = new RandomLoans(LOANS);
+
+        long perLoanTotal = 0;
+        long bestPerLoan = Long.MAX_VALUE;
+        long batchTotal = 0;
+        long bestBatch = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long startTime = System.nanoTime();
+            perLoanTotal = loans.totalPerLoan();
+            bestPerLoan = Math.min(bestPerLoan, System.nanoTime() - startTime);
+
+            startTime = System.nanoTime();
+            loans.batch().calculate(LoanPriceEngineTest.MULTIPLIERS);
+            batchTotal = loans.totalOfBatch();
+            bestBatch = Math.min(bestBatch, System.nanoTime() - startTime);
+        }
+
+        reporter.publishEntry("loans", String.valueOf(loans.size()));
+        reporter.publishEntry("one-by-one.total-millis", String.format("%.1f", bestPerLoan / 1e6));
+        reporter.publishEntry("one-by-one.nanos-per-loan", String.format("%.1f", (double) bestPerLoan / loans.size()));
+        reporter.publishEntry("batch.total-millis", String.format("%.1f", bestBatch / 1e6));
+        reporter.publishEntry("batch.nanos-per-loan", String.format("%.1f", (double) bestBatch / loans.size()));
+        assertEquals(perLoanTotal, batchTotal);
+    }
+}
@@ -0,0 +1,122 @@
+package be.ucll.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.env.MockEnvironment;
+
+public class LoanPriceEngineTest {
+
+    private static final String[] MEMBERSHIP_TYPES = {null, null, "BRONZE", "SILVER", "GOLD"};
+    static final double[] MULTIPLIERS = LoanPriceEngine.multipliers(new MembershipTierSettings(new MockEnvironment()));
+
+    @Test
+    public void givenLoansOfEveryTier_whenCalculatingBatch_thenSameAsPricePerLoan() {
+        LoanPriceBatch batch = new LoanPriceBatch(2);
+        LocalDate start = LocalDate.of(2024, 1, 1);
+        LocalDate end = start.plusDays(30);
+        for (byte tier = 0; tier < MEMBERSHIP_TYPES.length; tier++) {
+            batch.add(start, end, start.plusDays(7), 3, tier);
+            batch.add(start, end, start.plusDays(45), 2, tier);
+        }
+        batch.calculate(MULTIPLIERS);
+
+        assertEquals(10, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            byte tier = (byte) (i / 2);
+            LocalDate returnDate = i % 2 == 0 ? start.plusDays(7) : start.plusDays(45);
+            int publications = i % 2 == 0 ? 3 : 2;
+            assertEquals(pricePerLoan(start, end, returnDate, publications, tier), batch.getPrice(i) + batch.getFine(i));
+        }
+        assertEquals(0, batch.getPrice(2));
+        assertEquals(15, batch.getFine(3));
+    }
+
+    @Test
+    public void givenRandomLoans_whenCalculatingBatch_thenSameTotalsAsPricePerLoan() {
+        RandomLoans loans = new RandomLoans(10_000);
+
+        loans.batch().calculate(MULTIPLIERS);
+
+        assertEquals(loans.totalPerLoan(), loans.totalOfBatch());
+    }
+
+    /// Loans of every tier, started up to 120 days before today and all returned today, priced per loan
+    /// and in one batch. Shared with LoanPriceEngineBenchmarkTest.
+    static class RandomLoans {
+
+        static final LocalDate TODAY = LocalDate.of(2024, 6, 1);
+
+        private final LocalDate[] startDates;
+        private final LocalDate[] endDates;
+        private final int[] publications;
+        private final byte[] tiers;
+        private final LoanPriceBatch batch;
+
+        RandomLoans(int size) {
+            SplittableRandom random = new SplittableRandom(42);
+            startDates = new LocalDate[size];
+            endDates = new LocalDate[size];
+            publications = new int[size];
+            tiers = new byte[size];
+            batch = new LoanPriceBatch(size);
+            for (int i = 0; i < size; i++) {
+                startDates[i] = TODAY.minusDays(random.nextInt(1, 120));
+                endDates[i] = startDates[i].plusDays(30);
+                publications[i] = random.nextInt(1, 6);
+                tiers[i] = (byte) random.nextInt(MEMBERSHIP_TYPES.length);
+                batch.add(startDates[i], endDates[i], TODAY, publications[i], tiers[i]);
+            }
+        }
+
+        int size() {
+            return tiers.length;
+        }
+
+        LoanPriceBatch batch() {
+            return batch;
+        }
+
+        long totalPerLoan() {
+            long total = 0;
+            for (int i = 0; i < tiers.length; i++) {
+                total += pricePerLoan(startDates[i], endDates[i], TODAY, publications[i], tiers[i]);
+            }
+            return total;
+        }
+
+        long totalOfBatch() {
+            long total = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                total += batch.getPrice(i) + batch.getFine(i);
+            }
+            return total;
+        }
+    }
+
+    // the arithmetic of LoanService.calculateTotalLoanPrice before the engine, boxed and with the type switch
+    private static Integer pricePerLoan(LocalDate startDate, LocalDate endDate, LocalDate returnDate, Integer publications, byte tier) {
+        long days = ChronoUnit.DAYS.between(startDate, returnDate);
+        Double multiplier = tier == LoanPriceEngine.TIER_NONE ? 1.0 : tier == LoanPriceEngine.TIER_FREE ? 0.0 : multiplierOf(MEMBERSHIP_TYPES[tier]);
+        Integer price = (int) (days * publications * multiplier);
+
+        long daysLate = ChronoUnit.DAYS.between(endDate, returnDate);
+        Integer fine = daysLate > 0 ? (int) (daysLate * 0.50 * publications) : 0;
+        return price + fine;
+    }
+
+    private static double multiplierOf(String type) {
+        switch (type) {
+            case "BRONZE":
+                return 0.75;
+            case "SILVER":
+                return 0.5;
+            default:
+                return 0.25;
+        }
+    }
+}
@@ -3,39 +3,62 @@ package be.ucll.service;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anySet;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.stubbing.Answer;
-
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import be.ucll.dto.BillingPreview;
+import be.ucll.dto.LoanRegistration;
+import be.ucll.dto.LoanRequest;
 import be.ucll.model.Loan;
 import be.ucll.model.LoanTest;
 import be.ucll.model.Membership;
 import be.ucll.model.MembershipTest;
+import be.ucll.model.MembershipTier;
 import be.ucll.model.Publication;
 import be.ucll.model.User;
 import be.ucll.model.UserTest;
 import be.ucll.repository.DbInitializer;
+import be.ucll.repository.LoanBatchRepository;
+import be.ucll.repository.LoanEventRepository;
 import be.ucll.repository.LoanRepository;
 import be.ucll.repository.MembershipRepository;
 import be.ucll.repository.ProfileRepository;
 import be.ucll.repository.PublicationRepository;
 import be.ucll.repository.UserRepository;
 import be.ucll.unit.utils.LoanTestsUtils;
+import be.ucll.utilits.AvailabilityLedger;
 import be.ucll.utilits.TimeTracker;
 
 @ExtendWith(MockitoExtension.class)
@@ -58,6 +81,40 @@ public class LoanServiceTest {
     @Mock
     private PublicationService publicationService;
 
+    @Mock
+    private LoanBatchRepository loanBatchRepository;
+
+    @Mock
+    private LoanEventRepository loanEventRepository;
+
+    // runs the work directly, there is no transaction manager in unit tests; the synchronizations still
+    // run so the ledger sees commits and rollbacks
+    @Spy
+    private OptimisticRetry optimisticRetry = new OptimisticRetry(new TransactionTemplate() {
+        @Override
+        public <T> T execute(TransactionCallback<T> action) {
+            TransactionSynchronizationManager.initSynchronization();
+            TransactionSynchronizationManager.setActualTransactionActive(true);
+            int status = TransactionSynchronization.STATUS_ROLLED_BACK;
+            try {
+                T result = action.doInTransaction(null);
+                status = TransactionSynchronization.STATUS_COMMITTED;
+                return result;
+            } finally {
+                List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+                TransactionSynchronizationManager.clearSynchronization();
+                TransactionSynchronizationManager.setActualTransactionActive(false);
+                TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, status);
+            }
+        }
+    }, 3, Duration.ZERO, Duration.ZERO);
+
+    @Spy
+    private AvailabilityLedger availabilityLedger = new AvailabilityLedger();
+
+    @Spy
+    private MembershipTierSettings membershipTierSettings = new MembershipTierSettings(new MockEnvironment());
+
     @InjectMocks
     private LoanService loanService;
 
@@ -77,7 +134,7 @@ public class LoanServiceTest {
             String email = user.getEmail();
             List<Loan> expectedLoans = LoanTestsUtils.findByUserEmailAndEndDateAfter(loans, email, TimeTracker.getToday());
     
-            when(loanRepository.findByUserEmailAndEndDateAfter(email, TimeTracker.getToday())).thenReturn(expectedLoans);
+            when(loanRepository.findWithDetailsByUserEmailAndEndDateAfter(email, TimeTracker.getToday())).thenReturn(expectedLoans);
 
             List<Loan> actualLoans = loanService.getLoansByUser(email, onlyActive);
             actualLoans.forEach(loan -> {
@@ -86,7 +143,7 @@ public class LoanServiceTest {
                 assertEquals(loan.getEndDate(), loan.getStartDate().plusDays(30));
             });
 
-            verify(loanRepository, times(1)).findByUserEmailAndEndDateAfter(email, TimeTracker.getToday());
+            verify(loanRepository, times(1)).findWithDetailsByUserEmailAndEndDateAfter(email, TimeTracker.getToday());
         });
     }
 
@@ -102,7 +159,7 @@ public class LoanServiceTest {
             String email = user.getEmail();
             List<Loan> expectedLoans = LoanTestsUtils.findByUserEmail(loans, email);
     
-            when(loanRepository.findByUserEmail(email)).thenReturn(expectedLoans);
+            when(loanRepository.findWithDetailsByUserEmail(email)).thenReturn(expectedLoans);
     
             onlyActiveValues.forEach(value -> {
                 List<Loan> actualLoans = loanService.getLoansByUser(email, value);
@@ -111,7 +168,7 @@ public class LoanServiceTest {
                     assertTrue(loans.contains(loan));
                 });
             });
-            verify(loanRepository, times(2)).findByUserEmail(email);
+            verify(loanRepository, times(2)).findWithDetailsByUserEmail(email);
         });
     }
 
@@ -208,7 +265,7 @@ public class LoanServiceTest {
         List<Loan> defaultLoans = LoanTestsUtils.createDefaultLoanList(); 
         String userEmailWithActiveLoans = LoanTestsUtils.getUserWithActiveLoans(defaultLoans).getEmail();
         
-        when(loanRepository.findByUserEmailAndEndDateAfter(userEmailWithActiveLoans, TimeTracker.getToday())).thenReturn(defaultLoans);
+        when(loanRepository.existsByUserEmailAndEndDateAfter(userEmailWithActiveLoans, TimeTracker.getToday())).thenReturn(true);
 
         ServiceException exception = assertThrows(ServiceException.class, () -> {
             loanService.deleteLoansByUser(userEmailWithActiveLoans);
@@ -218,7 +275,7 @@ public class LoanServiceTest {
         String actualMessage = exception.getMessage();
 
         assertEquals(expectedMessage, actualMessage);
-        verify(loanRepository, times(1)).findByUserEmailAndEndDateAfter(userEmailWithActiveLoans, TimeTracker.getToday());
+        verify(loanRepository, times(1)).existsByUserEmailAndEndDateAfter(userEmailWithActiveLoans, TimeTracker.getToday());
     }
 
     @Test 
@@ -228,7 +285,7 @@ public class LoanServiceTest {
 
         String emailWithoutLoans = LoanTestsUtils.getUserWithoutLoans(defaultLoans, defaultUsers).getEmail();
 
-        when(loanRepository.findByUserEmail(emailWithoutLoans)).thenReturn(new ArrayList<Loan>());
+        when(loanRepository.existsByUserEmail(emailWithoutLoans)).thenReturn(false);
 
         ServiceException exception = assertThrows(ServiceException.class, () -> {
             loanService.deleteLoansByUser(emailWithoutLoans);
@@ -239,7 +296,8 @@ public class LoanServiceTest {
 
         assertEquals(loanService.getLoansByUser(emailWithoutLoans, null).size(), 0);
         assertEquals(expectedMessage, actualMessage);
-        verify(loanRepository, times(2)).findByUserEmail(emailWithoutLoans);
+        verify(loanRepository, times(1)).existsByUserEmail(emailWithoutLoans);
+        verify(loanRepository, times(1)).findWithDetailsByUserEmail(emailWithoutLoans);
     }
 
     @Test 
@@ -249,17 +307,17 @@ public class LoanServiceTest {
         
         List<Loan> userLoans = LoanTestsUtils.findByUserEmail(defaultLoans, userEmailWithLoans);
         Integer previousUserLoansSize = userLoans.size();
-        when(loanRepository.findByUserEmail(userEmailWithLoans)).thenReturn(userLoans);
+        when(loanRepository.existsByUserEmail(userEmailWithLoans)).thenReturn(true);
 
         String result = loanService.deleteLoansByUser(userEmailWithLoans);
         
         assertTrue(previousUserLoansSize > 0);
         assertEquals(result, LoanService.DELETION_SUCCESS_RESPONSE);
 
-        when(loanRepository.findByUserEmail(userEmailWithLoans)).thenReturn(new ArrayList<Loan>());
+        when(loanRepository.findWithDetailsByUserEmail(userEmailWithLoans)).thenReturn(new ArrayList<Loan>());
         Integer actualUserLoansSize = loanService.getLoansByUser(userEmailWithLoans, false).size();
         assertEquals(actualUserLoansSize, 0);
-        verify(loanRepository, times(2)).findByUserEmail(userEmailWithLoans);
+        verify(loanRepository, times(1)).existsByUserEmail(userEmailWithLoans);
     }
 
     @Test
@@ -269,17 +327,8 @@ public class LoanServiceTest {
         LocalDate today = TimeTracker.getToday();
         List<Long> ids = new ArrayList<>(List.of(Long.valueOf(0),Long.valueOf(1),Long.valueOf(2)));
         List<Publication> publications = DbInitializer.createPublications().subList(0, 2);
-        Loan expectedLoan = new Loan(user, publications, today);
        
-        doAnswer(new Answer<Object>() {
-            Boolean saved = false;
-            public Object answer(InvocationOnMock invocation) {
-                if (!saved) {
-                    saved = true;
-                    return new ArrayList<Loan>();
-                }
-                return List.of(expectedLoan);
-            }}).when(loanRepository).findByUserEmailAndEndDateAfter(email, today);
+        when(loanRepository.existsByUserEmailAndEndDateAfter(email, today)).thenReturn(false);
         when(userService.getUserByEmail(email)).thenReturn(user);
         when(publicationService.getPublicationsById(ids)).thenReturn(publications);
 
@@ -287,12 +336,40 @@ public class LoanServiceTest {
         assertEquals(email, actualLoan.getUser().getEmail());
         assertEquals(today, actualLoan.getStartDate());
         assertEquals(today.plusDays(30), actualLoan.getEndDate());
+        assertEquals(publications, actualLoan.getPublications());
 
         verify(userService, times(1)).getUserByEmail(email);
         verify(publicationService, times(1)).getPublicationsById(ids);
-        verify(loanRepository, times(2)).findByUserEmailAndEndDateAfter(email, today);
+        verify(loanRepository, times(1)).existsByUserEmailAndEndDateAfter(email, today);
+        // the saved loan is returned, not read again
+        verify(loanRepository, times(1)).saveAndFlush(actualLoan);
+        verify(loanRepository, never()).findByUserEmailAndEndDateAfter(email, today);
     }  
 
+    @Test
+    public void givenConcurrentUpdate_whenRegisterLoan_thenRetriedAndCopiesGivenBack() {
+        User user = UserTest.createDefaultUser();
+        String email = user.getEmail();
+        LocalDate today = TimeTracker.getToday();
+        List<Long> ids = new ArrayList<>(List.of(Long.valueOf(0)));
+        List<Publication> publications = DbInitializer.createPublications().subList(0, 1);
+        ReflectionTestUtils.setField(publications.get(0), "id", 1L);
+        Integer copies = publications.get(0).getAvailableCopies();
+
+        when(loanRepository.existsByUserEmailAndEndDateAfter(email, today)).thenReturn(false);
+        when(userService.getUserByEmail(email)).thenReturn(user);
+        when(publicationService.getPublicationsById(ids)).thenReturn(publications);
+        when(loanRepository.saveAndFlush(any(Loan.class)))
+            .thenThrow(new ObjectOptimisticLockingFailureException(Membership.class, 1L))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+
+        loanService.registerLoan(email, today, ids);
+
+        verify(loanRepository, times(2)).saveAndFlush(any(Loan.class));
+        // the copy of the failed attempt went back on rollback, only the written loan holds one
+        assertEquals(copies - 1, availabilityLedger.getAvailableCopies(1L));
+    }
+
     @Test 
     public void givenWrongEmail_whenRegisterLoan_thanServiceExceptionThrown() {
         String email = "asdaass@ams.la";
@@ -421,4 +498,87 @@ public class LoanServiceTest {
         Integer expectedFine = (int)(ChronoUnit.DAYS.between(loan.getEndDate(), loan.getReturnDate()) * expectedMultiplier * publications.size());
         assertEquals(actualFine, expectedFine);
     }
+
+    @Test
+    public void givenOpenLoans_whenPreviewBilling_thenLoansPricedWithoutRedeemingFreeLoans() {
+        LocalDate date = LocalDate.of(2024, 3, 1);
+        int day = (int) date.toEpochDay();
+        doAnswer(invocation -> {
+            LoanBatchRepository.OpenLoanHandler handler = invocation.getArgument(1);
+            handler.handle(day - 10, day + 20, 2, false);
+            handler.handle(day - 40, day - 10, 3, false);
+            handler.handle(day - 40, day - 10, 1, true);
+            return null;
+        }).when(loanBatchRepository).forEachOpenLoan(eq(date), any());
+
+        BillingPreview preview = loanService.previewBilling(date);
+
+        assertEquals(new BillingPreview(date, 3, 2, 10 * 2 + 40 * 3, 10 * 3 / 2 + 10 / 2), preview);
+    }
+
+    @Test
+    public void givenMembershipOfEveryTier_whenPreviewBilling_thenPreviewMatchesReturnPrice() {
+        LocalDate today = TimeTracker.getToday();
+        List<Membership> memberships = new ArrayList<>();
+        memberships.add(null);
+        for (MembershipTier tier : MembershipTier.values()) {
+            Membership membership = new Membership(today, today.plusYears(1), tier, tier.getDefaultTerms().minFreeLoans());
+            membership.setFreeLoansQuantity(0);
+            memberships.add(membership);
+        }
+        memberships.add(new Membership(today, today.plusYears(1), MembershipTier.SILVER, 8));
+
+        for (Membership membership : memberships) {
+            User user = UserTest.createDefaultUser();
+            if (membership != null) {
+                user.setMembership(membership);
+            }
+            Loan loan = new Loan(user, DbInitializer.createPublications().subList(0, 3), today.minusDays(10));
+            loan.setReturnDate(today);
+            boolean freeLoan = membership != null && membership.getFreeLoansQuantity() > 0;
+            doAnswer(invocation -> {
+                LoanBatchRepository.OpenLoanHandler handler = invocation.getArgument(1);
+                handler.handle((int) loan.getStartDate().toEpochDay(), (int) loan.getEndDate().toEpochDay(), 3, freeLoan);
+                return null;
+            }).when(loanBatchRepository).forEachOpenLoan(eq(today), any());
+
+            BillingPreview preview = loanService.previewBilling(today);
+
+            Integer returnPrice = loanService.calculateTotalLoanPrice(loan, user.findProfitableMembership());
+            assertEquals(returnPrice.longValue(), preview.totalPrice() + preview.totalFines(),
+                membership == null ? "no membership" : membership.getType() + " with " + (freeLoan ? "free loans" : "no free loans"));
+        }
+    }
+
+    @Test
+    public void givenLoanRequests_whenRegisterLoans_thenValidRequestsInsertedInOneBatchAndOthersRejected() {
+        LocalDate today = TimeTracker.getToday();
+        List<User> users = DbInitializer.createUsers();
+        List<Publication> publications = DbInitializer.createPublications();
+        String validEmail = users.get(0).getEmail();
+        String activeLoanEmail = users.get(1).getEmail();
+        String missingPublicationEmail = users.get(2).getEmail();
+        List<LoanRequest> loanRequests = List.of(
+            new LoanRequest(validEmail, today, List.of(1L, 2L)),
+            new LoanRequest(activeLoanEmail, today, List.of(1L)),
+            new LoanRequest(missingPublicationEmail, today, List.of(99L))
+        );
+
+        when(userService.getUsersByEmail(anySet())).thenReturn(Map.of(
+            validEmail, users.get(0),
+            activeLoanEmail, users.get(1),
+            missingPublicationEmail, users.get(2)));
+        when(loanRepository.findUserEmailsWithLoansEndingAfter(anySet(), eq(today))).thenReturn(List.of(activeLoanEmail));
+        when(publicationService.findPublicationsById(anySet())).thenReturn(Map.of(
+            1L, publications.get(0),
+            2L, publications.get(1)));
+        when(loanBatchRepository.insertLoans(anyList())).thenReturn(List.of(7L));
+
+        List<LoanRegistration> results = loanService.registerLoans(loanRequests);
+
+        assertEquals(LoanRegistration.succeeded(validEmail, 7L), results.get(0));
+        assertEquals(LoanRegistration.failed(activeLoanEmail, LoanService.USER_ALREADY_HAS_AN_ACTIVE_LOAN_EXCEPTION), results.get(1));
+        assertEquals(LoanRegistration.failed(missingPublicationEmail, String.format(PublicationService.PUBLICATION_NOT_FOUND_EXCEPTION, 99L)), results.get(2));
+        verify(loanBatchRepository, times(1)).insertLoans(anyList());
+    }
 }
@@ -4,10 +4,12 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.junit.jupiter.api.BeforeEach;
@@ -22,6 +24,8 @@ import be.ucll.model.Magazine;
 import be.ucll.model.Publication;
 import be.ucll.repository.DbInitializer;
 import be.ucll.repository.PublicationRepository;
+import be.ucll.repository.PublicationSearchIndex;
+import be.ucll.repository.PublicationStockIndex;
 import be.ucll.utilits.TimeTracker;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,6 +34,12 @@ public class PublicationServiceTest {
     @Mock
     private PublicationRepository publicationRepository;
 
+    @Mock
+    private PublicationSearchIndex publicationSearchIndex;
+
+    @Mock
+    private PublicationStockIndex publicationStockIndex;
+
     @InjectMocks
     private PublicationService publicationService;
 
@@ -197,4 +207,90 @@ public class PublicationServiceTest {
 
         assertEquals(expectedMessage, actualMessage);
     }
+
+    @Test
+    public void givenIds_whenGettingPublicationsById_thenPublicationsLoadedOnceInRequestedOrder() {
+        List<Publication> publications = new ArrayList<>(DbInitializer.createDefaultBookList());
+        List<Long> ids = List.of(3L, 1L, 2L);
+        List<Publication> loadedPublications = List.of(publications.get(2), publications.get(0), publications.get(1));
+        when(publicationRepository.findAllByIdInOrder(ids)).thenReturn(loadedPublications);
+
+        List<Publication> actualPublications = publicationService.getPublicationsById(ids);
+
+        assertEquals(loadedPublications, actualPublications);
+        verify(publicationRepository).findAllByIdInOrder(ids);
+    }
+
+    @Test
+    public void givenUnexistingIds_whenGettingPublicationsById_thenAllMissingIdsReported() {
+        List<Publication> publications = new ArrayList<>(DbInitializer.createDefaultBookList());
+        List<Long> ids = List.of(1L, 98L, 99L, 98L);
+        when(publicationRepository.findAllByIdInOrder(ids)).thenReturn(Arrays.asList(publications.get(0), null, null, null));
+
+        ServiceException exception = assertThrows(ServiceException.class, () -> {
+            publicationService.getPublicationsById(ids);
+        });
+
+        String expectedMessage = String.format(PublicationService.PUBLICATIONS_NOT_FOUND_EXCEPTION, "98, 99");
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    public void givenOneUnexistingId_whenGettingPublicationsById_thenMissingIdReported() {
+        List<Long> ids = List.of(99L);
+        when(publicationRepository.findAllByIdInOrder(ids)).thenReturn(Arrays.asList((Publication) null));
+
+        ServiceException exception = assertThrows(ServiceException.class, () -> {
+            publicationService.getPublicationsById(ids);
+        });
+
+        String expectedMessage = String.format(PublicationService.PUBLICATION_NOT_FOUND_EXCEPTION, 99L);
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    public void givenReadyIndex_whenRequestingPublications_thanIndexIsUsedInsteadOfLikeQuery() {
+        List<Publication> books = new ArrayList<>(DbInitializer.createDefaultBookList());
+        List<Long> ids = List.of(1L, 2L);
+        when(publicationSearchIndex.isReady()).thenReturn(true);
+        when(publicationSearchIndex.findByTitleAndType("The", null, 2)).thenReturn(ids);
+        when(publicationRepository.findAllByIdInOrder(ids)).thenReturn(books.subList(0, 2));
+
+        List<Publication> actualPublications = publicationService.findPublicationsByTitleAndType("The", null, 2);
+
+        assertEquals(books.subList(0, 2), actualPublications);
+        verify(publicationRepository, never()).findByTitleAndType("The", null);
+    }
+
+    @Test
+    public void givenReadyStockIndex_whenRequestingPublicationsByCopies_thanIndexIsUsedInsteadOfQuery() {
+        List<Publication> magazines = new ArrayList<>(DbInitializer.createDefaultMagazineList());
+        List<Long> ids = List.of(1L, 2L);
+        when(publicationStockIndex.isReady()).thenReturn(true);
+        when(publicationStockIndex.findWithAtLeast(80)).thenReturn(ids);
+        when(publicationRepository.findAllByIdInOrder(ids)).thenReturn(magazines.subList(0, 2));
+
+        List<Publication> actualPublications = publicationService.findPublicationsWithMoreAvailableCopiesThan(80);
+
+        assertEquals(magazines.subList(0, 2), actualPublications);
+        verify(publicationRepository, never()).findByAvailableCopiesGreaterThanEqual(80);
+    }
+
+    @Test
+    public void givenZeroBucketSize_whenRequestingStockHistogram_thanExceptionThrown() {
+        ServiceException exception = assertThrows(ServiceException.class, () -> {
+            publicationService.getStockHistogram(0, 0);
+        });
+
+        assertEquals(PublicationService.INVALID_BUCKET_SIZE_EXCEPTION, exception.getMessage());
+    }
+
+    @Test
+    public void givenBlankQuery_whenSearchingPublications_thanExceptionThrown() {
+        ServiceException exception = assertThrows(ServiceException.class, () -> {
+            publicationService.searchPublications(" ", null, 10);
+        });
+
+        assertEquals(PublicationService.SEARCH_QUERY_CANNOT_BE_EMPTY_EXCEPTION, exception.getMessage());
+    }
 }
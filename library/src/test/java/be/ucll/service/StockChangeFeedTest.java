@@ -0,0 +1,93 @@
+package be.ucll.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Subscription;
+
+import be.ucll.dto.StockChange;
+import be.ucll.repository.PublicationStockIndex;
+import be.ucll.utilits.AvailabilityLedger;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import reactor.core.publisher.BaseSubscriber;
+
+public class StockChangeFeedTest {
+
+    private AvailabilityLedger availabilityLedger;
+    private MeterRegistry meterRegistry;
+    private StockChangeFeed stockChangeFeed;
+    private List<StockChange> received;
+
+    @BeforeEach
+    public void setupFeed() {
+        availabilityLedger = new AvailabilityLedger();
+        meterRegistry = new SimpleMeterRegistry();
+        stockChangeFeed = new StockChangeFeed(availabilityLedger, new PublicationStockIndex(availabilityLedger), meterRegistry, 2);
+        stockChangeFeed.listenToLedger();
+        received = new ArrayList<>();
+    }
+
+    @AfterEach
+    public void stopFeed() {
+        stockChangeFeed.stop();
+    }
+
+    @Test
+    public void givenBurstOfChanges_whenPublishing_thenOneChangePerPublicationAndCancelledChangesSkipped() {
+        stockChangeFeed.subscribe().subscribe(received::add);
+        availabilityLedger.lend(1L, 10);
+        availabilityLedger.lend(1L, 10);
+        availabilityLedger.lend(1L, 10);
+        availabilityLedger.giveBack(1L, 10);
+        availabilityLedger.lend(2L, 5);
+        availabilityLedger.giveBack(2L, 5);
+
+        stockChangeFeed.publish();
+        stockChangeFeed.publish();
+
+        assertEquals(List.of(new StockChange(1L, 8, -2)), received);
+        assertEquals(1, meterRegistry.counter(StockChangeFeed.METRIC_CHANGES).count());
+    }
+
+    @Test
+    public void givenSlowSubscriber_whenBufferIsFull_thenOldestChangesDropped() {
+        BaseSubscriber<StockChange> slowSubscriber = new BaseSubscriber<>() {
+            @Override
+            protected void hookOnSubscribe(Subscription subscription) {
+            }
+
+            @Override
+            protected void hookOnNext(StockChange change) {
+                received.add(change);
+            }
+        };
+        stockChangeFeed.subscribe().subscribe(slowSubscriber);
+        for (long publicationId = 1; publicationId <= 4; publicationId++) {
+            availabilityLedger.lend(publicationId, 10);
+        }
+
+        stockChangeFeed.publish();
+        slowSubscriber.request(10);
+
+        assertEquals(List.of(new StockChange(3L, 9, -1), new StockChange(4L, 9, -1)), received);
+        assertEquals(2, meterRegistry.counter(StockChangeFeed.METRIC_DROPPED).count());
+    }
+
+    @Test
+    public void givenChangesWithoutSubscribers_whenSubscribingLater_thenOnlyNewChangesReceived() {
+        availabilityLedger.lend(1L, 10);
+        stockChangeFeed.subscribe().subscribe(received::add);
+        availabilityLedger.giveBack(2L, 10);
+
+        stockChangeFeed.publish();
+
+        assertEquals(List.of(new StockChange(2L, 11, 1)), received);
+        assertEquals(1, meterRegistry.get(StockChangeFeed.METRIC_SUBSCRIBERS).gauge().value());
+    }
+}
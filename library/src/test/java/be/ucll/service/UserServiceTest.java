@@ -14,35 +14,46 @@ import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.mockito.stubbing.Answer;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.test.util.ReflectionTestUtils;
 
+import be.ucll.dto.UserPurge;
 import be.ucll.model.Loan;
 import be.ucll.model.Membership;
 import be.ucll.model.MembershipTest;
+import be.ucll.model.MembershipTier;
 import be.ucll.model.User;
 import be.ucll.model.UserTest;
 import be.ucll.repository.DbInitializer;
+import be.ucll.repository.LoanEventRepository;
 import be.ucll.repository.LoanRepository;
 import be.ucll.repository.MembershipRepository;
 import be.ucll.repository.ProfileRepository;
+import be.ucll.repository.UserCache;
+import be.ucll.repository.UserFetchProfile;
+import be.ucll.repository.UserPurgeRepository;
 import be.ucll.repository.UserRepository;
 import be.ucll.unit.utils.LoanTestsUtils;
 import be.ucll.utilits.TimeTracker;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 
 @ExtendWith(MockitoExtension.class)
 public class UserServiceTest {
@@ -55,8 +66,12 @@ public class UserServiceTest {
     private MembershipRepository membershipRepository;
     @Mock
     private ProfileRepository profileRepository;
+    @Mock
+    private UserPurgeRepository userPurgeRepository;
+    @Mock
+    private LoanEventRepository loanEventRepository;
 
-    @InjectMocks
+    private UserCache userCache;
     private UserService userService;
     
     @BeforeEach
@@ -65,13 +80,20 @@ public class UserServiceTest {
         TimeTracker.resetYear();
     }
 
+    @BeforeEach
+    public void createService() {
+        userCache = new UserCache(userRepository, new SimpleMeterRegistry(), 1000, Duration.ofMinutes(1));
+        userService = new UserService(userRepository, loanRepository, profileRepository, membershipRepository, null, userCache, userPurgeRepository, loanEventRepository,
+            new MembershipTierSettings(new MockEnvironment()));
+    }
+
     @Test
     public void givenValidRequest_whenGettingAllUsers_thanTheCertainUsersReturned() {
         List<User> expectedUsers = DbInitializer.createUsers();
 
         when(userRepository.findAll()).thenReturn(expectedUsers);
 
-        UserService userService = new UserService(userRepository, null, null, null);
+        UserService userService = new UserService(userRepository, null, null, null, null, null, null, null, null);
 
         List<User> actualUsers = userService.getAllUsers();
 
@@ -112,6 +134,27 @@ public class UserServiceTest {
         verify(userRepository, times(1)).findByAgeGreaterThanEqual(18);
     }
 
+    @Test
+    public void givenWithProfileFetch_whenGettingAllAdultUsers_thenUsersLoadedWithFetchProfile() {
+        List<User> adultUsers = DbInitializer.createUsers().stream().filter(user -> user.getAge() >= 18).toList();
+        when(userRepository.findByAgeGreaterThanEqual(18, UserFetchProfile.WITH_PROFILE)).thenReturn(adultUsers);
+
+        List<User> actualUsers = userService.getAllAdultUsers("withProfile");
+
+        assertEquals(adultUsers, actualUsers);
+        verify(userRepository, never()).findByAgeGreaterThanEqual(18);
+    }
+
+    @Test
+    public void givenUnknownFetch_whenGettingAllAdultUsers_thenServiceExceptionThrown() {
+        ServiceException exception = assertThrows(ServiceException.class, () -> {
+            userService.getAllAdultUsers("everything");
+        });
+
+        assertEquals(UserService.INVALID_FETCH_PROFILE_EXCEPTION, exception.getMessage());
+        verify(userRepository, never()).findByAgeGreaterThanEqual(18);
+    }
+
     @Test
     public void givenUsers_whenGettingAllAdultUsers_thenFilteredAdultUsersReturned() {
         List<User> users = DbInitializer.createUsers();
@@ -260,7 +303,7 @@ public class UserServiceTest {
     @Test
     public void givenWrongEmail_whenCheckingUserExists_thenServiceExceptionThrown() {
         List<String> emails = List.of("", "sada@asd");
-        when(userRepository.findByEmail(anyString())).thenReturn(null);
+        when(userRepository.existsByEmail(anyString())).thenReturn(false);
 
         emails.forEach(email -> {
             ServiceException exception = assertThrows(ServiceException.class, () -> {
@@ -272,7 +315,8 @@ public class UserServiceTest {
 
             assertEquals(expectedMessage, actualMessage);
         });
-        verify(userRepository, times(2)).findByEmail(anyString());
+        verify(userRepository, times(2)).existsByEmail(anyString());
+        verify(userRepository, never()).findByEmail(anyString());
     }
 
     @Test
@@ -280,12 +324,12 @@ public class UserServiceTest {
         List<User> users = DbInitializer.createUsers();
 
         users.forEach(user -> {
-            when(userRepository.findByEmail(user.getEmail())).thenReturn(user);
+            when(userRepository.existsByEmail(user.getEmail())).thenReturn(true);
 
             assertDoesNotThrow(() -> {
                 userService.userExists(user.getEmail());
             });
-            verify(userRepository, times(1)).findByEmail(user.getEmail());
+            verify(userRepository, times(1)).existsByEmail(user.getEmail());
         });
 
     }
@@ -312,7 +356,8 @@ public class UserServiceTest {
 
         assertEquals(user.getEmail(), actual.getEmail());
         verify(userRepository, times(1)).save(user);
-        verify(userRepository, times(2)).findByEmail(user.getEmail());
+        verify(userRepository, times(1)).existsByEmail(user.getEmail());
+        verify(userRepository, times(1)).findByEmail(user.getEmail());
     }
 
     //3
@@ -334,7 +379,7 @@ public class UserServiceTest {
     @Test
     public void givenExistingUser_whenAddingUser_thanServiceExceptionThrown() {
         List<User> users = DbInitializer.createUsers();
-        when(userRepository.findByEmail(anyString())).thenReturn(users.get(0));
+        when(userRepository.existsByEmail(anyString())).thenReturn(true);
 
         ServiceException exception = assertThrows(ServiceException.class, () -> {
             userService.addUser(users.get(0));
@@ -344,7 +389,7 @@ public class UserServiceTest {
         String actualMessage = exception.getMessage();
 
         assertEquals(expectedMessage, actualMessage);
-        verify(userRepository, times(1)).findByEmail(users.get(0).getEmail());
+        verify(userRepository, times(1)).existsByEmail(users.get(0).getEmail());
         verify(userRepository, never()).save(any(User.class));
     }
 
@@ -411,8 +456,8 @@ public class UserServiceTest {
         String emailWithActiveLoans = LoanTestsUtils.getUserWithActiveLoans(defaultLoans).getEmail();
 
         when(userRepository.findByEmail(emailWithActiveLoans)).thenReturn(users.get(0));
-        when(loanRepository.findByUserEmailAndEndDateAfter(emailWithActiveLoans, TimeTracker.getToday()))
-            .thenReturn(defaultLoans);
+        when(loanRepository.existsByUserEmailAndEndDateAfter(emailWithActiveLoans, TimeTracker.getToday()))
+            .thenReturn(true);
 
         ServiceException exception = assertThrows(ServiceException.class, () -> {
             userService.deleteUser(emailWithActiveLoans);
@@ -423,7 +468,7 @@ public class UserServiceTest {
 
         assertEquals(expectedMessage, actualMessage);
         verify(userRepository, times(1)).findByEmail(emailWithActiveLoans);
-        verify(loanRepository, times(1)).findByUserEmailAndEndDateAfter(emailWithActiveLoans, TimeTracker.getToday());
+        verify(loanRepository, times(1)).existsByUserEmailAndEndDateAfter(emailWithActiveLoans, TimeTracker.getToday());
     }
 
     //4
@@ -434,7 +479,7 @@ public class UserServiceTest {
         String emailWithInactiveLoans = userWithInactiveLoans.getEmail();
 
         when(userRepository.findByEmail(emailWithInactiveLoans)).thenReturn(userWithInactiveLoans);
-        when(loanRepository.findByUserEmail(emailWithInactiveLoans)).thenReturn(defaultLoans);
+        when(loanRepository.existsByUserEmail(emailWithInactiveLoans)).thenReturn(true);
 
         String actualResult = userService.deleteUser(emailWithInactiveLoans);
         String expectedResult = UserService.DELETION_SUCCESS_RESPONSE;
@@ -444,6 +489,27 @@ public class UserServiceTest {
         verify(loanRepository, times(1)).deleteByUserEmail(emailWithInactiveLoans);
     }
 
+    @Test
+    public void givenEmails_whenPurgingUsers_thenOnlyUsersWithoutActiveLoansPurged() {
+        List<User> users = DbInitializer.createUsers();
+        ReflectionTestUtils.setField(users.get(0), "id", 1L);
+        ReflectionTestUtils.setField(users.get(1), "id", 2L);
+        List<String> emails = List.of(users.get(0).getEmail(), users.get(1).getEmail(), "unknown@ucll.be");
+
+        when(userRepository.findByEmailIn(emails)).thenReturn(users.subList(0, 2));
+        when(loanRepository.findUserEmailsWithLoansEndingAfter(emails, TimeTracker.getToday()))
+            .thenReturn(List.of(users.get(1).getEmail()));
+
+        List<UserPurge> results = userService.purgeUsers(emails);
+
+        assertEquals(List.of(
+            UserPurge.succeeded(users.get(0).getEmail()),
+            UserPurge.failed(users.get(1).getEmail(), LoanService.USER_HAS_ACTIVE_LOANS_EXCEPTION),
+            UserPurge.failed("unknown@ucll.be", UserService.USER_DOESNT_EXIST_EXCEPTION)), results);
+        verify(userPurgeRepository, times(1)).purgeUsers(Set.of(1L));
+        verify(userRepository, never()).delete(any(User.class));
+    }
+
     @Test
     public void givenUsers_whenGettingTheOldestUser_thanTheOldestUserReturned() {
         List<User> users = DbInitializer.createUsers();
@@ -746,7 +812,66 @@ public class UserServiceTest {
         verify(userRepository).save(user);
         verify(membershipRepository).save(membership);
     }
-    
+
+    @Test
+    public void givenFreeLoansAboveDefaultTerms_whenAddingMembership_thenServiceExceptionThrown() {
+        TimeTracker.setCustomToday(LocalDate.of(1111, 1, 10));
+
+        Membership membership = MembershipTest.createDefaultSilverMembership();
+        membership.setType(MembershipTier.GOLD);
+        membership.setFreeLoansQuantity(18);
+
+        ServiceException exception = assertThrows(ServiceException.class, () -> {
+            userService.addMembership("john.doe@ucll.be", membership);
+        });
+
+        assertEquals(Membership.INVALID_FREE_LOANS_EXCEPTION, exception.getMessage());
+        verifyNoInteractions(membershipRepository);
+    }
+
+    @Test
+    public void givenConfiguredTierTerms_whenAddingMembership_thenConfiguredFreeLoansAccepted() {
+        TimeTracker.setCustomToday(LocalDate.of(1111, 1, 10));
+        MockEnvironment environment = new MockEnvironment()
+            .withProperty(MembershipTierSettings.PREFIX + "GOLD.max-free-loans", "20");
+        UserService configuredService = new UserService(userRepository, loanRepository, profileRepository, membershipRepository,
+            null, userCache, userPurgeRepository, loanEventRepository, new MembershipTierSettings(environment));
+
+        User user = UserTest.createDefaultUser();
+        Membership membership = MembershipTest.createDefaultSilverMembership();
+        membership.setType(MembershipTier.GOLD);
+        membership.setFreeLoansQuantity(18);
+        when(userRepository.findByEmail(user.getEmail())).thenReturn(user);
+
+        User actualUser = configuredService.addMembership(user.getEmail(), membership);
+
+        assertEquals(18, actualUser.getMemberships().get(0).getFreeLoansQuantity());
+        verify(membershipRepository).save(membership);
+    }
+
+    @Test
+    public void givenCachedUser_whenAddingMembership_thenUserLoadedAgainAfterwards() {
+        TimeTracker.setCustomToday(LocalDate.of(1111, 1, 10));
+
+        User user = UserTest.createDefaultUser();
+        String email = user.getEmail();
+        Membership membership = MembershipTest.createDefaultSilverMembership();
+
+        when(userRepository.findByEmail(email)).thenReturn(user);
+
+        userService.getUserByEmail(email);
+        userService.userExists(email);
+        verify(userRepository, times(1)).findByEmail(email);
+        verify(userRepository, never()).existsByEmail(email);
+
+        userService.addMembership(email, membership);
+        userService.getUserByEmail(email);
+
+        // the membership is added to a user loaded for the update, the cached one is loaded again afterwards
+        verify(userRepository, times(3)).findByEmail(email);
+        assertEquals(0, userCache.getHits());
+    }
+
     @Test 
     public void givenUnknownEmail_whenGettingMembershipByDate_thenServiceExceptionThrown() {
         String email = "unknown@mail.ru";
@@ -820,13 +945,12 @@ public class UserServiceTest {
         
         user.getMemberships().add(membership);
         when(userRepository.findByEmail(email)).thenReturn(user);
-        when(membershipRepository.findMembershipByUserEmailAndDate(email, date)).thenReturn(membership);
 
         Membership actualMembership = userService.getMembershipForDate(email, date);
 
         assertEquals(membership, actualMembership);
 
         verify(userRepository).findByEmail(email);
-        verify(membershipRepository).findMembershipByUserEmailAndDate(email, date);
+        verifyNoInteractions(membershipRepository);
     }
 }
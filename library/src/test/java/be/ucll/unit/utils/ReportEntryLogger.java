@@ -0,0 +1,19 @@
+package be.ucll.unit.utils;
+
+import org.junit.platform.engine.reporting.ReportEntry;
+import org.junit.platform.launcher.TestExecutionListener;
+import org.junit.platform.launcher.TestIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/// Logs the entries tests publish through TestReporter, surefire does not put them in its reports.
+/// Registered for every test run in META-INF/services.
+public class ReportEntryLogger implements TestExecutionListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportEntryLogger.class);
+
+    @Override
+    public void reportingEntryPublished(TestIdentifier testIdentifier, ReportEntry entry) {
+        entry.getKeyValuePairs().forEach((key, value) -> LOGGER.info("{}: {} = {}", testIdentifier.getDisplayName(), key, value));
+    }
+}
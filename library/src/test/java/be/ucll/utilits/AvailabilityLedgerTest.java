@@ -0,0 +1,142 @@
+package be.ucll.utilits;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+public class AvailabilityLedgerTest {
+
+    private static final long PUBLICATION_ID = 1L;
+
+    private AvailabilityLedger availabilityLedger;
+
+    @BeforeEach
+    public void createLedger() {
+        availabilityLedger = new AvailabilityLedger();
+    }
+
+    @Test
+    public void givenStoredCopies_whenLending_thenLedgerIsSeededAndDecreased() {
+        int remaining = availabilityLedger.lend(PUBLICATION_ID, 5);
+
+        assertEquals(4, remaining);
+        assertEquals(4, availabilityLedger.getAvailableCopies(PUBLICATION_ID));
+    }
+
+    @Test
+    public void givenNoCopies_whenLending_thenNoCopiesAvailableReturned() {
+        int remaining = availabilityLedger.lend(PUBLICATION_ID, 0);
+
+        assertEquals(AvailabilityLedger.NO_COPIES_AVAILABLE, remaining);
+        assertEquals(0, availabilityLedger.getAvailableCopies(PUBLICATION_ID));
+    }
+
+    @Test
+    public void givenLedgerCount_whenGivingBack_thenStoredCopiesAreIgnored() {
+        availabilityLedger.lend(PUBLICATION_ID, 5);
+
+        int available = availabilityLedger.giveBack(PUBLICATION_ID, 100);
+
+        assertEquals(5, available);
+    }
+
+    @Test
+    public void givenConcurrentLends_whenLendingMoreThanAvailable_thenNoCopyIsOversold() throws InterruptedException {
+        int storedCopies = 1000;
+        AtomicInteger successfulLends = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        for (int i = 0; i < 5000; i++) {
+            executor.submit(() -> {
+                if (availabilityLedger.lend(PUBLICATION_ID, storedCopies) != AvailabilityLedger.NO_COPIES_AVAILABLE) {
+                    successfulLends.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertEquals(storedCopies, successfulLends.get());
+        assertEquals(0, availabilityLedger.getAvailableCopies(PUBLICATION_ID));
+    }
+
+    @Test
+    public void givenChangedCounts_whenFlushing_thenOnlyChangedCountsAreWrittenOnce() {
+        availabilityLedger.lend(PUBLICATION_ID, 5);
+        availabilityLedger.giveBack(2L, 3);
+        Map<Long, Integer> written = new HashMap<>();
+
+        availabilityLedger.flush(written::putAll);
+        availabilityLedger.flush(changed -> written.put(-1L, -1));
+
+        assertEquals(Map.of(PUBLICATION_ID, 4, 2L, 4), written);
+    }
+
+    @Test
+    public void givenLendInTransaction_whenRollingBack_thenCopyIsPutBack() {
+        inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> {
+            assertEquals(4, availabilityLedger.lend(PUBLICATION_ID, 5));
+            assertEquals(4, availabilityLedger.getAvailableCopies(PUBLICATION_ID));
+        });
+
+        assertEquals(5, availabilityLedger.getAvailableCopies(PUBLICATION_ID));
+    }
+
+    @Test
+    public void givenGiveBackInTransaction_whenCommitting_thenCopyIsOnlyGivenBackAfterCommit() {
+        availabilityLedger.lend(PUBLICATION_ID, 5);
+
+        inTransaction(TransactionSynchronization.STATUS_COMMITTED, () -> {
+            assertEquals(5, availabilityLedger.giveBack(PUBLICATION_ID, 4));
+            assertEquals(4, availabilityLedger.getAvailableCopies(PUBLICATION_ID));
+        });
+
+        assertEquals(5, availabilityLedger.getAvailableCopies(PUBLICATION_ID));
+    }
+
+    @Test
+    public void givenGiveBackInTransaction_whenRollingBack_thenCopyIsNotGivenBack() {
+        availabilityLedger.lend(PUBLICATION_ID, 5);
+
+        inTransaction(TransactionSynchronization.STATUS_ROLLED_BACK, () -> availabilityLedger.giveBack(PUBLICATION_ID, 4));
+
+        assertEquals(4, availabilityLedger.getAvailableCopies(PUBLICATION_ID));
+    }
+
+    @Test
+    public void givenCounts_whenClearing_thenLedgerIsEmpty() {
+        availabilityLedger.lend(PUBLICATION_ID, 5);
+
+        availabilityLedger.clear();
+
+        assertNull(availabilityLedger.getAvailableCopies(PUBLICATION_ID));
+    }
+
+    private void inTransaction(int completionStatus, Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        List<TransactionSynchronization> synchronizations;
+        try {
+            work.run();
+            synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, completionStatus);
+    }
+}